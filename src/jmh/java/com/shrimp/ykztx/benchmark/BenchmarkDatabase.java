@@ -0,0 +1,171 @@
+package com.shrimp.ykztx.benchmark;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Random;
+
+import javax.sql.DataSource;
+
+import org.hibernate.SessionFactory;
+import org.hibernate.criterion.Projections;
+import org.springframework.orm.hibernate4.HibernateTransactionManager;
+import org.springframework.orm.hibernate4.LocalSessionFactoryBuilder;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.support.TransactionCallback;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.codahale.metrics.MetricRegistry;
+import com.shrimp.ykztx.model.dao.support.MetricsDataSource;
+import com.shrimp.ykztx.model.dao.support.SqlMetrics;
+import com.zaxxer.hikari.HikariConfig;
+import com.zaxxer.hikari.HikariDataSource;
+
+/**
+ * 基准测试数据库: 内存H2 + HikariCP + Hibernate + Spring事务, 与applicationContext中的配置一致,
+ * 初始化时写入指定行数的{@link BenchmarkItem}
+ */
+public class BenchmarkDatabase {
+
+	public static final int CATEGORIES = 10;
+	public static final int MAX_SCORE = 10000;
+
+	private final HikariDataSource pool;
+	private final SessionFactory sessionFactory;
+	private final TransactionTemplate readTemplate;
+	private final TransactionTemplate writeTemplate;
+	private final BenchmarkItemDAO dao;
+	private final List<String> ids;
+
+	/**
+	 * @param rows 初始行数
+	 * @param poolSize 连接池大小
+	 * @param instrumented 是否包装MetricsDataSource(用于衡量SQL统计的开销)
+	 */
+	public BenchmarkDatabase(int rows, int poolSize, boolean instrumented) {
+		HikariConfig config = new HikariConfig();
+		config.setPoolName("benchmark");
+		config.setJdbcUrl("jdbc:h2:mem:benchmark" + System.nanoTime()
+				+ ";DB_CLOSE_DELAY=-1");
+		config.setUsername("sa");
+		config.setMaximumPoolSize(poolSize);
+		config.setMinimumIdle(poolSize);
+		pool = new HikariDataSource(config);
+		DataSource dataSource = pool;
+		if (instrumented) {
+			dataSource = new MetricsDataSource(pool, new SqlMetrics(
+					new MetricRegistry(), -1, 500));
+		}
+
+		LocalSessionFactoryBuilder builder = new LocalSessionFactoryBuilder(
+				dataSource);
+		builder.addPackage("com.shrimp.ykztx.model");
+		builder.addAnnotatedClasses(BenchmarkItem.class);
+		builder.setProperty("hibernate.dialect",
+				"org.hibernate.dialect.H2Dialect");
+		builder.setProperty("hibernate.hbm2ddl.auto", "create");
+		builder.setProperty("hibernate.jdbc.batch_size", "50");
+		builder.setProperty("hibernate.order_inserts", "true");
+		builder.setProperty("hibernate.order_updates", "true");
+		sessionFactory = builder.buildSessionFactory();
+
+		HibernateTransactionManager transactionManager = new HibernateTransactionManager(
+				sessionFactory);
+		writeTemplate = new TransactionTemplate(transactionManager);
+		readTemplate = new TransactionTemplate(transactionManager);
+		readTemplate.setReadOnly(true);
+
+		dao = new BenchmarkItemDAO();
+		dao.setSessionFactory(sessionFactory);
+
+		Random random = new Random(rows);
+		List<BenchmarkItem> items = new ArrayList<BenchmarkItem>(rows);
+		for (int i = 0; i < rows; i++) {
+			items.add(newItem(random, i));
+		}
+		dao.saveAll(items, 1000, true);
+		ids = new ArrayList<String>(rows);
+		for (BenchmarkItem item : items) {
+			ids.add(item.getId());
+		}
+		createIndexes();
+	}
+
+	private void createIndexes() {
+		writeTemplate.execute(new TransactionCallback<Object>() {
+			@Override
+			public Object doInTransaction(
+					TransactionStatus status) {
+				sessionFactory
+						.getCurrentSession()
+						.createSQLQuery(
+								"create index benchmark_item_category_score on benchmark_item (category, score)")
+						.executeUpdate();
+				return null;
+			}
+		});
+	}
+
+	public static BenchmarkItem newItem(Random random, int i) {
+		BenchmarkItem item = new BenchmarkItem();
+		item.setName("item-" + i);
+		item.setCategory(category(random.nextInt(CATEGORIES)));
+		item.setScore(random.nextInt(MAX_SCORE));
+		item.setCreated(new Date());
+		return item;
+	}
+
+	public static String category(int i) {
+		return "c" + i;
+	}
+
+	public BenchmarkItemDAO getDao() {
+		return dao;
+	}
+
+	/**
+	 * 在只读事务中执行
+	 */
+	public <R> R read(TransactionCallback<R> callback) {
+		return readTemplate.execute(callback);
+	}
+
+	/**
+	 * 在读写事务中执行
+	 */
+	public <R> R write(TransactionCallback<R> callback) {
+		return writeTemplate.execute(callback);
+	}
+
+	/**
+	 * 随机取一个已存在的ID
+	 * @param random 调用线程自己的随机数生成器
+	 */
+	public String randomId(Random random) {
+		return ids.get(random.nextInt(ids.size()));
+	}
+
+	public int size() {
+		return ids.size();
+	}
+
+	/**
+	 * 表中实际行数(校验用)
+	 */
+	public long count() {
+		return read(new TransactionCallback<Long>() {
+			@Override
+			public Long doInTransaction(
+					TransactionStatus status) {
+				return (Long) sessionFactory.getCurrentSession()
+						.createCriteria(BenchmarkItem.class)
+						.setProjection(Projections.rowCount()).uniqueResult();
+			}
+		});
+	}
+
+	public void close() {
+		sessionFactory.close();
+		pool.close();
+	}
+}
@@ -0,0 +1,67 @@
+package com.shrimp.ykztx.benchmark;
+
+import java.util.Date;
+
+import javax.persistence.Entity;
+import javax.persistence.GeneratedValue;
+import javax.persistence.Id;
+import javax.persistence.Table;
+import javax.persistence.Temporal;
+import javax.persistence.TemporalType;
+
+/**
+ * 基准测试用实体
+ */
+@Entity
+@Table(name = "benchmark_item")
+public class BenchmarkItem {
+
+	@Id
+	@GeneratedValue(generator = "pooled")
+	private String id;
+	private String name;
+	private String category;
+	private int score;
+	@Temporal(TemporalType.TIMESTAMP)
+	private Date created;
+
+	public String getId() {
+		return id;
+	}
+
+	public void setId(String id) {
+		this.id = id;
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	public void setName(String name) {
+		this.name = name;
+	}
+
+	public String getCategory() {
+		return category;
+	}
+
+	public void setCategory(String category) {
+		this.category = category;
+	}
+
+	public int getScore() {
+		return score;
+	}
+
+	public void setScore(int score) {
+		this.score = score;
+	}
+
+	public Date getCreated() {
+		return created;
+	}
+
+	public void setCreated(Date created) {
+		this.created = created;
+	}
+}
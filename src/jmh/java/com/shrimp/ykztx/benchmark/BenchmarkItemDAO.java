@@ -0,0 +1,11 @@
+package com.shrimp.ykztx.benchmark;
+
+import com.shrimp.ykztx.model.dao.impl.DefaultBaseDAO;
+
+public class BenchmarkItemDAO extends DefaultBaseDAO<BenchmarkItem, String> {
+
+	@Override
+	protected Class<BenchmarkItem> getEntityClass() {
+		return BenchmarkItem.class;
+	}
+}
@@ -0,0 +1,111 @@
+package com.shrimp.ykztx.benchmark;
+
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+
+import org.hibernate.criterion.Order;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.support.TransactionCallback;
+
+import com.shrimp.ykztx.web.model.Page;
+import com.shrimp.ykztx.web.model.Page.TotalMode;
+
+/**
+ * 不同线程数和连接池大小下的吞吐量, 用于确定jdbc.pool.maxSize: 线程数超过连接池大小后吞吐量不再增长,
+ * 多出的线程只在连接池上等待
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class DaoConcurrencyBenchmark {
+
+	private static final Order[] ORDERS = { Order.desc("score") };
+
+	@Param({ "4", "16" })
+	public int poolSize;
+
+	private BenchmarkDatabase db;
+
+	@Setup
+	public void setUp() {
+		db = new BenchmarkDatabase(100000, poolSize, false);
+	}
+
+	@TearDown
+	public void tearDown() {
+		db.close();
+	}
+
+	@Benchmark
+	@Threads(1)
+	public BenchmarkItem get_1thread(RandomState state) {
+		return get(state);
+	}
+
+	@Benchmark
+	@Threads(4)
+	public BenchmarkItem get_4threads(RandomState state) {
+		return get(state);
+	}
+
+	@Benchmark
+	@Threads(16)
+	public BenchmarkItem get_16threads(RandomState state) {
+		return get(state);
+	}
+
+	@Benchmark
+	@Threads(1)
+	public Page<BenchmarkItem> findByPage_1thread(RandomState state) {
+		return findByPage(state);
+	}
+
+	@Benchmark
+	@Threads(4)
+	public Page<BenchmarkItem> findByPage_4threads(RandomState state) {
+		return findByPage(state);
+	}
+
+	@Benchmark
+	@Threads(16)
+	public Page<BenchmarkItem> findByPage_16threads(RandomState state) {
+		return findByPage(state);
+	}
+
+	private BenchmarkItem get(final RandomState state) {
+		return db.read(new TransactionCallback<BenchmarkItem>() {
+			@Override
+			public BenchmarkItem doInTransaction(TransactionStatus status) {
+				return db.getDao().get(db.randomId(state.random));
+			}
+		});
+	}
+
+	private Page<BenchmarkItem> findByPage(final RandomState state) {
+		return db.read(new TransactionCallback<Page<BenchmarkItem>>() {
+			@Override
+			public Page<BenchmarkItem> doInTransaction(TransactionStatus status) {
+				return db.getDao().findByPage(state.random.nextInt(100), 20,
+						false, Collections.<String, Object> emptyMap(),
+						Collections.<String, String> emptyMap(), ORDERS,
+						TotalMode.CACHED);
+			}
+		});
+	}
+}
@@ -0,0 +1,84 @@
+package com.shrimp.ykztx.benchmark;
+
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+
+import org.hibernate.criterion.Order;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.support.TransactionCallback;
+
+import com.shrimp.ykztx.web.model.Page;
+import com.shrimp.ykztx.web.model.Page.TotalMode;
+
+/**
+ * 分页查询耗时, 按表大小、页码深度(offset = pageIndex * 20)和总数计算方式对比
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class DaoPageBenchmark {
+
+	private static final int PAGE_SIZE = 20;
+	private static final Order[] ORDERS = { Order.desc("score") };
+
+	@Param({ "10000", "100000" })
+	public int rows;
+
+	@Param({ "0", "50", "400" })
+	public int pageIndex;
+
+	@Param({ "EXACT", "CACHED", "NONE" })
+	public TotalMode totalMode;
+
+	private BenchmarkDatabase db;
+
+	@Setup
+	public void setUp() {
+		db = new BenchmarkDatabase(rows, 4, false);
+	}
+
+	@TearDown
+	public void tearDown() {
+		db.close();
+	}
+
+	@Benchmark
+	public Page<BenchmarkItem> findByPage() {
+		return db.read(new TransactionCallback<Page<BenchmarkItem>>() {
+			@Override
+			public Page<BenchmarkItem> doInTransaction(TransactionStatus status) {
+				return db.getDao().findByPage(pageIndex, PAGE_SIZE, false,
+						Collections.<String, Object> emptyMap(),
+						Collections.<String, String> emptyMap(), ORDERS,
+						totalMode);
+			}
+		});
+	}
+
+	@Benchmark
+	public Page<BenchmarkItem> findByPageDC() {
+		return db.read(new TransactionCallback<Page<BenchmarkItem>>() {
+			@Override
+			public Page<BenchmarkItem> doInTransaction(TransactionStatus status) {
+				return db.getDao().findByPage(
+						db.getDao().getDC().addOrder(Order.desc("score")),
+						pageIndex, PAGE_SIZE, false, totalMode);
+			}
+		});
+	}
+}
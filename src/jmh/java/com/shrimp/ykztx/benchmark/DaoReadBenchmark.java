@@ -0,0 +1,92 @@
+package com.shrimp.ykztx.benchmark;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.hibernate.criterion.Restrictions;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.support.TransactionCallback;
+
+/**
+ * 单条/批量主键查询和count的耗时, 按表大小以及是否启用SQL统计(MetricsDataSource)对比
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class DaoReadBenchmark {
+
+	@Param({ "1000", "100000" })
+	public int rows;
+
+	@Param({ "false", "true" })
+	public boolean instrumented;
+
+	private BenchmarkDatabase db;
+
+	@Setup
+	public void setUp() {
+		db = new BenchmarkDatabase(rows, 4, instrumented);
+	}
+
+	@TearDown
+	public void tearDown() {
+		db.close();
+	}
+
+	@Benchmark
+	public BenchmarkItem get(final RandomState state) {
+		return db.read(new TransactionCallback<BenchmarkItem>() {
+			@Override
+			public BenchmarkItem doInTransaction(TransactionStatus status) {
+				return db.getDao().get(db.randomId(state.random));
+			}
+		});
+	}
+
+	@Benchmark
+	public Map<String, BenchmarkItem> getAll(final RandomState state) {
+		final List<String> ids = new ArrayList<String>(20);
+		for (int i = 0; i < 20; i++) {
+			ids.add(db.randomId(state.random));
+		}
+		return db.read(new TransactionCallback<Map<String, BenchmarkItem>>() {
+			@Override
+			public Map<String, BenchmarkItem> doInTransaction(
+					TransactionStatus status) {
+				return db.getDao().getAll(ids);
+			}
+		});
+	}
+
+	@Benchmark
+	public Long countByDC(final RandomState state) {
+		return db.read(new TransactionCallback<Long>() {
+			@Override
+			public Long doInTransaction(TransactionStatus status) {
+				return db.getDao().countByDC(
+						db.getDao()
+								.getDC()
+								.add(Restrictions.eq("category", BenchmarkDatabase
+										.category(state.random
+												.nextInt(BenchmarkDatabase.CATEGORIES)))));
+			}
+		});
+	}
+}
@@ -0,0 +1,72 @@
+package com.shrimp.ykztx.benchmark;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.support.TransactionCallback;
+
+/**
+ * 单条insert和按条件update的耗时(每次操作一个事务)
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class DaoWriteBenchmark {
+
+	@Param({ "10000", "100000" })
+	public int rows;
+
+	private BenchmarkDatabase db;
+
+	@Setup
+	public void setUp() {
+		db = new BenchmarkDatabase(rows, 4, false);
+	}
+
+	@TearDown
+	public void tearDown() {
+		db.close();
+	}
+
+	@Benchmark
+	public BenchmarkItem save(final RandomState state) {
+		return db.write(new TransactionCallback<BenchmarkItem>() {
+			@Override
+			public BenchmarkItem doInTransaction(TransactionStatus status) {
+				return db.getDao().save(
+						BenchmarkDatabase.newItem(state.random, db.size()));
+			}
+		});
+	}
+
+	@Benchmark
+	public Integer updateProperties(final RandomState state) {
+		final Map<String, Object> updateSet = new HashMap<String, Object>();
+		updateSet.put("score", state.random.nextInt(BenchmarkDatabase.MAX_SCORE));
+		final Map<String, Object> updateWhere = new HashMap<String, Object>();
+		updateWhere.put("id", db.randomId(state.random));
+		return db.write(new TransactionCallback<Integer>() {
+			@Override
+			public Integer doInTransaction(TransactionStatus status) {
+				return db.getDao().updateProperties(updateSet, updateWhere);
+			}
+		});
+	}
+}
@@ -0,0 +1,14 @@
+package com.shrimp.ykztx.benchmark;
+
+import java.util.Random;
+
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * 每个基准线程独立的随机数生成器, 避免线程间竞争影响并发测试结果
+ */
+@State(Scope.Thread)
+public class RandomState {
+	public final Random random = new Random();
+}
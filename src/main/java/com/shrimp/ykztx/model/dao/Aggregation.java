@@ -0,0 +1,328 @@
+package com.shrimp.ykztx.model.dao;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.hibernate.Criteria;
+import org.hibernate.HibernateException;
+import org.hibernate.criterion.CriteriaQuery;
+import org.hibernate.criterion.Order;
+import org.hibernate.criterion.Projection;
+import org.hibernate.criterion.ProjectionList;
+import org.hibernate.criterion.Projections;
+import org.hibernate.criterion.PropertyProjection;
+import org.springframework.util.Assert;
+
+/**
+ * 聚合查询定义: 分组属性、聚合函数(sum/avg/min/max/count/count distinct)、having条件、排序和结果数上限,
+ * 转换为DetachedCriteria的投影在数据库中执行, 见{@link BaseDAO#aggregate(org.hibernate.criterion.DetachedCriteria, Aggregation)}
+ * <p>
+ * 每列有一个别名(分组属性默认为属性名的最后一段), 结果行按定义顺序排列各列; having和排序通过别名引用列.
+ * 关联属性需在查询条件中createAlias, 按多对一关联分组时使用其ID(如 dept.id)
+ *
+ * <pre>
+ * Aggregation.create().groupBy("dept.id").sum("salary", "total").count("n")
+ * 		.having("total", "&gt;", 10000).orderBy("total", false).limit(10)
+ * </pre>
+ */
+public class Aggregation {
+
+	private static final List<String> OPERATORS = Arrays.asList("=", "<>",
+			"<", "<=", ">", ">=");
+
+	private final List<Column> columns = new ArrayList<Column>();
+	private final List<Having> havings = new ArrayList<Having>();
+	private final List<Order> orders = new ArrayList<Order>();
+	private int limit;
+
+	public static Aggregation create() {
+		return new Aggregation();
+	}
+
+	/**
+	 * 按属性分组, 别名为属性名的最后一段
+	 * @param properties 属性名
+	 * @return
+	 */
+	public Aggregation groupBy(String... properties) {
+		for (String property : properties) {
+			groupBy(property, property.substring(property.lastIndexOf('.') + 1));
+		}
+		return this;
+	}
+
+	/**
+	 * 按属性分组
+	 * @param property 属性名
+	 * @param alias 别名
+	 * @return
+	 */
+	public Aggregation groupBy(String property, String alias) {
+		return add(new Column(null, property, alias));
+	}
+
+	/**
+	 * 记录数 count(*)
+	 * @param alias 别名
+	 * @return
+	 */
+	public Aggregation count(String alias) {
+		return add(new Column("count", null, alias));
+	}
+
+	/**
+	 * 不重复值的个数 count(distinct property)
+	 */
+	public Aggregation countDistinct(String property, String alias) {
+		return add(new Column("count distinct", property, alias));
+	}
+
+	public Aggregation sum(String property, String alias) {
+		return add(new Column("sum", property, alias));
+	}
+
+	public Aggregation avg(String property, String alias) {
+		return add(new Column("avg", property, alias));
+	}
+
+	public Aggregation min(String property, String alias) {
+		return add(new Column("min", property, alias));
+	}
+
+	public Aggregation max(String property, String alias) {
+		return add(new Column("max", property, alias));
+	}
+
+	/**
+	 * 按聚合结果过滤分组(having)
+	 * @param alias 聚合列的别名
+	 * @param operator =, &lt;&gt;, &lt;, &lt;=, &gt;, &gt;=
+	 * @param value 比较的数值
+	 * @return
+	 */
+	public Aggregation having(String alias, String operator, Number value) {
+		Column column = column(alias);
+		Assert.notNull(column.function, "having must refer to an aggregate: "
+				+ alias);
+		Assert.isTrue(OPERATORS.contains(operator), "unsupported operator: "
+				+ operator);
+		Assert.notNull(value);
+		// 数值直接写入SQL(Criteria的分组子句不能绑定参数), 只接受数字
+		Assert.isTrue(value instanceof Integer || value instanceof Long
+				|| value instanceof Short || value instanceof Byte
+				|| value instanceof Double || value instanceof Float
+				|| value instanceof BigDecimal
+				|| value instanceof BigInteger,
+				"unsupported number type: " + value.getClass());
+		if (value instanceof Double || value instanceof Float) {
+			Assert.isTrue(!Double.isNaN(value.doubleValue())
+					&& !Double.isInfinite(value.doubleValue()));
+		}
+		havings.add(new Having(column, operator, value));
+		return this;
+	}
+
+	/**
+	 * 按列排序
+	 * @param alias 列的别名
+	 * @param ascending 是否升序
+	 * @return
+	 */
+	public Aggregation orderBy(String alias, boolean ascending) {
+		column(alias);
+		orders.add(ascending ? Order.asc(alias) : Order.desc(alias));
+		return this;
+	}
+
+	/**
+	 * 最多返回的分组数, 0表示不限制
+	 * @param limit
+	 * @return
+	 */
+	public Aggregation limit(int limit) {
+		Assert.isTrue(limit >= 0);
+		this.limit = limit;
+		return this;
+	}
+
+	public int getLimit() {
+		return limit;
+	}
+
+	public List<Order> getOrders() {
+		return orders;
+	}
+
+	/**
+	 * 各列的别名, 即结果行中各列的顺序
+	 * @return
+	 */
+	public String[] getAliases() {
+		String[] aliases = new String[columns.size()];
+		for (int i = 0; i < aliases.length; i++) {
+			aliases[i] = columns.get(i).alias;
+		}
+		return aliases;
+	}
+
+	/**
+	 * 取出结果中一列的数值, null为NaN
+	 * @param rows {@link BaseDAO#aggregate(org.hibernate.criterion.DetachedCriteria, Aggregation)}的结果
+	 * @param alias 列的别名
+	 * @return
+	 */
+	public double[] column(List<Object[]> rows, String alias) {
+		int index = columns.indexOf(column(alias));
+		double[] values = new double[rows.size()];
+		for (int i = 0; i < values.length; i++) {
+			Number value = (Number) rows.get(i)[index];
+			values[i] = null == value ? Double.NaN : value.doubleValue();
+		}
+		return values;
+	}
+
+	/**
+	 * 转换为Criteria投影, having条件附加在最后一个分组属性的group by子句之后
+	 * @return
+	 */
+	public Projection toProjection() {
+		Assert.notEmpty(columns, "no columns to aggregate");
+		int lastGroup = -1;
+		for (int i = 0; i < columns.size(); i++) {
+			if (null == columns.get(i).function) {
+				lastGroup = i;
+			}
+		}
+		Assert.isTrue(havings.isEmpty() || lastGroup >= 0,
+				"having requires group by");
+		ProjectionList projections = Projections.projectionList();
+		for (int i = 0; i < columns.size(); i++) {
+			Column column = columns.get(i);
+			Projection projection;
+			if (null != column.function) {
+				projection = column.aggregate();
+			} else if (i == lastGroup && !havings.isEmpty()) {
+				projection = new HavingGroupProjection(column.property,
+						havings);
+			} else {
+				projection = Projections.groupProperty(column.property);
+			}
+			projections.add(projection, column.alias);
+		}
+		return projections;
+	}
+
+	private Aggregation add(Column column) {
+		Assert.hasText(column.alias);
+		for (Column c : columns) {
+			Assert.isTrue(!c.alias.equals(column.alias), "duplicate alias: "
+					+ column.alias);
+		}
+		columns.add(column);
+		return this;
+	}
+
+	private Column column(String alias) {
+		for (Column column : columns) {
+			if (column.alias.equals(alias)) {
+				return column;
+			}
+		}
+		throw new IllegalArgumentException("unknown alias: " + alias);
+	}
+
+	/**
+	 * 结果列: 分组属性(function为null)或聚合函数
+	 */
+	private static final class Column {
+		final String function;
+		final String property;
+		final String alias;
+
+		Column(String function, String property, String alias) {
+			this.function = function;
+			this.property = property;
+			this.alias = alias;
+		}
+
+		Projection aggregate() {
+			if ("count".equals(function)) {
+				return Projections.rowCount();
+			}
+			if ("count distinct".equals(function)) {
+				return Projections.countDistinct(property);
+			}
+			if ("sum".equals(function)) {
+				return Projections.sum(property);
+			}
+			if ("avg".equals(function)) {
+				return Projections.avg(property);
+			}
+			if ("min".equals(function)) {
+				return Projections.min(property);
+			}
+			return Projections.max(property);
+		}
+
+		String toSqlString(Criteria criteria, CriteriaQuery criteriaQuery) {
+			if ("count".equals(function)) {
+				return "count(*)";
+			}
+			String sqlColumn = criteriaQuery.getColumn(criteria, property);
+			if ("count distinct".equals(function)) {
+				return "count(distinct " + sqlColumn + ")";
+			}
+			return function + "(" + sqlColumn + ")";
+		}
+	}
+
+	private static final class Having {
+		final Column column;
+		final String operator;
+		final Number value;
+
+		Having(Column column, String operator, Number value) {
+			this.column = column;
+			this.operator = operator;
+			this.value = value;
+		}
+	}
+
+	/**
+	 * 分组属性投影, 在group by子句之后附加having条件(Criteria没有having)
+	 */
+	private static final class HavingGroupProjection extends PropertyProjection {
+		private static final long serialVersionUID = 1L;
+
+		private final List<Having> havings;
+
+		HavingGroupProjection(String property, List<Having> havings) {
+			super(property, true);
+			this.havings = new ArrayList<Having>(havings);
+		}
+
+		@Override
+		public String toGroupSqlString(Criteria criteria,
+				CriteriaQuery criteriaQuery) throws HibernateException {
+			StringBuilder sql = new StringBuilder(super.toGroupSqlString(
+					criteria, criteriaQuery));
+			for (int i = 0; i < havings.size(); i++) {
+				Having having = havings.get(i);
+				sql.append(i == 0 ? " having " : " and ")
+						.append(having.column.toSqlString(criteria,
+								criteriaQuery)).append(' ')
+						.append(having.operator).append(' ')
+						.append(literal(having.value));
+			}
+			return sql.toString();
+		}
+
+		private static String literal(Number value) {
+			return value instanceof BigDecimal ? ((BigDecimal) value)
+					.toPlainString() : value.toString();
+		}
+	}
+}
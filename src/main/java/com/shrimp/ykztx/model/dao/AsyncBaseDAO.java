@@ -0,0 +1,132 @@
+package com.shrimp.ykztx.model.dao;
+
+import java.io.Serializable;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+
+import org.hibernate.criterion.DetachedCriteria;
+import org.hibernate.criterion.Order;
+import org.springframework.util.concurrent.ListenableFuture;
+
+import com.shrimp.ykztx.web.model.Page;
+
+/**
+ * {@link BaseDAO}的异步版本, 每个操作在有界线程池中使用独立的Session和事务执行,
+ * 相互独立的查询可以并行, 不需要手工管理线程和Session
+ * <p>
+ * 返回的实体在事务结束后处于脱管状态, 未初始化的延迟加载属性不能再访问
+ *
+ * @param <T> entity
+ * @param <ID> primary key
+ */
+public interface AsyncBaseDAO<T, ID extends Serializable> {
+
+	/**
+	 * @see BaseDAO#get(Serializable)
+	 * @param id
+	 * @return 持久化对象
+	 */
+	ListenableFuture<T> get(ID id);
+
+	/**
+	 * @see BaseDAO#getAll(java.util.Collection)
+	 * @param ids 对象ID集合
+	 * @return 按ids顺序排列的ID-对象映射, 不存在的ID对应的值为null
+	 */
+	ListenableFuture<Map<ID, T>> getAll(Collection<ID> ids);
+
+	/**
+	 * @see BaseDAO#getByProperty(String, Object)
+	 * @param propName 属性名
+	 * @param propVal 属性值
+	 * @return
+	 */
+	ListenableFuture<T> getByProperty(String propName, Object propVal);
+
+	/**
+	 * @see BaseDAO#findByProperty(String, Object)
+	 * @param propName 属性名
+	 * @param propVal 属性值
+	 * @return
+	 */
+	ListenableFuture<List<T>> findByProperty(String propName, Object propVal);
+
+	/**
+	 * @see BaseDAO#findByPage(int, int, boolean, Map, Map, Order[])
+	 * @param pageIndex 当前页(0~n)
+	 * @param pageSize 页面大小(每页最大记录数)
+	 * @param isCacheable 是否启用缓存
+	 * @param eqConditions equals查询条件(key:hibernate entity 属性名,value 属性值)
+	 * @param likeConditions like查询条件(key:hibernate entity 属性名,value 属性值)
+	 * @param orders 排序字段
+	 * @return 页面查询结果封装对象
+	 */
+	ListenableFuture<Page<T>> findByPage(int pageIndex, int pageSize,
+			boolean isCacheable, Map<String, Object> eqConditions,
+			Map<String, String> likeConditions, Order[] orders);
+
+	/**
+	 * @see BaseDAO#findByPage(DetachedCriteria, int, int, boolean)
+	 * @param dc 查询条件
+	 * @param pageIndex 当前页(0~n)
+	 * @param pageSize 页面大小(每页最大记录数)
+	 * @param isCacheable 是否启用缓存
+	 * @return
+	 */
+	ListenableFuture<Page<T>> findByPage(DetachedCriteria dc, int pageIndex,
+			int pageSize, boolean isCacheable);
+
+	/**
+	 * @see BaseDAO#listByDC(DetachedCriteria)
+	 * @param dc
+	 * @return
+	 */
+	ListenableFuture<List<?>> listByDC(DetachedCriteria dc);
+
+	/**
+	 * @see BaseDAO#countByDC(DetachedCriteria)
+	 * @param dc
+	 * @return
+	 */
+	ListenableFuture<Long> countByDC(DetachedCriteria dc);
+
+	/**
+	 * @see BaseDAO#save(Object)
+	 * @param t 实体对象
+	 * @return 实体对象
+	 */
+	ListenableFuture<T> save(T t);
+
+	/**
+	 * @see BaseDAO#update(Object)
+	 * @param entity 实体对象
+	 * @return 实体对象
+	 */
+	ListenableFuture<Object> update(Object entity);
+
+	/**
+	 * @see BaseDAO#delete(Object)
+	 * @param entity 实体对象
+	 * @return
+	 */
+	ListenableFuture<Void> delete(Object entity);
+
+	/**
+	 * @see BaseDAO#updatePropertiesById(Map, Serializable)
+	 * @param updateSet 需要更新的字段名及值 key-value
+	 * @param id
+	 * @return
+	 */
+	ListenableFuture<Integer> updatePropertiesById(
+			Map<String, Object> updateSet, ID id);
+
+	/**
+	 * 在独立事务中执行任意DAO操作
+	 * @param readOnly 是否只读事务
+	 * @param callback DAO操作
+	 * @return 操作结果
+	 */
+	<R> ListenableFuture<R> execute(boolean readOnly,
+			DAOCallback<T, ID, R> callback);
+}
@@ -1,6 +1,8 @@
 package com.shrimp.ykztx.model.dao;
 
+import java.io.File;
 import java.io.Serializable;
+import java.util.Collection;
 import java.util.List;
 import java.util.Map;
 
@@ -8,7 +10,11 @@ import org.hibernate.criterion.Criterion;
 import org.hibernate.criterion.DetachedCriteria;
 import org.hibernate.criterion.Order;
 
+import com.shrimp.ykztx.model.dao.support.CacheStatistics;
+import com.shrimp.ykztx.model.dao.support.ExportFormat;
+import com.shrimp.ykztx.web.model.KeysetPage;
 import com.shrimp.ykztx.web.model.Page;
+import com.shrimp.ykztx.web.model.Page.TotalMode;
 
 
 public interface BaseDAO<T, ID extends Serializable> {
@@ -27,6 +33,13 @@ public interface BaseDAO<T, ID extends Serializable> {
 	 * @return 持久化对象
 	 */
 	T get(ID id, boolean lock);
+
+	/**
+	 * 根据ID批量查询, 依次从Session、二级缓存中查找, 未命中的ID使用分块的IN查询一次取回
+	 * @param ids 对象ID集合
+	 * @return 按ids顺序排列的ID-对象映射(去重), 不存在的ID对应的值为null
+	 */
+	Map<ID, T> getAll(Collection<ID> ids);
 	
 
 	/**
@@ -77,6 +90,64 @@ public interface BaseDAO<T, ID extends Serializable> {
 	 */
 	Object saveOrUpdate(Object entity);
 
+	/**
+	 * 批量保存对象, 使用默认批大小, 每批flush后从Session中移除(evict)本批实体
+	 * 
+	 * @param entities 实体对象集合
+	 * @return 执行报告
+	 */
+	BatchReport saveAll(Collection<? extends T> entities);
+
+	/**
+	 * 批量保存对象
+	 * 
+	 * @param entities 实体对象集合
+	 * @param batchSize 批大小(每批flush后从当前Session中移除本批实体, 写入后这些实体为游离状态; Session中的其他实体不受影响,
+	 *            但其待写入的修改随flush一并写入. 与hibernate.jdbc.batch_size一致效果最佳)
+	 * @param stateless 是否使用StatelessSession(每批独立事务提交, 不经过一级/二级缓存, 不级联)
+	 * @return 执行报告
+	 */
+	BatchReport saveAll(Collection<? extends T> entities, int batchSize,
+			boolean stateless);
+
+	/**
+	 * 批量更新对象, 使用默认批大小, 每批flush后从Session中移除(evict)本批实体
+	 * 
+	 * @param entities 实体对象集合
+	 * @return 执行报告
+	 */
+	BatchReport updateAll(Collection<? extends T> entities);
+
+	/**
+	 * 批量更新对象
+	 * 
+	 * @param entities 实体对象集合
+	 * @param batchSize 批大小(每批flush后从当前Session中移除本批实体, 见{@link #saveAll(Collection, int, boolean)})
+	 * @param stateless 是否使用StatelessSession(每批独立事务提交)
+	 * @return 执行报告
+	 */
+	BatchReport updateAll(Collection<? extends T> entities, int batchSize,
+			boolean stateless);
+
+	/**
+	 * 批量保存或更新对象, 使用默认批大小, 每批flush后从Session中移除(evict)本批实体
+	 * 
+	 * @param entities 实体对象集合
+	 * @return 执行报告
+	 */
+	BatchReport saveOrUpdateAll(Collection<? extends T> entities);
+
+	/**
+	 * 批量保存或更新对象
+	 * 
+	 * @param entities 实体对象集合
+	 * @param batchSize 批大小(每批flush后从当前Session中移除本批实体, 见{@link #saveAll(Collection, int, boolean)})
+	 * @param stateless 是否使用StatelessSession(每批独立事务提交, ID为null时insert否则update)
+	 * @return 执行报告
+	 */
+	BatchReport saveOrUpdateAll(Collection<? extends T> entities,
+			int batchSize, boolean stateless);
+
 	/**
 	 * 删除对象
 	 * 
@@ -98,6 +169,30 @@ public interface BaseDAO<T, ID extends Serializable> {
 	 */
 	boolean deleteByIdUseHql(ID id);
 
+	/**
+	 * 根据ID批量删除, 按块(IN列表)使用HQL批量删除, 每块在独立的事务中执行(不参与当前事务), 不加锁读取;
+	 * 实体映射了集合或级联删除时改为每块加载后逐个删除, 由Hibernate处理级联
+	 * @param ids 记录ID集合
+	 * @return 执行报告, 记录数为实际删除的行数(主实体)
+	 */
+	BatchReport deleteAllById(Collection<ID> ids);
+
+	/**
+	 * 按条件批量删除, 每块在独立的事务中查询最多一块的ID并删除, 直到没有满足条件的记录, 其他同{@link #deleteAllById(Collection)}
+	 * @param dc 删除条件
+	 * @return 执行报告, 记录数为实际删除的行数(主实体)
+	 */
+	BatchReport deleteWhere(DetachedCriteria dc);
+
+	/**
+	 * 按版本删除记录(乐观并发, 不加锁), 实体需有@Version属性. 有集合或级联删除的实体加载后按版本删除并级联,
+	 * 加载后被并发修改时在flush时抛出乐观锁异常
+	 * @param id 记录ID
+	 * @param version 读取时的版本
+	 * @return 是否删除, 记录不存在或版本已变化时返回false
+	 */
+	boolean deleteById(ID id, Object version);
+
 	/**
 	 * 刷新对象
 	 * 
@@ -128,6 +223,23 @@ public interface BaseDAO<T, ID extends Serializable> {
 			Map<String, Object> eqConditions,
 			Map<String, String> likeConditions, Order[] orders);
 
+	/**
+	 * 分页查询（重载）
+	 * 
+	 * @param pageIndex 当前页(0~n)
+	 * @param pageSize 页面大小(每页最大记录数)
+	 * @param isCacheable 是否启用缓存
+	 * @param eqConditions equals查询条件(key:hibernate entity 属性名,value 属性值)
+	 * @param likeConditions like查询条件(key:hibernate entity 属性名,value 属性值)
+	 * @param orders  排序字段
+	 * @param totalMode 总数计算方式
+	 * @return 页面查询结果封装对象
+	 */
+	Page<T> findByPage(int pageIndex, int pageSize, boolean isCacheable,
+			Map<String, Object> eqConditions,
+			Map<String, String> likeConditions, Order[] orders,
+			TotalMode totalMode);
+
 	/**
 	 * 分页查询（重载）
 	 * @param dc 查询条件
@@ -138,7 +250,69 @@ public interface BaseDAO<T, ID extends Serializable> {
 	 */
 	Page<T> findByPage(DetachedCriteria dc, int pageIndex, int pageSize,
 			boolean isCacheable);
-	
+
+	/**
+	 * 分页查询（重载）
+	 * @param dc 查询条件
+	 * @param pageIndex 当前页(0~n)
+	 * @param pageSize 页面大小(每页最大记录数)
+	 * @param isCacheable 是否启用缓存
+	 * @param totalMode 总数计算方式: EXACT精确, CACHED缓存, ESTIMATED估算, NONE不计算只判断是否有下一页
+	 * @return
+	 */
+	Page<T> findByPage(DetachedCriteria dc, int pageIndex, int pageSize,
+			boolean isCacheable, TotalMode totalMode);
+
+	/**
+	 * 流式分页查询, 记录从游标中逐条交给handler(处理后从Session中移除), 不在内存中保存整页,
+	 * 用于将结果直接写出到响应流
+	 * @param dc 查询条件
+	 * @param pageIndex 当前页(0~n)
+	 * @param pageSize 页面大小(每页最大记录数)
+	 * @param totalMode 总数计算方式
+	 * @param handler 逐行回调, 返回false时停止
+	 * @return 分页信息, list为null
+	 */
+	Page<T> findByPage(DetachedCriteria dc, int pageIndex, int pageSize,
+			TotalMode totalMode, RowHandler<T> handler);
+
+	/**
+	 * 两阶段分页查询, 用于包含集合关联(join)的查询条件: 先按查询条件和排序查询当前页的不重复ID(分页在数据库中完成),
+	 * 再按ID查询实体并抓取fetchPaths指定的关联, 结果按第一步的顺序排列; 总数按不重复ID计算.
+	 * 按集合关联上的属性排序时, 每个主实体按其最小(升序)或最大(降序)的值排序
+	 * @param dc 查询条件
+	 * @param pageIndex 当前页(0~n)
+	 * @param pageSize 页面大小(每页最大记录数)
+	 * @param totalMode 总数计算方式
+	 * @param fetchPaths 第二步一并抓取(join fetch)的关联属性路径
+	 * @return
+	 */
+	Page<T> findByPageTwoPhase(DetachedCriteria dc, int pageIndex,
+			int pageSize, TotalMode totalMode, String... fetchPaths);
+
+	/**
+	 * 键集(seek)分页查询, 以上一页最后一条记录的排序字段值定位, 不使用offset,
+	 * 深页查询耗时不随页码增长(需要排序字段上有索引). 查询期间追加的条件和排序在返回前从dc中移除
+	 * @param dc 查询条件(不能带排序, 排序通过orders指定)
+	 * @param orders 排序字段(只支持实体自身的非空属性, 不支持ignoreCase, 末尾自动追加ID保证排序唯一)
+	 * @param cursor 上一页返回的游标{@link KeysetPage#getCursor()}, 查询第一页时为null
+	 * @param pageSize 页面大小(每页最大记录数)
+	 * @return 页面查询结果及下一页游标
+	 */
+	KeysetPage<T> findByKeyset(DetachedCriteria dc, Order[] orders,
+			String cursor, int pageSize);
+
+	/**
+	 * 键集(seek)分页查询（重载）
+	 * @param dc 查询条件(不能带排序, 排序通过orders指定)
+	 * @param orders 排序字段(只支持实体自身的非空属性, 不支持ignoreCase, 末尾自动追加ID保证排序唯一)
+	 * @param lastKeys 上一页最后一条记录的排序字段值(含追加的ID, 类型与字段一致), 查询第一页时为null
+	 * @param pageSize 页面大小(每页最大记录数)
+	 * @return 页面查询结果及下一页游标
+	 */
+	KeysetPage<T> findByKeyset(DetachedCriteria dc, Order[] orders,
+			Object[] lastKeys, int pageSize);
+
 	/**
 	 * 获取当前DAO对应entity的DetachedCriteria
 	 * @return
@@ -150,6 +324,44 @@ public interface BaseDAO<T, ID extends Serializable> {
 	 * @return
 	 */
 	List<T> findAll();
+
+	/**
+	 * 流式遍历所有记录, 内存占用与记录数无关
+	 * @param handler 逐行回调
+	 * @return 处理的记录数
+	 */
+	long forEach(RowHandler<T> handler);
+
+	/**
+	 * 使用DetachedCriteria流式遍历记录(前向滚动游标), 每条记录处理后从Session中移除,
+	 * 内存占用与记录数无关
+	 * @param dc 查询条件
+	 * @param fetchSize JDBC每次从数据库读取的记录数
+	 * @param handler 逐行回调
+	 * @return 处理的记录数
+	 */
+	long forEach(DetachedCriteria dc, int fetchSize, RowHandler<T> handler);
+
+	/**
+	 * 按ID区间并行导出全部记录到文件, 见{@link #export(DetachedCriteria, File, ExportFormat, int, int)}
+	 * @param target 目标文件
+	 * @param format 文件格式
+	 * @return 导出报告
+	 */
+	ExportReport export(File target, ExportFormat format);
+
+	/**
+	 * 按ID区间并行导出到文件: 每个区间在独立的Session中按ID顺序流式读取, 写入分片文件后按区间顺序合并;
+	 * 失败后以相同参数再次调用时从断点(target.checkpoint)继续, 只导出未完成的区间
+	 * @param dc 查询条件, 为null时导出全部记录
+	 * @param target 目标文件
+	 * @param format 文件格式
+	 * @param partitions 区间数
+	 * @param parallelism 并行线程数(每个线程占用一个连接)
+	 * @return 导出报告
+	 */
+	ExportReport export(DetachedCriteria dc, File target, ExportFormat format,
+			int partitions, int parallelism);
 	
 	/**
 	 * 单属性查询列表
@@ -174,6 +386,33 @@ public interface BaseDAO<T, ID extends Serializable> {
 	 * @return
 	 */
 	int updatePropertiesById(Map<String, Object> updateSet, ID id);
+
+	/**
+	 * 立即写入写后缓冲中的更新(见{@link #updatePropertiesById(Map, Serializable)}), 未启用写后缓冲时无操作.
+	 * 已在读写事务中时在该事务中写入, 事务回滚时更新放回缓冲
+	 */
+	void flushWriteBehind();
+
+	/**
+	 * 按版本更新字段(乐观并发, 不加锁), 更新成功时版本递增, 实体需有@Version属性
+	 * @param updateSet 需要更新的字段名及值 key-value
+	 * @param id
+	 * @param version 读取时的版本
+	 * @return 是否更新, 记录不存在或版本已变化时返回false
+	 */
+	boolean updatePropertiesById(Map<String, Object> updateSet, ID id,
+			Object version);
+
+	/**
+	 * 乐观并发修改: 读取实体, 交给modifier修改后按版本写入, 版本冲突时重新读取并重试(有上限, 退避等待),
+	 * 用于替代get(id, true)加锁后修改. 每次尝试在独立的短事务(StatelessSession)中执行,
+	 * 不参与当前事务, 不级联关联对象; 实体需有@Version属性
+	 * @param id 记录ID
+	 * @param modifier 修改回调, 重试时会再次调用
+	 * @return 写入后的实体, 记录不存在或modifier放弃修改时返回null
+	 * @throws org.springframework.dao.OptimisticLockingFailureException 重试次数用完仍冲突
+	 */
+	T modify(ID id, EntityModifier<T> modifier);
 	
 	/**
 	 * 根据条件更新字段
@@ -188,10 +427,31 @@ public interface BaseDAO<T, ID extends Serializable> {
 	 * @param dc
 	 * @return
 	 */
+	@SuppressWarnings("rawtypes")
 	List listByDC(DetachedCriteria dc,boolean isCacheable);
 	
+	/**
+	 * 只查询指定属性, 封装为实体对象(仅填充查询的属性)
+	 * @param dc
+	 * @param sels 属性名
+	 * @return
+	 */
+	@SuppressWarnings("rawtypes")
 	List listByDC(DetachedCriteria dc,String[] sels);
+
+	/**
+	 * 只查询指定属性, 封装为DTO. 每个(DTO类型, 属性集合)生成一次封装器并缓存, 封装时不使用反射
+	 * <p>
+	 * DTO需为public类, 提供与属性同名的public setter, 或参数顺序与sels一致的public构造器;
+	 * 关联属性(如 dept.name, 需在dc中createAlias)对应DTO中最后一段的属性名(name)
+	 * @param dc
+	 * @param sels 属性名, 顺序即列顺序
+	 * @param dtoClass DTO类型
+	 * @return
+	 */
+	<D> List<D> listByDC(DetachedCriteria dc, String[] sels, Class<D> dtoClass);
 	
+	@SuppressWarnings("rawtypes")
 	List listByDC(DetachedCriteria dc);
 
 	/**
@@ -207,6 +467,31 @@ public interface BaseDAO<T, ID extends Serializable> {
 	 * @return
 	 */
 	Long countByDC(DetachedCriteria dc);
+
+	/**
+	 * 聚合查询, 分组、聚合、having和排序都在数据库中执行, 只返回聚合结果.
+	 * 执行期间dc的投影和排序被替换, 结束后恢复
+	 * @param dc 查询条件
+	 * @param aggregation 聚合定义
+	 * @return 每个分组一行, 各列按{@link Aggregation#getAliases()}的顺序
+	 */
+	List<Object[]> aggregate(DetachedCriteria dc, Aggregation aggregation);
+
+	/**
+	 * 聚合查询, 结果封装为DTO(按别名填充, 见{@link #listByDC(DetachedCriteria, String[], Class)})
+	 * @param dc 查询条件
+	 * @param aggregation 聚合定义
+	 * @param dtoClass DTO类型
+	 * @return
+	 */
+	<D> List<D> aggregate(DetachedCriteria dc, Aggregation aggregation,
+			Class<D> dtoClass);
+
+	/**
+	 * 当前DAO对应entity的二级缓存统计信息(命中,未命中,写入,淘汰,大小)
+	 * @return 统计信息, entity未启用二级缓存时返回null
+	 */
+	CacheStatistics getCacheStatistics();
 	
 	
 }
@@ -0,0 +1,94 @@
+package com.shrimp.ykztx.model.dao;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * 批量写入的执行报告, 记录每批的记录数与耗时, 用于调整批大小
+ */
+public class BatchReport {
+	private final int batchSize;
+	private final boolean stateless;
+	private final List<Batch> batches = new ArrayList<Batch>();
+	private int rows;
+	private long elapsedMillis;
+
+	public BatchReport(int batchSize, boolean stateless) {
+		super();
+		this.batchSize = batchSize;
+		this.stateless = stateless;
+	}
+
+	/**
+	 * 记录一批的执行结果
+	 * @param batchRows 本批记录数
+	 * @param batchMillis 本批耗时(含flush/提交)
+	 */
+	public void addBatch(int batchRows, long batchMillis) {
+		batches.add(new Batch(batches.size(), batchRows, batchMillis));
+		rows += batchRows;
+		elapsedMillis += batchMillis;
+	}
+
+	public int getBatchSize() {
+		return batchSize;
+	}
+
+	public boolean isStateless() {
+		return stateless;
+	}
+
+	public List<Batch> getBatches() {
+		return Collections.unmodifiableList(batches);
+	}
+
+	public int getRows() {
+		return rows;
+	}
+
+	public long getElapsedMillis() {
+		return elapsedMillis;
+	}
+
+	/**
+	 * 每秒写入记录数
+	 * @return
+	 */
+	public double getRowsPerSecond() {
+		return elapsedMillis == 0 ? rows : rows * 1000.0 / elapsedMillis;
+	}
+
+	@Override
+	public String toString() {
+		return "BatchReport(rows=" + rows + ", batches=" + batches.size()
+				+ ", batchSize=" + batchSize + ", stateless=" + stateless
+				+ ", elapsed=" + elapsedMillis + "ms)";
+	}
+
+	public static class Batch {
+		private final int index;
+		private final int rows;
+		private final long elapsedMillis;
+
+		public Batch(int index, int rows, long elapsedMillis) {
+			super();
+			this.index = index;
+			this.rows = rows;
+			this.elapsedMillis = elapsedMillis;
+		}
+
+		public int getIndex() {
+			return index;
+		}
+
+		public int getRows() {
+			return rows;
+		}
+
+		public long getElapsedMillis() {
+			return elapsedMillis;
+		}
+
+	}
+}
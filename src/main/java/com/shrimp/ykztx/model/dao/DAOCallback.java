@@ -0,0 +1,20 @@
+package com.shrimp.ykztx.model.dao;
+
+import java.io.Serializable;
+
+/**
+ * 在独立事务中执行的DAO操作, 用于{@link AsyncBaseDAO#execute(boolean, DAOCallback)}
+ *
+ * @param <T> entity
+ * @param <ID> primary key
+ * @param <R> 返回值类型
+ */
+public interface DAOCallback<T, ID extends Serializable, R> {
+
+	/**
+	 * 执行DAO操作
+	 * @param dao 同步DAO, 在当前事务中调用
+	 * @return 操作结果
+	 */
+	R doInDAO(BaseDAO<T, ID> dao);
+}
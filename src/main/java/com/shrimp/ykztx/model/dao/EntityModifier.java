@@ -0,0 +1,16 @@
+package com.shrimp.ykztx.model.dao;
+
+/**
+ * 乐观并发修改的回调, 见{@link BaseDAO#modify(java.io.Serializable, EntityModifier)}
+ *
+ * @param <T> entity
+ */
+public interface EntityModifier<T> {
+
+	/**
+	 * 修改实体, 版本冲突重试时会以重新读取的实体再次调用, 因此不应有其他副作用
+	 * @param entity 当前读取的实体
+	 * @return 要写入的实体(通常为entity本身), 返回null时放弃修改
+	 */
+	T modify(T entity);
+}
@@ -0,0 +1,119 @@
+package com.shrimp.ykztx.model.dao;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * 分区导出的执行报告, 记录每个ID区间的记录数与耗时
+ */
+public class ExportReport {
+	private final int partitions;
+	private final int parallelism;
+	private final List<Range> ranges = new ArrayList<Range>();
+	private int resumedRanges;
+	private long rows;
+	private long elapsedMillis;
+
+	public ExportReport(int partitions, int parallelism) {
+		super();
+		this.partitions = partitions;
+		this.parallelism = parallelism;
+	}
+
+	/**
+	 * 记录一个区间的导出结果
+	 * @param index 区间序号
+	 * @param rangeRows 区间记录数
+	 * @param rangeMillis 区间耗时
+	 */
+	public synchronized void addRange(int index, long rangeRows,
+			long rangeMillis) {
+		ranges.add(new Range(index, rangeRows, rangeMillis));
+		rows += rangeRows;
+	}
+
+	/**
+	 * 记录从断点恢复时跳过的(上次已完成的)区间
+	 */
+	public synchronized void addResumedRange() {
+		resumedRanges++;
+	}
+
+	public void setElapsedMillis(long elapsedMillis) {
+		this.elapsedMillis = elapsedMillis;
+	}
+
+	public int getPartitions() {
+		return partitions;
+	}
+
+	public int getParallelism() {
+		return parallelism;
+	}
+
+	public synchronized List<Range> getRanges() {
+		return Collections.unmodifiableList(new ArrayList<Range>(ranges));
+	}
+
+	public synchronized int getResumedRanges() {
+		return resumedRanges;
+	}
+
+	/**
+	 * 本次导出的记录数(不含恢复时跳过的区间)
+	 * @return
+	 */
+	public synchronized long getRows() {
+		return rows;
+	}
+
+	/**
+	 * 总耗时(墙钟时间)
+	 * @return
+	 */
+	public long getElapsedMillis() {
+		return elapsedMillis;
+	}
+
+	/**
+	 * 每秒导出记录数
+	 * @return
+	 */
+	public double getRowsPerSecond() {
+		return elapsedMillis == 0 ? getRows() : getRows() * 1000.0
+				/ elapsedMillis;
+	}
+
+	@Override
+	public String toString() {
+		return "ExportReport(rows=" + getRows() + ", partitions=" + partitions
+				+ ", parallelism=" + parallelism + ", resumed="
+				+ getResumedRanges() + ", elapsed=" + elapsedMillis + "ms)";
+	}
+
+	public static class Range {
+		private final int index;
+		private final long rows;
+		private final long elapsedMillis;
+
+		public Range(int index, long rows, long elapsedMillis) {
+			super();
+			this.index = index;
+			this.rows = rows;
+			this.elapsedMillis = elapsedMillis;
+		}
+
+		public int getIndex() {
+			return index;
+		}
+
+		public long getRows() {
+			return rows;
+		}
+
+		public long getElapsedMillis() {
+			return elapsedMillis;
+		}
+	}
+}
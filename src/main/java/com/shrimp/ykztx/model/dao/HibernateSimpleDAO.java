@@ -2,9 +2,13 @@ package com.shrimp.ykztx.model.dao;
 
 import java.util.List;
 
+import org.hibernate.CacheMode;
 import org.hibernate.Criteria;
+import org.hibernate.HibernateException;
 import org.hibernate.Query;
 import org.hibernate.SQLQuery;
+import org.hibernate.ScrollMode;
+import org.hibernate.ScrollableResults;
 import org.hibernate.Session;
 import org.hibernate.SessionFactory;
 import org.hibernate.criterion.DetachedCriteria;
@@ -62,6 +66,7 @@ public abstract class HibernateSimpleDAO {
 		return query;
 	}
 	
+	@SuppressWarnings("rawtypes")
 	protected List findBySQL(String sql, boolean isCacheable, Object... values) {
 		return createSQLQuery(sql, values).setCacheable(isCacheable).list();
 	}
@@ -74,7 +79,7 @@ public abstract class HibernateSimpleDAO {
 	 * @param values
 	 *            数量可变的参数
 	 */
-	@SuppressWarnings("unchecked")
+	@SuppressWarnings("rawtypes")
 	protected List find(String hql, boolean isCacheable, Object... values) {
 		// return createQuery(hql, values).setCacheable(isCacheable).list();
 		Query query = createQuery(hql, values);
@@ -93,7 +98,7 @@ public abstract class HibernateSimpleDAO {
 	 * @param values
 	 * @return 查询结果
 	 */
-	@SuppressWarnings("unchecked")
+	@SuppressWarnings("rawtypes")
 	protected List findDistinct(String hql, boolean isCacheable,
 			Object... values) {
 		Query query = createQuery(hql, values);
@@ -109,7 +114,7 @@ public abstract class HibernateSimpleDAO {
 	 * @param values
 	 *            数量可变的参数
 	 */
-	@SuppressWarnings("unchecked")
+	@SuppressWarnings("rawtypes")
 	protected List findPage(String hql, boolean isCacheable, int page,
 			int maxSize, Object... values) {
 		Query query = createQuery(hql, values);
@@ -130,7 +135,7 @@ public abstract class HibernateSimpleDAO {
 	 * @param values
 	 * @return
 	 */
-	@SuppressWarnings("unchecked")
+	@SuppressWarnings("rawtypes")
 	protected List findPageDistinct(String hql, boolean isCacheable, int page,
 			int maxSize, Object... values) {
 		Query query = createQuery(hql, values);
@@ -152,8 +157,11 @@ public abstract class HibernateSimpleDAO {
 	 * @param dc
 	 * @return
 	 */
+	@SuppressWarnings("rawtypes")
 	public List listByDC(DetachedCriteria dc,boolean isCacheable) {
-		return dc.getExecutableCriteria(getSession()).list();
+		Criteria c = dc.getExecutableCriteria(getSession());
+		c.setCacheable(isCacheable);
+		return c.list();
 	}
 
 	/**
@@ -164,6 +172,7 @@ public abstract class HibernateSimpleDAO {
 	 * @param isCacheable 是否启用hibernate缓存
 	 * @return
 	 */
+	@SuppressWarnings("rawtypes")
 	public List listByDC(DetachedCriteria dc, int first, int max,
 			boolean isCacheable) {
 		Criteria c = dc.getExecutableCriteria(getSession());
@@ -173,6 +182,39 @@ public abstract class HibernateSimpleDAO {
 		return c.list();
 	}
 	
+	/**
+	 * 使用DetachedCriteria进行只读的前向滚动查询, 结果不进入二级缓存
+	 * @param dc
+	 * @param fetchSize JDBC每次从数据库读取的记录数
+	 * @return 滚动结果集, 使用完毕必须close
+	 */
+	public ScrollableResults scrollByDC(DetachedCriteria dc, int fetchSize) {
+		return scrollByDC(dc, 0, 0, fetchSize);
+	}
+
+	/**
+	 * 使用DC分段流式查询(前向只读游标, 不使用二级缓存)
+	 * @param dc
+	 * @param first 起始记录(0~n)
+	 * @param max 最大记录数, 0表示不限制
+	 * @param fetchSize JDBC每次读取的记录数
+	 * @return
+	 */
+	public ScrollableResults scrollByDC(DetachedCriteria dc, int first,
+			int max, int fetchSize) {
+		Criteria c = dc.getExecutableCriteria(getSession());
+		if (first > 0) {
+			c.setFirstResult(first);
+		}
+		if (max > 0) {
+			c.setMaxResults(max);
+		}
+		c.setFetchSize(fetchSize);
+		c.setReadOnly(true);
+		c.setCacheMode(CacheMode.IGNORE);
+		return c.scroll(ScrollMode.FORWARD_ONLY);
+	}
+
 	/**
 	 * 使用DC查询唯一记录
 	 * @param dc
@@ -190,7 +232,25 @@ public abstract class HibernateSimpleDAO {
 	public Long countByDC(DetachedCriteria dc) {
 		Criteria c = dc.getExecutableCriteria(getSession());
 		c.setProjection(Projections.rowCount());
-		return new Long((Integer) c.uniqueResult());
+		return ((Number) c.uniqueResult()).longValue();
+	}
+
+	/**
+	 * 使用数据库统计信息估算表的记录数(MySQL information_schema, InnoDB为近似值)
+	 * @param tableName 表名
+	 * @return 估算的记录数, 无法估算时返回null
+	 */
+	protected Long estimateTableRows(String tableName) {
+		try {
+			Object rows = createSQLQuery(
+					"select table_rows from information_schema.tables where table_schema = database() and table_name = ?",
+					tableName).uniqueResult();
+			return null == rows ? null : ((Number) rows).longValue();
+		} catch (HibernateException e) {
+			log.warn("estimate rows of table {} failed: {}", tableName,
+					e.getMessage());
+			return null;
+		}
 	}
 
 	@Autowired
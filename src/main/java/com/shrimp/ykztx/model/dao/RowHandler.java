@@ -0,0 +1,16 @@
+package com.shrimp.ykztx.model.dao;
+
+/**
+ * 流式查询的逐行回调
+ *
+ * @param <T> entity
+ */
+public interface RowHandler<T> {
+
+	/**
+	 * 处理一条记录, 返回后该记录会从Session中移除(evict), 对其修改不会被持久化
+	 * @param row 当前记录
+	 * @return 是否继续遍历, 返回false时停止查询
+	 */
+	boolean handle(T row);
+}
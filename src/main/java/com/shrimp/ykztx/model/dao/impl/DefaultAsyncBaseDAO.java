@@ -0,0 +1,208 @@
+package com.shrimp.ykztx.model.dao.impl;
+
+import java.io.Serializable;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+
+import org.hibernate.criterion.DetachedCriteria;
+import org.hibernate.criterion.Order;
+import org.springframework.core.task.AsyncListenableTaskExecutor;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.support.TransactionCallback;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.util.Assert;
+import org.springframework.util.concurrent.ListenableFuture;
+
+import com.shrimp.ykztx.model.dao.AsyncBaseDAO;
+import com.shrimp.ykztx.model.dao.BaseDAO;
+import com.shrimp.ykztx.model.dao.DAOCallback;
+import com.shrimp.ykztx.web.model.Page;
+
+/**
+ * 包装同步DAO的异步实现, 每个操作提交到有界线程池(applicationContext中的asyncDaoExecutor),
+ * 在工作线程中通过TransactionTemplate开启独立的Session和事务; 查询使用只读事务
+ * <p>
+ * 线程池大小不应超过连接池大小, 队列满时由调用线程执行(背压), 例如:
+ * <pre>
+ * new DefaultAsyncBaseDAO&lt;User, String&gt;(userDAO, transactionManager, asyncDaoExecutor)
+ * </pre>
+ *
+ * @param <T> entity
+ * @param <ID> primary key
+ */
+public class DefaultAsyncBaseDAO<T, ID extends Serializable> implements
+		AsyncBaseDAO<T, ID> {
+
+	private final BaseDAO<T, ID> dao;
+	private final TransactionTemplate readTemplate;
+	private final TransactionTemplate writeTemplate;
+	private final AsyncListenableTaskExecutor executor;
+
+	public DefaultAsyncBaseDAO(BaseDAO<T, ID> dao,
+			PlatformTransactionManager transactionManager,
+			AsyncListenableTaskExecutor executor) {
+		Assert.notNull(dao);
+		Assert.notNull(transactionManager);
+		Assert.notNull(executor);
+		this.dao = dao;
+		this.executor = executor;
+		this.writeTemplate = new TransactionTemplate(transactionManager);
+		this.writeTemplate
+				.setPropagationBehavior(TransactionTemplate.PROPAGATION_REQUIRES_NEW);
+		this.readTemplate = new TransactionTemplate(transactionManager);
+		this.readTemplate
+				.setPropagationBehavior(TransactionTemplate.PROPAGATION_REQUIRES_NEW);
+		this.readTemplate.setReadOnly(true);
+	}
+
+	@Override
+	public ListenableFuture<T> get(final ID id) {
+		return execute(true, new DAOCallback<T, ID, T>() {
+			@Override
+			public T doInDAO(BaseDAO<T, ID> dao) {
+				return dao.get(id);
+			}
+		});
+	}
+
+	@Override
+	public ListenableFuture<Map<ID, T>> getAll(final Collection<ID> ids) {
+		return execute(true, new DAOCallback<T, ID, Map<ID, T>>() {
+			@Override
+			public Map<ID, T> doInDAO(BaseDAO<T, ID> dao) {
+				return dao.getAll(ids);
+			}
+		});
+	}
+
+	@Override
+	public ListenableFuture<T> getByProperty(final String propName,
+			final Object propVal) {
+		return execute(true, new DAOCallback<T, ID, T>() {
+			@Override
+			public T doInDAO(BaseDAO<T, ID> dao) {
+				return dao.getByProperty(propName, propVal);
+			}
+		});
+	}
+
+	@Override
+	public ListenableFuture<List<T>> findByProperty(final String propName,
+			final Object propVal) {
+		return execute(true, new DAOCallback<T, ID, List<T>>() {
+			@Override
+			public List<T> doInDAO(BaseDAO<T, ID> dao) {
+				return dao.findByProperty(propName, propVal);
+			}
+		});
+	}
+
+	@Override
+	public ListenableFuture<Page<T>> findByPage(final int pageIndex,
+			final int pageSize, final boolean isCacheable,
+			final Map<String, Object> eqConditions,
+			final Map<String, String> likeConditions, final Order[] orders) {
+		return execute(true, new DAOCallback<T, ID, Page<T>>() {
+			@Override
+			public Page<T> doInDAO(BaseDAO<T, ID> dao) {
+				return dao.findByPage(pageIndex, pageSize, isCacheable,
+						eqConditions, likeConditions, orders);
+			}
+		});
+	}
+
+	@Override
+	public ListenableFuture<Page<T>> findByPage(final DetachedCriteria dc,
+			final int pageIndex, final int pageSize, final boolean isCacheable) {
+		return execute(true, new DAOCallback<T, ID, Page<T>>() {
+			@Override
+			public Page<T> doInDAO(BaseDAO<T, ID> dao) {
+				return dao.findByPage(dc, pageIndex, pageSize, isCacheable);
+			}
+		});
+	}
+
+	@Override
+	public ListenableFuture<List<?>> listByDC(final DetachedCriteria dc) {
+		return execute(true, new DAOCallback<T, ID, List<?>>() {
+			@Override
+			public List<?> doInDAO(BaseDAO<T, ID> dao) {
+				return dao.listByDC(dc);
+			}
+		});
+	}
+
+	@Override
+	public ListenableFuture<Long> countByDC(final DetachedCriteria dc) {
+		return execute(true, new DAOCallback<T, ID, Long>() {
+			@Override
+			public Long doInDAO(BaseDAO<T, ID> dao) {
+				return dao.countByDC(dc);
+			}
+		});
+	}
+
+	@Override
+	public ListenableFuture<T> save(final T t) {
+		return execute(false, new DAOCallback<T, ID, T>() {
+			@Override
+			public T doInDAO(BaseDAO<T, ID> dao) {
+				return dao.save(t);
+			}
+		});
+	}
+
+	@Override
+	public ListenableFuture<Object> update(final Object entity) {
+		return execute(false, new DAOCallback<T, ID, Object>() {
+			@Override
+			public Object doInDAO(BaseDAO<T, ID> dao) {
+				return dao.update(entity);
+			}
+		});
+	}
+
+	@Override
+	public ListenableFuture<Void> delete(final Object entity) {
+		return execute(false, new DAOCallback<T, ID, Void>() {
+			@Override
+			public Void doInDAO(BaseDAO<T, ID> dao) {
+				dao.delete(entity);
+				return null;
+			}
+		});
+	}
+
+	@Override
+	public ListenableFuture<Integer> updatePropertiesById(
+			final Map<String, Object> updateSet, final ID id) {
+		return execute(false, new DAOCallback<T, ID, Integer>() {
+			@Override
+			public Integer doInDAO(BaseDAO<T, ID> dao) {
+				return dao.updatePropertiesById(updateSet, id);
+			}
+		});
+	}
+
+	@Override
+	public <R> ListenableFuture<R> execute(boolean readOnly,
+			final DAOCallback<T, ID, R> callback) {
+		Assert.notNull(callback);
+		final TransactionTemplate template = readOnly ? readTemplate
+				: writeTemplate;
+		return executor.submitListenable(new Callable<R>() {
+			@Override
+			public R call() throws Exception {
+				return template.execute(new TransactionCallback<R>() {
+					@Override
+					public R doInTransaction(TransactionStatus status) {
+						return callback.doInDAO(dao);
+					}
+				});
+			}
+		});
+	}
+}
@@ -1,26 +1,114 @@
 package com.shrimp.ykztx.model.dao.impl;
 
+import java.io.File;
 import java.io.Serializable;
+import java.lang.reflect.Field;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.TreeSet;
 
+import org.hibernate.FetchMode;
 import org.hibernate.LockMode;
 import org.hibernate.Query;
+import org.hibernate.ScrollableResults;
+import org.hibernate.Session;
+import org.hibernate.StaleStateException;
+import org.hibernate.StatelessSession;
+import org.hibernate.Transaction;
+import org.hibernate.Criteria;
+import org.hibernate.criterion.AbstractEmptinessExpression;
+import org.hibernate.criterion.BetweenExpression;
+import org.hibernate.criterion.Conjunction;
+import org.hibernate.criterion.Criterion;
+import org.hibernate.criterion.IdentifierEqExpression;
+import org.hibernate.criterion.InExpression;
+import org.hibernate.criterion.Junction;
+import org.hibernate.criterion.LikeExpression;
+import org.hibernate.criterion.LogicalExpression;
+import org.hibernate.criterion.NotExpression;
+import org.hibernate.criterion.NotNullExpression;
+import org.hibernate.criterion.NullExpression;
+import org.hibernate.criterion.PropertyExpression;
+import org.hibernate.criterion.SimpleExpression;
+import org.hibernate.criterion.SizeExpression;
+import org.hibernate.engine.spi.TypedValue;
+import org.hibernate.loader.criteria.CriteriaQueryTranslator;
+import org.hibernate.engine.spi.CascadeStyle;
+import org.hibernate.engine.spi.CascadingActions;
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+import org.hibernate.engine.spi.SessionImplementor;
+import org.hibernate.jdbc.Work;
 import org.hibernate.criterion.DetachedCriteria;
+import org.hibernate.criterion.Disjunction;
 import org.hibernate.criterion.MatchMode;
 import org.hibernate.criterion.Order;
 import org.hibernate.criterion.ProjectionList;
 import org.hibernate.criterion.Projections;
 import org.hibernate.criterion.Restrictions;
-import org.hibernate.transform.Transformers;
+import org.hibernate.internal.CriteriaImpl;
+import org.hibernate.metadata.ClassMetadata;
+import org.hibernate.persister.entity.AbstractEntityPersister;
+import org.hibernate.persister.entity.EntityPersister;
+import org.hibernate.proxy.HibernateProxy;
+import org.hibernate.transform.BasicTransformerAdapter;
+import org.hibernate.transform.ResultTransformer;
+import org.hibernate.type.Type;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 import org.springframework.util.Assert;
+import org.springframework.util.ClassUtils;
+import org.springframework.util.ObjectUtils;
+import org.springframework.util.ReflectionUtils;
 
+import com.codahale.metrics.Counter;
+import com.codahale.metrics.MetricRegistry;
 import com.shrimp.ykztx.model.User;
+import com.shrimp.ykztx.model.dao.Aggregation;
 import com.shrimp.ykztx.model.dao.BaseDAO;
+import com.shrimp.ykztx.model.dao.BatchReport;
+import com.shrimp.ykztx.model.dao.EntityModifier;
+import com.shrimp.ykztx.model.dao.ExportReport;
 import com.shrimp.ykztx.model.dao.HibernateSimpleDAO;
+import com.shrimp.ykztx.model.dao.RowHandler;
+import com.shrimp.ykztx.model.dao.support.CacheStatistics;
+import com.shrimp.ykztx.model.dao.support.CountCache;
+import com.shrimp.ykztx.model.dao.support.DaoMetricsInterceptor;
+import com.shrimp.ykztx.model.dao.support.EntityVersions;
+import com.shrimp.ykztx.model.dao.support.EntityWriteListener;
+import com.shrimp.ykztx.model.dao.support.NaturalKeyCache;
+import com.shrimp.ykztx.model.dao.support.NgramIndex;
+import com.shrimp.ykztx.model.dao.support.NgramIndexes;
+import com.shrimp.ykztx.model.dao.support.ExportFormat;
+import com.shrimp.ykztx.model.dao.support.KeysetCursor;
+import com.shrimp.ykztx.model.dao.support.ProjectionAccessors;
+import com.shrimp.ykztx.model.dao.support.QueryTemplateRegistry;
+import com.shrimp.ykztx.model.dao.support.RangeExporter;
+import com.shrimp.ykztx.model.dao.support.ReplicaRoutingDataSource;
+import com.shrimp.ykztx.model.dao.support.ResultCache;
+import com.shrimp.ykztx.model.dao.support.WriteBehindBuffer;
+import com.shrimp.ykztx.model.dao.support.QueryTemplateRegistry.Compiler;
+import com.shrimp.ykztx.model.dao.support.QueryTemplateRegistry.QueryTemplate;
+import com.shrimp.ykztx.web.model.KeysetPage;
 import com.shrimp.ykztx.web.model.Page;
+import com.shrimp.ykztx.web.model.Page.TotalMode;
 
 /**
  * 
@@ -30,9 +118,96 @@ import com.shrimp.ykztx.web.model.Page;
  * @param <ID> primary key name
  */
 public abstract class DefaultBaseDAO<T, ID extends Serializable> extends
-		HibernateSimpleDAO implements BaseDAO<T, ID> {
+		HibernateSimpleDAO implements BaseDAO<T, ID>, InitializingBean,
+		DisposableBean {
 
-	
+	/** 乐观并发重试退避的随机抖动 */
+	private static final Random BACKOFF_JITTER = new Random();
+
+	/** 聚合结果按行返回(单列时也是数组) */
+	private static final ResultTransformer TUPLE = new BasicTransformerAdapter() {
+		private static final long serialVersionUID = 1L;
+
+		@Override
+		public Object transformTuple(Object[] tuple, String[] aliases) {
+			return tuple;
+		}
+	};
+
+	private MetricRegistry metricRegistry = new MetricRegistry();
+
+	/** 可拼接进HQL的属性名, 见{@link #getQueryablePaths()} */
+	private volatile Set<String> queryableNames;
+
+	/** 写后缓冲, {@link #isWriteBehind()}时创建 */
+	private WriteBehindBuffer writeBehind;
+
+	/**
+	 * 指标注册表, 用于乐观并发冲突/重试统计, 未配置时只在DAO内部记录
+	 * @param metricRegistry
+	 */
+	@Autowired(required = false)
+	public void setMetricRegistry(MetricRegistry metricRegistry) {
+		this.metricRegistry = metricRegistry;
+	}
+
+	/**
+	 * 注册Session写入事件监听器({@link EntityWriteListener})和自然键属性, 启动时在后台建立{@link #getNgramIndexedProperties()}的n-gram索引,
+	 * 按需创建写后缓冲
+	 */
+	@Override
+	public void afterPropertiesSet() {
+		EntityWriteListener.register(sessionFactory);
+		if (getNaturalKeyProperties().length > 0) {
+			NaturalKeyCache.register(getEntityClass(),
+					getNaturalKeyProperties());
+		}
+		String[] properties = getNgramIndexedProperties();
+		if (properties.length > 0) {
+			NgramIndexes.build(sessionFactory, getEntityClass(), properties);
+		}
+		if (isWriteBehind()) {
+			writeBehind = new WriteBehindBuffer(getEntityClass()
+					.getSimpleName(), getWriteBehindMaxPending(),
+					getWriteBehindInterval(), new WriteBehindBuffer.Flusher() {
+						@Override
+						public void flush(
+								Map<Serializable, WriteBehindBuffer.Update> updates) {
+							writeBuffered(updates);
+						}
+					}, metricRegistry, MetricRegistry.name(
+							DaoMetricsInterceptor.PREFIX, getEntityClass()
+									.getSimpleName(), "writeBehind"));
+		}
+	}
+
+	/**
+	 * 关闭时写入写后缓冲中剩余的更新
+	 */
+	@Override
+	public void destroy() {
+		if (null != writeBehind) {
+			writeBehind.close();
+		}
+	}
+
+	/**
+	 * 使用内存n-gram索引的字符串属性, {@link #findByPage(int, int, boolean, Map, Map, Order[], TotalMode)}
+	 * 的like条件先由索引得到候选ID, 再只查询这些记录; 默认没有, 子类可覆盖.
+	 * 索引常驻内存(每条记录每个属性约为值长度个int), 只适合中小表的常用搜索字段
+	 * @return 属性名
+	 */
+	protected String[] getNgramIndexedProperties() {
+		return new String[0];
+	}
+
+	/**
+	 * n-gram索引候选ID的上限, 超过时回退到数据库like查询
+	 * @return
+	 */
+	protected int getNgramCandidateLimit() {
+		return 1000;
+	}
 
 	/**
 	 * 获取当前DAO对应的entity的class类
@@ -57,7 +232,99 @@ public abstract class DefaultBaseDAO<T, ID extends Serializable> extends
 	protected Serializable getIdFromEntity(T entity) {
 		return getSession().getIdentifier(entity);
 	}
-	
+
+	/**
+	 * 获取当前DAO对应entity的表名(不含schema)
+	 * @return
+	 */
+	protected String getTableName() {
+		String table = ((AbstractEntityPersister) sessionFactory
+				.getClassMetadata(getEntityClass())).getTableName();
+		return table.substring(table.lastIndexOf('.') + 1).replace("`", "");
+	}
+
+	/**
+	 * 分页总数缓存的有效期(毫秒), 用于{@link TotalMode#CACHED}
+	 * @return
+	 */
+	protected long getCountCacheTtl() {
+		return 60 * 1000L;
+	}
+
+	/**
+	 * 查询结果缓存每个实体最多缓存的查询数(按LRU淘汰), 0表示不使用, isCacheable的查询改用hibernate查询缓存
+	 * @return
+	 */
+	protected int getResultCacheSize() {
+		return 1000;
+	}
+
+	/**
+	 * 查询结果缓存的有效期(毫秒), 兜底绕过DAO的写入
+	 * @return
+	 */
+	protected long getResultCacheTtl() {
+		return 5 * 60 * 1000L;
+	}
+
+	/**
+	 * HQL批量写入和StatelessSession写入(不触发Hibernate事件)后清理该实体相关的缓存, 存在事务同步时在事务结束后再清理一次,
+	 * 避免事务提交前其他线程读到旧数据并重新缓存; 同时开始当前线程的读己之写窗口(只读事务暂时读主库).
+	 * 通过Session的写入由{@link EntityWriteListener}处理
+	 * @param entityClass 被写入的实体类
+	 */
+	protected void afterWrite(final Class<?> entityClass) {
+		evictCaches(entityClass);
+		ReplicaRoutingDataSource.markWrite();
+		if (TransactionSynchronizationManager.isSynchronizationActive()) {
+			TransactionSynchronizationManager
+					.registerSynchronization(new TransactionSynchronizationAdapter() {
+						@Override
+						public void afterCompletion(int status) {
+							evictCaches(entityClass);
+							ReplicaRoutingDataSource.markWrite();
+						}
+					});
+		}
+	}
+
+	/**
+	 * 清理实体相关的缓存(分页总数、查询结果、自然键否定条目), 并递增实体的修改版本(用于列表接口的条件请求)
+	 * @param entityClass 被写入的实体类
+	 */
+	protected void evictCaches(Class<?> entityClass) {
+		CountCache.invalidate(entityClass);
+		ResultCache.invalidate(entityClass);
+		NaturalKeyCache.invalidate(entityClass);
+		EntityVersions.bump(entityClass);
+	}
+
+	/**
+	 * 执行HQL批量更新/删除并清理受影响实体(语句涉及的表所映射的实体)的缓存, 子类执行批量HQL时使用,
+	 * 直接createQuery().executeUpdate()不会清理缓存
+	 * @param hql update/delete语句
+	 * @param values 参数
+	 * @return 影响的行数
+	 */
+	@SuppressWarnings("unchecked")
+	protected int executeUpdate(String hql, Object... values) {
+		int rows = createQuery(hql, values).executeUpdate();
+		SessionFactoryImplementor factory = (SessionFactoryImplementor) sessionFactory;
+		Set<Serializable> spaces = factory.getQueryPlanCache()
+				.getHQLQueryPlan(hql, false, Collections.EMPTY_MAP)
+				.getQuerySpaces();
+		for (EntityPersister persister : factory.getEntityPersisters()
+				.values()) {
+			for (Serializable space : persister.getQuerySpaces()) {
+				if (spaces.contains(space)) {
+					afterWrite(persister.getMappedClass());
+					break;
+				}
+			}
+		}
+		return rows;
+	}
+
 	/**
 	 * @see Session.get(Class,Serializable)
 	 * @param id
@@ -72,7 +339,7 @@ public abstract class DefaultBaseDAO<T, ID extends Serializable> extends
 	/**
 	 * @see Session.get(Class,Serializable,LockMode)
 	 * @param id 对象ID
-	 * @param lock 是否锁定，使用LockMode.UPGRADE
+	 * @param lock 是否锁定，使用LockMode.UPGRADE(锁定读总是使用主库, 只读事务已使用从库连接时抛出IllegalStateException)
 	 * @return 持久化对象
 	 */
 	@SuppressWarnings({ "unchecked", "deprecation" })
@@ -81,6 +348,7 @@ public abstract class DefaultBaseDAO<T, ID extends Serializable> extends
 		Assert.notNull(id);
 		T entity;
 		if (lock) {
+			ReplicaRoutingDataSource.requirePrimary();
 			entity = (T) getSession().get(getEntityClass(), id,
 					LockMode.UPGRADE);
 		} else {
@@ -89,18 +357,82 @@ public abstract class DefaultBaseDAO<T, ID extends Serializable> extends
 		return entity;
 	}
 	
+	/**
+	 * 批量查询时IN列表的最大长度, 子类可覆盖
+	 * @return
+	 */
+	protected int getInListChunkSize() {
+		return 500;
+	}
+
+	/**
+	 * 根据ID批量查询, 依次从Session、二级缓存中查找, 未命中的ID按{@link #getInListChunkSize()}分块使用IN查询
+	 * @param ids 对象ID集合
+	 * @return 按ids顺序排列的ID-对象映射(去重), 不存在的ID对应的值为null
+	 */
+	@SuppressWarnings("unchecked")
+	@Override
+	public Map<ID, T> getAll(Collection<ID> ids) {
+		Assert.notNull(ids);
+		Map<ID, T> result = new LinkedHashMap<ID, T>();
+		SessionImplementor session = (SessionImplementor) getSession();
+		EntityPersister persister = session.getFactory().getEntityPersister(
+				getEntityClass().getName());
+		List<ID> misses = new ArrayList<ID>();
+		for (ID id : ids) {
+			Assert.notNull(id);
+			if (result.containsKey(id)) {
+				continue;
+			}
+			Object entity = session.getPersistenceContext().getEntity(
+					session.generateEntityKey(id, persister));
+			if (null == entity && persister.hasCache()
+					&& sessionFactory.getCache().containsEntity(
+							getEntityClass(), id)) {
+				entity = getSession().get(getEntityClass(), id);
+			}
+			result.put(id, (T) entity);
+			if (null == entity) {
+				misses.add(id);
+			}
+		}
+		int chunkSize = getInListChunkSize();
+		for (int i = 0; i < misses.size(); i += chunkSize) {
+			List<ID> chunk = misses.subList(i,
+					Math.min(i + chunkSize, misses.size()));
+			DetachedCriteria dc = getDC().add(
+					Restrictions.in(getIdName(), chunk));
+			for (Object row : listByDC(dc)) {
+				T entity = (T) row;
+				result.put((ID) getIdFromEntity(entity), entity);
+			}
+		}
+		if (log.isDebugEnabled() && result.containsValue(null)) {
+			List<ID> missing = new ArrayList<ID>();
+			for (Map.Entry<ID, T> entry : result.entrySet()) {
+				if (null == entry.getValue()) {
+					missing.add(entry.getKey());
+				}
+			}
+			log.debug("{} not found: {}", getEntityClass().getSimpleName(),
+					missing);
+		}
+		return result;
+	}
+
 	/**
 	 * @see Session.get(Class,Serializable,LockMode)
 	 * @param id 对象ID
-	 * @param lock 是否锁定，使用LockMode.UPGRADE
+	 * @param lock 是否锁定，使用LockMode.UPGRADE(锁定读总是使用主库, 只读事务已使用从库连接时抛出IllegalStateException)
 	 * @return 持久化对象
 	 */
-	@SuppressWarnings("unchecked")
+	@SuppressWarnings({ "unchecked", "deprecation" })
 	@Override
 	public T load(ID id, boolean lock) {
 		Assert.notNull(id);
 		T entity = null;
 		if (lock) {
+			ReplicaRoutingDataSource.requirePrimary();
 			entity = (T) getSession().load(getEntityClass(), id,
 					LockMode.UPGRADE);
 		} else {
@@ -149,6 +481,7 @@ public abstract class DefaultBaseDAO<T, ID extends Serializable> extends
 	@Override
 	public Object update(Object entity) {
 		Assert.notNull(entity);
+		drainWriteBehind(entity);
 		getSession().update(entity);
 		return entity;
 	}
@@ -162,10 +495,161 @@ public abstract class DefaultBaseDAO<T, ID extends Serializable> extends
 	@Override
 	public Object saveOrUpdate(Object entity) {
 		Assert.notNull(entity);
+		drainWriteBehind(entity);
 		getSession().saveOrUpdate(entity);
 		return entity;
 	}
 
+	/**
+	 * 批量写入的默认批大小, 与hibernate.cfg.xml中的jdbc.batch_size一致
+	 * @return
+	 */
+	protected int getBatchSize() {
+		return 50;
+	}
+
+	@Override
+	public BatchReport saveAll(Collection<? extends T> entities) {
+		return saveAll(entities, getBatchSize(), false);
+	}
+
+	@Override
+	public BatchReport saveAll(Collection<? extends T> entities,
+			int batchSize, boolean stateless) {
+		return writeAll(entities, batchSize, stateless, WriteOp.SAVE);
+	}
+
+	@Override
+	public BatchReport updateAll(Collection<? extends T> entities) {
+		return updateAll(entities, getBatchSize(), false);
+	}
+
+	@Override
+	public BatchReport updateAll(Collection<? extends T> entities,
+			int batchSize, boolean stateless) {
+		return writeAll(entities, batchSize, stateless, WriteOp.UPDATE);
+	}
+
+	@Override
+	public BatchReport saveOrUpdateAll(Collection<? extends T> entities) {
+		return saveOrUpdateAll(entities, getBatchSize(), false);
+	}
+
+	@Override
+	public BatchReport saveOrUpdateAll(Collection<? extends T> entities,
+			int batchSize, boolean stateless) {
+		return writeAll(entities, batchSize, stateless,
+				WriteOp.SAVE_OR_UPDATE);
+	}
+
+	private enum WriteOp {
+		SAVE, UPDATE, SAVE_OR_UPDATE
+	}
+
+	/**
+	 * 按批大小分批写入, 记录每批的记录数与耗时
+	 */
+	private BatchReport writeAll(Collection<? extends T> entities,
+			int batchSize, boolean stateless, WriteOp op) {
+		Assert.notNull(entities);
+		Assert.isTrue(batchSize > 0);
+		flushWriteBehind();
+		BatchReport report = new BatchReport(batchSize, stateless);
+		Iterator<? extends T> it = entities.iterator();
+		List<T> batch = new ArrayList<T>(batchSize);
+		while (it.hasNext()) {
+			batch.clear();
+			while (it.hasNext() && batch.size() < batchSize) {
+				batch.add(it.next());
+			}
+			long start = System.currentTimeMillis();
+			if (stateless) {
+				writeBatchStateless(batch, op);
+			} else {
+				writeBatch(batch, op);
+			}
+			long millis = System.currentTimeMillis() - start;
+			report.addBatch(batch.size(), millis);
+			if (log.isDebugEnabled()) {
+				log.debug("{} batch {} of {}: {} rows in {}ms", new Object[] {
+						op, report.getBatches().size(),
+						getEntityClass().getSimpleName(), batch.size(), millis });
+			}
+		}
+		if (stateless && report.getRows() > 0) {
+			afterWrite(getEntityClass());
+		}
+		log.info("{} {}: {}", new Object[] { op,
+				getEntityClass().getSimpleName(), report });
+		return report;
+	}
+
+	/**
+	 * 在当前Session中写入一批, flush后只从Session中移除本批实体(以及级联evict的关联), 使一级缓存不随记录数增长;
+	 * 不clear, 调用方Session中已加载的其他实体保持持久化状态
+	 */
+	private void writeBatch(List<T> batch, WriteOp op) {
+		Session session = getSession();
+		for (T entity : batch) {
+			switch (op) {
+			case SAVE:
+				session.save(entity);
+				break;
+			case UPDATE:
+				session.update(entity);
+				break;
+			default:
+				session.saveOrUpdate(entity);
+			}
+		}
+		session.flush();
+		for (T entity : batch) {
+			session.evict(entity);
+		}
+	}
+
+	/**
+	 * 使用StatelessSession在独立事务中写入一批
+	 */
+	private void writeBatchStateless(List<T> batch, WriteOp op) {
+		ClassMetadata metadata = sessionFactory
+				.getClassMetadata(getEntityClass());
+		List<Serializable> ids = new ArrayList<Serializable>(batch.size());
+		ReplicaRoutingDataSource.beginPrimary();
+		try {
+			StatelessSession session = sessionFactory.openStatelessSession();
+			Transaction tx = session.beginTransaction();
+			try {
+				for (T entity : batch) {
+					if (WriteOp.SAVE == op
+							|| (WriteOp.SAVE_OR_UPDATE == op && null == metadata
+									.getIdentifier(entity,
+											(SessionImplementor) session))) {
+						ids.add(session.insert(entity));
+					} else {
+						session.update(entity);
+						ids.add(metadata.getIdentifier(entity,
+								(SessionImplementor) session));
+					}
+				}
+				tx.commit();
+			} catch (RuntimeException e) {
+				tx.rollback();
+				throw e;
+			} finally {
+				session.close();
+			}
+		} finally {
+			ReplicaRoutingDataSource.endPrimary();
+		}
+		// StatelessSession不维护二级缓存, 也不触发事件监听器, 提交后清除二级缓存并更新n-gram索引
+		for (int i = 0; i < batch.size(); i++) {
+			sessionFactory.getCache().evictEntity(getEntityClass(), ids.get(i));
+			NgramIndexes.written(sessionFactory, getEntityClass(), ids.get(i),
+					batch.get(i));
+		}
+	}
+
 	/**
 	 * 删除对象
 	 * 
@@ -174,6 +658,7 @@ public abstract class DefaultBaseDAO<T, ID extends Serializable> extends
 	@Override
 	public void delete(Object entity) {
 		Assert.notNull(entity);
+		drainWriteBehind(entity);
 		getSession().delete(entity);
 	}
 
@@ -185,6 +670,7 @@ public abstract class DefaultBaseDAO<T, ID extends Serializable> extends
 	@Override
 	public T deleteById(ID id) {
 		Assert.notNull(id);
+		drainWriteBehind(id);
 		T entity = get(id, true);
 		getSession().delete(entity);
 		return entity;
@@ -192,11 +678,154 @@ public abstract class DefaultBaseDAO<T, ID extends Serializable> extends
 	
 	@Override
 	public boolean deleteByIdUseHql(ID id){
-		String hql = "delete "+getEntityClass().getSimpleName()+" e where e."+getIdName()+" = ?";
-		getSession().createQuery(hql).setParameter(0, id).executeUpdate();
+		drainWriteBehind(id);
+		QueryTemplate template = getQueryTemplates().get(
+				"deleteById:" + getEntityClass().getName(), new Compiler() {
+					@Override
+					public QueryTemplate compile() {
+						return new QueryTemplate("delete "
+								+ getEntityClass().getName() + " e where e."
+								+ getIdName() + " = ?");
+					}
+				});
+		createQuery(template.getHql(), id).executeUpdate();
+		afterWrite(getEntityClass());
 		return true;
 	}
 
+	/**
+	 * 按{@link #getInListChunkSize()}分块删除
+	 */
+	@Override
+	public BatchReport deleteAllById(Collection<ID> ids) {
+		Assert.notNull(ids);
+		flushWriteBehind();
+		List<ID> distinct = new ArrayList<ID>(new LinkedHashSet<ID>(ids));
+		int chunkSize = getInListChunkSize();
+		boolean cascade = requiresCascadeDelete();
+		BatchReport report = new BatchReport(chunkSize, false);
+		for (int i = 0; i < distinct.size(); i += chunkSize) {
+			long start = System.currentTimeMillis();
+			int rows = deleteChunk(
+					distinct.subList(i, Math.min(i + chunkSize, distinct.size())),
+					null, chunkSize, cascade);
+			report.addBatch(rows, System.currentTimeMillis() - start);
+		}
+		return afterDelete(report, cascade);
+	}
+
+	@Override
+	public BatchReport deleteWhere(DetachedCriteria dc) {
+		Assert.notNull(dc);
+		flushWriteBehind();
+		int chunkSize = getInListChunkSize();
+		boolean cascade = requiresCascadeDelete();
+		BatchReport report = new BatchReport(chunkSize, false);
+		try {
+			while (true) {
+				long start = System.currentTimeMillis();
+				int rows = deleteChunk(null, dc, chunkSize, cascade);
+				if (0 == rows) {
+					break;
+				}
+				report.addBatch(rows, System.currentTimeMillis() - start);
+			}
+		} finally {
+			dc.setProjection(null);
+		}
+		return afterDelete(report, cascade);
+	}
+
+	private BatchReport afterDelete(BatchReport report, boolean cascade) {
+		if (report.getRows() > 0) {
+			afterWrite(getEntityClass());
+		}
+		log.info("DELETE {} ({}): {}", new Object[] {
+				getEntityClass().getSimpleName(),
+				cascade ? "cascading" : "bulk", report });
+		return report;
+	}
+
+	/**
+	 * 在独立事务中删除一块记录: 使用HQL批量删除(Hibernate会清理该实体的二级缓存区域),
+	 * 需要级联时加载后逐个删除
+	 * @param ids 要删除的ID, 为null时在同一事务中按where查询最多chunkSize个ID
+	 * @param where 删除条件
+	 * @param chunkSize 块大小
+	 * @param cascade 是否逐个删除以处理级联
+	 * @return 删除的行数
+	 */
+	@SuppressWarnings("unchecked")
+	private int deleteChunk(Collection<ID> ids, DetachedCriteria where,
+			int chunkSize, boolean cascade) {
+		ReplicaRoutingDataSource.beginPrimary();
+		try {
+			Session session = sessionFactory.openSession();
+			Transaction tx = session.beginTransaction();
+			try {
+				if (null == ids) {
+					where.setProjection(Projections.id());
+					ids = where.getExecutableCriteria(session)
+							.setMaxResults(chunkSize).list();
+				}
+				int rows = 0;
+				if (!ids.isEmpty() && cascade) {
+					List<Object> entities = session
+							.createCriteria(getEntityClass())
+							.add(Restrictions.in(getIdName(), ids)).list();
+					for (Object entity : entities) {
+						session.delete(entity);
+					}
+					rows = entities.size();
+				} else if (!ids.isEmpty()) {
+					QueryTemplate template = getQueryTemplates().get(
+							"deleteAllById:" + getEntityClass().getName(),
+							new Compiler() {
+								@Override
+								public QueryTemplate compile() {
+									return new QueryTemplate("delete "
+											+ getEntityClass().getName()
+											+ " e where e." + getIdName()
+											+ " in (:ids)");
+								}
+							});
+					rows = session.createQuery(template.getHql())
+							.setParameterList("ids", ids).executeUpdate();
+				}
+				tx.commit();
+				if (!cascade) {
+					// HQL批量删除不触发事件
+					NgramIndexes.deleted(getEntityClass(), ids);
+				}
+				return rows;
+			} catch (RuntimeException e) {
+				tx.rollback();
+				throw e;
+			} finally {
+				session.close();
+			}
+		} finally {
+			ReplicaRoutingDataSource.endPrimary();
+		}
+	}
+
+	/**
+	 * 实体是否映射了集合(集合表/一对多)或级联删除, HQL批量删除不处理这些关联
+	 */
+	private boolean requiresCascadeDelete() {
+		EntityPersister persister = ((SessionFactoryImplementor) sessionFactory)
+				.getEntityPersister(getEntityClass().getName());
+		Type[] types = persister.getPropertyTypes();
+		CascadeStyle[] cascades = persister.getPropertyCascadeStyles();
+		for (int i = 0; i < types.length; i++) {
+			if (types[i].isCollectionType()
+					|| cascades[i].doCascade(CascadingActions.DELETE)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
 	/**
 	 * 刷新对象
 	 * 
@@ -227,137 +856,1849 @@ public abstract class DefaultBaseDAO<T, ID extends Serializable> extends
 	public Page<T> findByPage(int pageIndex, int pageSize, boolean isCacheable,
 			Map<String, Object> eqConditions,
 			Map<String, String> likeConditions, Order[] orders) {
-		DetachedCriteria dc = getDC();
-		if (null != eqConditions) {
-			for (String key : eqConditions.keySet()) {
-				dc.add(Restrictions.eq(key, eqConditions.get(key)));
+		return findByPage(pageIndex, pageSize, isCacheable, eqConditions,
+				likeConditions, orders, TotalMode.EXACT);
+	}
+
+	/**
+	 * 分页查询, 按查询形态(eq/like条件名及排序)从模板注册表获取编译好的HQL, 只绑定参数值;
+	 * 条件按属性名排序, 相同条件生成相同的查询(便于缓存总数)
+	 */
+	@SuppressWarnings("unchecked")
+	@Override
+	public Page<T> findByPage(int pageIndex, int pageSize, boolean isCacheable,
+			Map<String, Object> eqConditions,
+			Map<String, String> likeConditions, Order[] orders,
+			TotalMode totalMode) {
+		checkQueryable(sortedKeys(eqConditions));
+		checkQueryable(sortedKeys(likeConditions));
+		if (null != orders) {
+			for (Order order : orders) {
+				checkQueryable(Collections.singletonList(order
+						.getPropertyName()));
 			}
 		}
-		if (null != likeConditions) {
-			for (String key : likeConditions.keySet()) {
-				dc.add(Restrictions.like(key, likeConditions.get(key),
-						MatchMode.ANYWHERE));
-			}
+		Collection<Object> candidates = ngramCandidates(likeConditions);
+		if (null != candidates) {
+			return findByCandidates(candidates, pageIndex, pageSize,
+					isCacheable, eqConditions, likeConditions, orders,
+					totalMode);
 		}
+		final List<String> eqKeys = sortedKeys(eqConditions);
+		final List<String> likeKeys = sortedKeys(likeConditions);
+		final List<String> orderBy = new ArrayList<String>();
 		if (null != orders) {
 			for (Order order : orders) {
-				dc.addOrder(order);
+				String prop = "e." + order.getPropertyName();
+				orderBy.add((order.isIgnoreCase() ? "lower(" + prop + ")"
+						: prop) + (order.isAscending() ? " asc" : " desc"));
 			}
 		}
-		return findByPage(dc, pageIndex, pageSize, isCacheable);
-	}
-	
-	
-
-	@Override
-	public Page<T> findByPage(DetachedCriteria dc, int pageIndex, int pageSize,
-			boolean isCacheable) {
+		QueryTemplate template = getQueryTemplates().get(
+				"page:" + getEntityClass().getName() + ":eq" + eqKeys
+						+ ":like" + likeKeys + ":order" + orderBy,
+				new Compiler() {
+					@Override
+					public QueryTemplate compile() {
+						StringBuilder where = new StringBuilder();
+						for (String key : eqKeys) {
+							where.append(where.length() == 0 ? " where "
+									: " and ");
+							where.append("e.").append(key).append(" = ?");
+						}
+						for (String key : likeKeys) {
+							where.append(where.length() == 0 ? " where "
+									: " and ");
+							where.append("e.").append(key).append(" like ?");
+						}
+						StringBuilder hql = new StringBuilder("from ")
+								.append(getEntityClass().getName())
+								.append(" e").append(where);
+						for (int i = 0; i < orderBy.size(); i++) {
+							hql.append(i == 0 ? " order by " : ", ").append(
+									orderBy.get(i));
+						}
+						return new QueryTemplate(hql.toString(),
+								"select count(*) from "
+										+ getEntityClass().getName() + " e"
+										+ where);
+					}
+				});
+		final Object[] values = new Object[eqKeys.size() + likeKeys.size()];
+		for (int i = 0; i < eqKeys.size(); i++) {
+			values[i] = eqConditions.get(eqKeys.get(i));
+		}
+		for (int i = 0; i < likeKeys.size(); i++) {
+			values[eqKeys.size() + i] = MatchMode.ANYWHERE
+					.toMatchString(likeConditions.get(likeKeys.get(i)));
+		}
+		final String countHql = template.getCountHql();
+		CountQuery countQuery = new CountQuery() {
+			@Override
+			public long count() {
+				return ((Number) createQuery(countHql, values).uniqueResult())
+						.longValue();
+			}
+		};
 		try {
-			Long count = super.countByDC(dc);
-			dc.setProjection(null);
-			dc.setResultTransformer(DetachedCriteria.DISTINCT_ROOT_ENTITY);
-			List<T> list = listByDC(dc, pageIndex * pageSize, pageSize,
-					isCacheable);
-			return new Page<T>(pageIndex + 1, count, pageSize, list);
+			// 关联属性的条件或排序会连接其他实体, 其他实体的写入不会清理本实体的结果缓存
+			if (isCacheable && getResultCacheSize() > 0
+					&& !hasAssociationPath(eqKeys, likeKeys, orders)) {
+				final String idHql = "select e." + getIdName() + " "
+						+ template.getHql();
+				return cachedPage("hql:" + template.getHql() + valuesKey(values),
+						pageIndex, pageSize, totalMode, values.length > 0,
+						countHql + valuesKey(values), countQuery,
+						new IdQuery() {
+							@SuppressWarnings("unchecked")
+							@Override
+							public List<Serializable> list(int first, int max) {
+								return createQuery(idHql, values)
+										.setFirstResult(first)
+										.setMaxResults(max).list();
+							}
+						});
+			}
+			Query query = createQuery(template.getHql(), values).setCacheable(
+					isCacheable).setFirstResult(pageIndex * pageSize);
+			if (TotalMode.NONE == totalMode) {
+				List<T> list = query.setMaxResults(pageSize + 1).list();
+				boolean hasNext = list.size() > pageSize;
+				if (hasNext) {
+					list = new ArrayList<T>(list.subList(0, pageSize));
+				}
+				return new Page<T>(pageIndex + 1, -1, pageSize, list,
+						totalMode, hasNext);
+			}
+			long count = count(totalMode, values.length > 0, countHql
+					+ valuesKey(values), countQuery);
+			List<T> list = query.setMaxResults(pageSize).list();
+			return new Page<T>(pageIndex + 1, count, pageSize, list,
+					totalMode, (long) (pageIndex + 1) * pageSize < count);
 		} catch (Exception e) {
-			e.printStackTrace();
+			log.error("findByPage " + getEntityClass().getSimpleName()
+					+ " failed", e);
 		}
 		return null;
 	}
-	
+
 	/**
-	 * 获取当前DAO对应entity的DetachedCriteria
-	 * @return
+	 * 由n-gram索引求like条件的候选ID(各条件取交集)
+	 * @return 候选ID, 没有可用的索引时返回null
 	 */
-	@Override
-	public DetachedCriteria getDC() {
-		return DetachedCriteria.forClass(getEntityClass());
+	private Collection<Object> ngramCandidates(Map<String, String> likeConditions) {
+		if (null == likeConditions) {
+			return null;
+		}
+		Collection<Object> candidates = null;
+		for (Map.Entry<String, String> entry : likeConditions.entrySet()) {
+			NgramIndex index = NgramIndexes.get(getEntityClass(),
+					entry.getKey());
+			Collection<Object> matched = null == index ? null : index
+					.candidates(entry.getValue(), getNgramCandidateLimit());
+			if (null == matched) {
+				continue;
+			}
+			if (null == candidates) {
+				candidates = matched;
+			} else {
+				candidates.retainAll(matched);
+			}
+		}
+		return candidates;
 	}
 
-	@Override
-	public List<T> findAll() {
-		return super.listByDC(getDC(),false);
+	/**
+	 * 在候选ID范围内按原条件分页查询
+	 */
+	private Page<T> findByCandidates(Collection<Object> candidates,
+			int pageIndex, int pageSize, boolean isCacheable,
+			Map<String, Object> eqConditions,
+			Map<String, String> likeConditions, Order[] orders,
+			TotalMode totalMode) {
+		if (candidates.isEmpty()) {
+			return new Page<T>(pageIndex + 1, TotalMode.NONE == totalMode ? -1
+					: 0, pageSize, new ArrayList<T>(), totalMode, false);
+		}
+		DetachedCriteria dc = getDC().add(
+				Restrictions.in(getIdName(), candidates));
+		for (String key : sortedKeys(eqConditions)) {
+			dc.add(Restrictions.eq(key, eqConditions.get(key)));
+		}
+		for (String key : sortedKeys(likeConditions)) {
+			dc.add(Restrictions.like(key, likeConditions.get(key),
+					MatchMode.ANYWHERE));
+		}
+		if (null != orders) {
+			for (Order order : orders) {
+				dc.addOrder(order);
+			}
+		}
+		return findByPage(dc, pageIndex, pageSize, isCacheable, totalMode);
 	}
-	
-	@Override
-	public List<T> listByDC(DetachedCriteria dc){
-		return super.listByDC(dc,false);
+
+	/**
+	 * 按ID的HQL更新修改了n-gram索引的属性时更新该ID的索引, 有事务时在事务提交后更新
+	 */
+	private void updateNgramIndexes(final Serializable id,
+			Map<String, Object> updateSet) {
+		final Map<String, Object> values = new HashMap<String, Object>();
+		for (String property : getNgramIndexedProperties()) {
+			if (updateSet.containsKey(property)) {
+				values.put(property, updateSet.get(property));
+			}
+		}
+		if (values.isEmpty()) {
+			return;
+		}
+		if (TransactionSynchronizationManager.isSynchronizationActive()) {
+			TransactionSynchronizationManager
+					.registerSynchronization(new TransactionSynchronizationAdapter() {
+						@Override
+						public void afterCommit() {
+							NgramIndexes.updated(getEntityClass(), id, values);
+						}
+					});
+		} else {
+			NgramIndexes.updated(getEntityClass(), id, values);
+		}
 	}
-	
-	@Override
-	public List<T> listByDC(DetachedCriteria dc,String[] sels){
-		String alias =  getEntityClass().getSimpleName();
-		dc.createCriteria(alias);
-		ProjectionList pList = Projections.projectionList(); 
-		if (null != sels) {
-			for (String sel : sels) {
-				pList.add(Projections.property(alias + "." + sel).as(sel));
+
+	/**
+	 * 按条件的HQL批量更新修改了n-gram索引的属性时重建索引(无法得知更新了哪些行), 有事务时在事务提交后重建
+	 */
+	private void rebuildNgramIndexes(Collection<String> updatedProperties) {
+		List<String> rebuild = new ArrayList<String>();
+		for (String property : getNgramIndexedProperties()) {
+			if (updatedProperties.contains(property)) {
+				rebuild.add(property);
 			}
 		}
-		dc.setProjection(pList);  
-		dc.setResultTransformer(Transformers.aliasToBean(getEntityClass()));  
-		return listByDC(dc);
+		if (rebuild.isEmpty()) {
+			return;
+		}
+		final String[] properties = rebuild.toArray(new String[rebuild.size()]);
+		if (TransactionSynchronizationManager.isSynchronizationActive()) {
+			TransactionSynchronizationManager
+					.registerSynchronization(new TransactionSynchronizationAdapter() {
+						@Override
+						public void afterCommit() {
+							NgramIndexes.build(sessionFactory,
+									getEntityClass(), properties);
+						}
+					});
+		} else {
+			NgramIndexes.build(sessionFactory, getEntityClass(), properties);
+		}
 	}
-	
+
+	/**
+	 * HQL模板注册表, 子类可覆盖
+	 * @return
+	 */
+	protected QueryTemplateRegistry getQueryTemplates() {
+		return QueryTemplateRegistry.shared();
+	}
+
+	private static boolean hasAssociationPath(List<String> eqKeys,
+			List<String> likeKeys, Order[] orders) {
+		List<String> paths = new ArrayList<String>(eqKeys);
+		paths.addAll(likeKeys);
+		if (null != orders) {
+			for (Order order : orders) {
+				paths.add(order.getPropertyName());
+			}
+		}
+		for (String path : paths) {
+			if (path.indexOf('.') >= 0) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * 可用于条件、排序和更新的关联路径(如 dept.id). 条件名会拼接进HQL, 只接受实体自身的属性、ID和这里声明的路径;
+	 * 默认没有, 子类可覆盖
+	 * @return
+	 */
+	protected String[] getQueryablePaths() {
+		return new String[0];
+	}
+
+	/**
+	 * 校验拼接进HQL的属性名
+	 * @throws IllegalArgumentException 不是实体属性、ID或声明的关联路径
+	 */
+	private void checkQueryable(Collection<String> names) {
+		Set<String> allowed = queryableNames;
+		if (null == allowed) {
+			ClassMetadata metadata = sessionFactory
+					.getClassMetadata(getEntityClass());
+			allowed = new HashSet<String>(Arrays.asList(metadata
+					.getPropertyNames()));
+			allowed.add(metadata.getIdentifierPropertyName());
+			allowed.addAll(Arrays.asList(getQueryablePaths()));
+			queryableNames = allowed;
+		}
+		for (String name : names) {
+			if (!allowed.contains(name)) {
+				throw new IllegalArgumentException("unknown property of "
+						+ getEntityClass().getSimpleName() + ": " + name);
+			}
+		}
+	}
+
+	/**
+	 * 参数值的缓存key: 每个值记录类型和长度, 不同的参数组合不会得到相同的key
+	 */
+	private static String valuesKey(Object[] values) {
+		StringBuilder key = new StringBuilder("[");
+		for (Object value : values) {
+			if (null == value) {
+				key.append("null;");
+				continue;
+			}
+			String text = value.toString();
+			key.append(value.getClass().getName()).append(':')
+					.append(text.length()).append(':').append(text).append(';');
+		}
+		return key.append(']').toString();
+	}
+
+	private static List<String> sortedKeys(Map<String, ?> conditions) {
+		if (null == conditions) {
+			return Collections.emptyList();
+		}
+		return new ArrayList<String>(new TreeSet<String>(conditions.keySet()));
+	}
+	
+	
+
+	@Override
+	public Page<T> findByPage(DetachedCriteria dc, int pageIndex, int pageSize,
+			boolean isCacheable) {
+		return findByPage(dc, pageIndex, pageSize, isCacheable,
+				TotalMode.EXACT);
+	}
+
+	@SuppressWarnings("unchecked")
+	@Override
+	public Page<T> findByPage(final DetachedCriteria dc, int pageIndex,
+			int pageSize, boolean isCacheable, final TotalMode totalMode) {
+		try {
+			String key = isResultCacheable(dc, isCacheable) ? criteriaKey(dc,
+					true) : null;
+			if (null != key) {
+				final ResultTransformer transformer = ((CriteriaImpl) dc
+						.getExecutableCriteria(getSession()))
+						.getResultTransformer();
+				return cachedPage("dc:" + key, pageIndex, pageSize,
+						totalMode, false, null, new CountQuery() {
+							@Override
+							public long count() {
+								try {
+									return countByDC(dc, totalMode);
+								} finally {
+									dc.setProjection(null);
+									dc.setResultTransformer(transformer);
+								}
+							}
+						}, new IdQuery() {
+							@Override
+							public List<Serializable> list(int first, int max) {
+								return listIds(dc, first, max);
+							}
+						});
+			}
+			if (TotalMode.NONE == totalMode) {
+				dc.setResultTransformer(DetachedCriteria.DISTINCT_ROOT_ENTITY);
+				List<T> list = listByDC(dc, pageIndex * pageSize,
+						pageSize + 1, isCacheable);
+				boolean hasNext = list.size() > pageSize;
+				if (hasNext) {
+					list = new ArrayList<T>(list.subList(0, pageSize));
+				}
+				return new Page<T>(pageIndex + 1, -1, pageSize, list,
+						totalMode, hasNext);
+			}
+			long count = countByDC(dc, totalMode);
+			dc.setProjection(null);
+			dc.setResultTransformer(DetachedCriteria.DISTINCT_ROOT_ENTITY);
+			List<T> list = listByDC(dc, pageIndex * pageSize, pageSize,
+					isCacheable);
+			return new Page<T>(pageIndex + 1, count, pageSize, list,
+					totalMode, (long) (pageIndex + 1) * pageSize < count);
+		} catch (Exception e) {
+			log.error("findByPage " + getEntityClass().getSimpleName()
+					+ " failed", e);
+		}
+		return null;
+	}
+
+	@SuppressWarnings("unchecked")
+	@Override
+	public Page<T> findByPage(DetachedCriteria dc, int pageIndex, int pageSize,
+			TotalMode totalMode, RowHandler<T> handler) {
+		Assert.notNull(handler);
+		long count = -1;
+		if (TotalMode.NONE != totalMode) {
+			count = countByDC(dc, totalMode);
+			dc.setProjection(null);
+		}
+		dc.setResultTransformer(DetachedCriteria.ROOT_ENTITY);
+		// NONE时多读一条判断是否有下一页
+		int max = TotalMode.NONE == totalMode ? pageSize + 1 : pageSize;
+		Session session = getSession();
+		ScrollableResults results = scrollByDC(dc, pageIndex * pageSize, max,
+				Math.min(max, getFetchSize()));
+		int rows = 0;
+		boolean hasNext = false;
+		try {
+			while (results.next()) {
+				if (rows == pageSize) {
+					hasNext = true;
+					break;
+				}
+				T row = (T) results.get(0);
+				rows++;
+				boolean more = handler.handle(row);
+				session.evict(row);
+				if (!more) {
+					break;
+				}
+			}
+		} finally {
+			results.close();
+		}
+		if (TotalMode.NONE != totalMode) {
+			hasNext = (long) (pageIndex + 1) * pageSize < count;
+		}
+		return new Page<T>(pageIndex + 1, count, pageSize, null, totalMode,
+				hasNext);
+	}
+
+	/**
+	 * 两阶段分页: 第一步按ID分组查询并在数据库中分页, 排序字段取每个ID的min(升序)/max(降序),
+	 * 集合关联上的排序也只返回不重复的ID; 第二步按{@link #getInListChunkSize()}分块使用IN查询实体并抓取关联.
+	 * 查询结束后恢复dc原有的排序、结果转换和分页设置
+	 */
+	@SuppressWarnings("unchecked")
+	@Override
+	public Page<T> findByPageTwoPhase(DetachedCriteria dc, int pageIndex,
+			int pageSize, TotalMode totalMode, String... fetchPaths) {
+		Assert.isTrue(pageSize > 0);
+		long count = -1;
+		if (TotalMode.NONE != totalMode) {
+			count = countDistinctByDC(dc, totalMode);
+		}
+		CriteriaImpl criteria = (CriteriaImpl) dc
+				.getExecutableCriteria(getSession());
+		ResultTransformer transformer = criteria.getResultTransformer();
+		Integer firstResult = criteria.getFirstResult();
+		Integer maxResults = criteria.getMaxResults();
+		List<CriteriaImpl.OrderEntry> orders = new ArrayList<CriteriaImpl.OrderEntry>();
+		for (Iterator<CriteriaImpl.OrderEntry> it = criteria
+				.iterateOrderings(); it.hasNext();) {
+			orders.add(it.next());
+			it.remove();
+		}
+		ProjectionList columns = Projections.projectionList().add(
+				Projections.groupProperty(getIdName()));
+		for (int i = 0; i < orders.size(); i++) {
+			CriteriaImpl.OrderEntry entry = orders.get(i);
+			String property = entry.getOrder().getPropertyName();
+			if (entry.getCriteria() != criteria) {
+				property = entry.getCriteria().getAlias() + '.' + property;
+			}
+			String alias = "sort" + i;
+			Order order;
+			if (entry.getOrder().isAscending()) {
+				columns.add(Projections.min(property), alias);
+				order = Order.asc(alias);
+			} else {
+				columns.add(Projections.max(property), alias);
+				order = Order.desc(alias);
+			}
+			criteria.addOrder(entry.getOrder().isIgnoreCase() ? order
+					.ignoreCase() : order);
+		}
+		dc.setProjection(columns);
+		// NONE时多读一条判断是否有下一页
+		int max = TotalMode.NONE == totalMode ? pageSize + 1 : pageSize;
+		List<Object> rows;
+		try {
+			rows = listByDC(dc, pageIndex * pageSize, max, false);
+		} finally {
+			dc.setProjection(null);
+			dc.setResultTransformer(transformer);
+			criteria.setFirstResult(null == firstResult ? 0 : firstResult);
+			criteria.setMaxResults(null == maxResults ? 0 : maxResults);
+			for (Iterator<CriteriaImpl.OrderEntry> it = criteria
+					.iterateOrderings(); it.hasNext();) {
+				it.next();
+				it.remove();
+			}
+			for (CriteriaImpl.OrderEntry entry : orders) {
+				entry.getCriteria().addOrder(entry.getOrder());
+			}
+		}
+		boolean hasNext = rows.size() > pageSize;
+		List<ID> ids = new ArrayList<ID>(Math.min(rows.size(), pageSize));
+		for (int i = 0; i < rows.size() && i < pageSize; i++) {
+			Object row = rows.get(i);
+			ids.add((ID) (row instanceof Object[] ? ((Object[]) row)[0] : row));
+		}
+
+		Map<Serializable, T> entities = new HashMap<Serializable, T>();
+		int chunkSize = getInListChunkSize();
+		for (int i = 0; i < ids.size(); i += chunkSize) {
+			DetachedCriteria fetch = getDC().add(
+					Restrictions.in(getIdName(),
+							ids.subList(i, Math.min(i + chunkSize, ids.size()))));
+			for (String path : fetchPaths) {
+				fetch.setFetchMode(path, FetchMode.JOIN);
+			}
+			fetch.setResultTransformer(DetachedCriteria.DISTINCT_ROOT_ENTITY);
+			for (Object row : listByDC(fetch)) {
+				T entity = (T) row;
+				entities.put(getIdFromEntity(entity), entity);
+			}
+		}
+		List<T> list = new ArrayList<T>(ids.size());
+		for (ID id : ids) {
+			T entity = entities.get(id);
+			// 两步之间被删除的记录
+			if (null != entity) {
+				list.add(entity);
+			}
+		}
+		if (TotalMode.NONE != totalMode) {
+			hasNext = (long) (pageIndex + 1) * pageSize < count;
+		}
+		return new Page<T>(pageIndex + 1, count, pageSize, list, totalMode,
+				hasNext);
+	}
+
+	/**
+	 * 按总数计算方式查询不重复的主实体数(count(distinct id)), 用于包含集合关联的查询条件
+	 * @param dc 查询条件
+	 * @param totalMode 总数计算方式
+	 * @return 总数
+	 */
+	private long countDistinctByDC(final DetachedCriteria dc,
+			TotalMode totalMode) {
+		String key = criteriaKey(dc, false);
+		return count(totalMode, TotalMode.ESTIMATED == totalMode
+				&& hasRestrictions(dc), null == key ? null : "distinct:" + key,
+				new CountQuery() {
+			@Override
+			public long count() {
+				// 聚合查询不能带排序(order by的列不在group by中), count期间移除排序, 结束后按原顺序恢复
+				CriteriaImpl criteria = (CriteriaImpl) dc
+						.getExecutableCriteria(getSession());
+				List<CriteriaImpl.OrderEntry> orders = new ArrayList<CriteriaImpl.OrderEntry>();
+				for (Iterator<CriteriaImpl.OrderEntry> it = criteria
+						.iterateOrderings(); it.hasNext();) {
+					orders.add(it.next());
+					it.remove();
+				}
+				ResultTransformer transformer = criteria.getResultTransformer();
+				dc.setProjection(Projections.countDistinct(getIdName()));
+				try {
+					return ((Number) uniqueByDC(dc)).longValue();
+				} finally {
+					dc.setProjection(null);
+					dc.setResultTransformer(transformer);
+					for (CriteriaImpl.OrderEntry entry : orders) {
+						entry.getCriteria().addOrder(entry.getOrder());
+					}
+				}
+			}
+		});
+	}
+
+	/**
+	 * 按总数计算方式查询总数
+	 * @param dc 查询条件
+	 * @param totalMode 总数计算方式
+	 * @return 总数
+	 */
+	private long countByDC(final DetachedCriteria dc, TotalMode totalMode) {
+		return count(totalMode, TotalMode.ESTIMATED == totalMode
+				&& hasRestrictions(dc), criteriaKey(dc, false), new CountQuery() {
+			@Override
+			public long count() {
+				return DefaultBaseDAO.super.countByDC(dc);
+			}
+		});
+	}
+
+	private interface CountQuery {
+		long count();
+	}
+
+	/**
+	 * 按总数计算方式查询总数
+	 * @param totalMode 总数计算方式
+	 * @param filtered 是否有过滤条件(有条件时无法估算)
+	 * @param cacheKey 规范化后的查询条件, 为null时不缓存
+	 * @param query 精确count查询
+	 * @return 总数
+	 */
+	private long count(TotalMode totalMode, boolean filtered, String cacheKey,
+			CountQuery query) {
+		if (TotalMode.EXACT == totalMode || null == cacheKey) {
+			return query.count();
+		}
+		if (TotalMode.ESTIMATED == totalMode && !filtered) {
+			Long estimate = estimateTableRows(getTableName());
+			if (null != estimate) {
+				return estimate;
+			}
+		}
+		CountCache.Region region = CountCache.region(getEntityClass());
+		Long count = region.get(cacheKey, getCountCacheTtl());
+		if (null == count) {
+			long generation = region.generation();
+			count = query.count();
+			region.put(cacheKey, count, generation);
+		}
+		return count;
+	}
+
+	/**
+	 * 查询条件是否包含过滤条件或关联
+	 */
+	private boolean hasRestrictions(DetachedCriteria dc) {
+		CriteriaImpl criteria = (CriteriaImpl) dc
+				.getExecutableCriteria(getSession());
+		return criteria.iterateExpressionEntries().hasNext()
+				|| criteria.iterateSubcriteria().hasNext();
+	}
+
+	@Override
+	public KeysetPage<T> findByKeyset(DetachedCriteria dc, Order[] orders,
+			String cursor, int pageSize) {
+		Object[] lastKeys = null;
+		if (null != cursor) {
+			lastKeys = KeysetCursor.decode(cursor);
+		}
+		return findByKeyset(dc, orders, lastKeys, pageSize);
+	}
+
+	/**
+	 * 键集(seek)分页查询, 查询pageSize+1条记录判断是否有下一页,
+	 * 条件为 (k1 > v1) or (k1 = v1 and k2 > v2) or ...(降序字段使用 <); 查询结束后从dc中移除追加的条件和排序.
+	 * dc不能带排序(排在键集排序之前会使seek条件与实际顺序不一致, 跳过或重复记录), lastKeys的类型必须与排序字段一致
+	 */
+	@SuppressWarnings("unchecked")
+	@Override
+	public KeysetPage<T> findByKeyset(DetachedCriteria dc, Order[] orders,
+			Object[] lastKeys, int pageSize) {
+		Assert.isTrue(pageSize > 0);
+		Order[] keyOrders = getKeysetOrders(orders);
+		CriteriaImpl criteria = (CriteriaImpl) dc
+				.getExecutableCriteria(getSession());
+		Assert.isTrue(!criteria.iterateOrderings().hasNext(),
+				"dc must not have orderings, pass them as keyset orders");
+		Integer firstResult = criteria.getFirstResult();
+		Integer maxResults = criteria.getMaxResults();
+		Disjunction seek = null;
+		if (null != lastKeys) {
+			Assert.isTrue(lastKeys.length == keyOrders.length,
+					"lastKeys length must match the keyset orders (including id)");
+			ClassMetadata metadata = sessionFactory
+					.getClassMetadata(getEntityClass());
+			seek = Restrictions.disjunction();
+			for (int i = 0; i < keyOrders.length; i++) {
+				Assert.notNull(lastKeys[i], "lastKeys must not contain null");
+				String prop = keyOrders[i].getPropertyName();
+				Class<?> type = getIdName().equals(prop) ? metadata
+						.getIdentifierType().getReturnedClass() : metadata
+						.getPropertyType(prop).getReturnedClass();
+				Assert.isTrue(ClassUtils.isAssignableValue(type, lastKeys[i]),
+						"lastKeys[" + i + "] must be " + type.getName()
+								+ " for keyset order property '" + prop
+								+ "', got " + lastKeys[i].getClass().getName());
+				Conjunction step = Restrictions.conjunction();
+				for (int j = 0; j < i; j++) {
+					step.add(Restrictions.eq(keyOrders[j].getPropertyName(),
+							lastKeys[j]));
+				}
+				step.add(keyOrders[i].isAscending() ? Restrictions.gt(prop,
+						lastKeys[i]) : Restrictions.lt(prop, lastKeys[i]));
+				seek.add(step);
+			}
+			dc.add(seek);
+		}
+		for (Order order : keyOrders) {
+			dc.addOrder(order);
+		}
+		List<T> list;
+		try {
+			list = listByDC(dc, 0, pageSize + 1, false);
+		} finally {
+			for (Iterator<CriteriaImpl.CriterionEntry> it = criteria
+					.iterateExpressionEntries(); null != seek && it.hasNext();) {
+				if (it.next().getCriterion() == seek) {
+					it.remove();
+				}
+			}
+			for (Iterator<CriteriaImpl.OrderEntry> it = criteria
+					.iterateOrderings(); it.hasNext();) {
+				it.next();
+				it.remove();
+			}
+			criteria.setFirstResult(null == firstResult ? 0 : firstResult);
+			criteria.setMaxResults(null == maxResults ? 0 : maxResults);
+		}
+		boolean hasNext = list.size() > pageSize;
+		String cursor = null;
+		if (hasNext) {
+			list = new ArrayList<T>(list.subList(0, pageSize));
+			cursor = KeysetCursor.encode(getKeysetValues(
+					list.get(pageSize - 1), keyOrders));
+		}
+		return new KeysetPage<T>(pageSize, hasNext, cursor, list);
+	}
+
+	/**
+	 * 键集分页的排序字段, 不以ID结尾时追加ID升序, 保证排序唯一.
+	 * 排序字段必须映射为非空(seek条件无法定位null值), 且不支持ignoreCase(seek条件按原值比较)
+	 */
+	private Order[] getKeysetOrders(Order[] orders) {
+		ClassMetadata metadata = sessionFactory
+				.getClassMetadata(getEntityClass());
+		List<String> names = Arrays.asList(metadata.getPropertyNames());
+		String idName = getIdName();
+		List<Order> keyOrders = new ArrayList<Order>();
+		if (null != orders) {
+			for (Order order : orders) {
+				String prop = order.getPropertyName();
+				Assert.isTrue(prop.indexOf('.') < 0,
+						"keyset orders only support entity's own properties");
+				Assert.isTrue(!order.isIgnoreCase(),
+						"keyset orders do not support ignoreCase: " + prop);
+				int i = names.indexOf(prop);
+				Assert.isTrue(idName.equals(prop)
+						|| (i >= 0 && !metadata.getPropertyNullability()[i]),
+						"keyset order property '" + prop
+								+ "' must be mapped as not nullable");
+				keyOrders.add(order);
+			}
+		}
+		if (keyOrders.isEmpty()
+				|| !idName.equals(keyOrders.get(keyOrders.size() - 1)
+						.getPropertyName())) {
+			keyOrders.add(Order.asc(idName));
+		}
+		return keyOrders.toArray(new Order[keyOrders.size()]);
+	}
+
+	/**
+	 * 读取实体的排序字段值
+	 */
+	private Object[] getKeysetValues(T entity, Order[] keyOrders) {
+		ClassMetadata metadata = sessionFactory
+				.getClassMetadata(getEntityClass());
+		String idName = getIdName();
+		Object[] values = new Object[keyOrders.length];
+		for (int i = 0; i < keyOrders.length; i++) {
+			String prop = keyOrders[i].getPropertyName();
+			values[i] = idName.equals(prop) ? getIdFromEntity(entity)
+					: metadata.getPropertyValue(entity, prop);
+			Assert.notNull(values[i], "keyset order property '" + prop
+					+ "' must not be null");
+		}
+		return values;
+	}
+
+	/**
+	 * 获取当前DAO对应entity的DetachedCriteria
+	 * @return
+	 */
+	@Override
+	public DetachedCriteria getDC() {
+		return DetachedCriteria.forClass(getEntityClass());
+	}
+
+	@SuppressWarnings("unchecked")
+	@Override
+	public List<T> findAll() {
+		return super.listByDC(getDC(),false);
+	}
+	
+	/**
+	 * 流式查询默认的JDBC fetch size, 子类可覆盖
+	 * (MySQL需要在连接串中设置useCursorFetch=true才会按fetch size分批读取)
+	 * @return
+	 */
+	protected int getFetchSize() {
+		return 1000;
+	}
+
+	/**
+	 * 导出的默认并行线程数(CPU核数), 子类可覆盖, 不应超过连接池大小
+	 * @return
+	 */
+	protected int getExportParallelism() {
+		return Runtime.getRuntime().availableProcessors();
+	}
+
+	@Override
+	public ExportReport export(File target, ExportFormat format) {
+		int parallelism = getExportParallelism();
+		// 区间数多于线程数, 使各线程的负载更均衡
+		return export(null, target, format, parallelism * 4, parallelism);
+	}
+
+	@Override
+	public ExportReport export(DetachedCriteria dc, File target,
+			ExportFormat format, int partitions, int parallelism) {
+		return new RangeExporter(sessionFactory, getEntityClass()).export(dc,
+				target, format, partitions, parallelism, getFetchSize());
+	}
+
+	@Override
+	public long forEach(RowHandler<T> handler) {
+		return forEach(getDC(), getFetchSize(), handler);
+	}
+
+	@SuppressWarnings("unchecked")
+	@Override
+	public long forEach(DetachedCriteria dc, int fetchSize,
+			RowHandler<T> handler) {
+		Assert.notNull(handler);
+		Session session = getSession();
+		ScrollableResults results = scrollByDC(dc, fetchSize);
+		long count = 0;
+		try {
+			while (results.next()) {
+				T row = (T) results.get(0);
+				count++;
+				boolean more = handler.handle(row);
+				session.evict(row);
+				if (!more) {
+					break;
+				}
+			}
+		} finally {
+			results.close();
+		}
+		return count;
+	}
+
+	@SuppressWarnings("unchecked")
+	@Override
+	public List<T> listByDC(DetachedCriteria dc){
+		return super.listByDC(dc,false);
+	}
+
+	/**
+	 * isCacheable时查询当前实体(无投影、无关联, 条件可提取参数, 见{@link #criteriaKey(DetachedCriteria, boolean)})的结果使用查询结果缓存, 只缓存ID列表
+	 */
+	@SuppressWarnings("rawtypes")
+	@Override
+	public List listByDC(final DetachedCriteria dc, boolean isCacheable) {
+		String key = isResultCacheable(dc, isCacheable) ? criteriaKey(dc,
+				true) : null;
+		if (null == key) {
+			return super.listByDC(dc, isCacheable);
+		}
+		ResultCache.Result result = ResultCache.region(getEntityClass(),
+				getResultCacheSize()).get("list:" + key,
+				getResultCacheTtl(), new ResultCache.Loader() {
+					@Override
+					public ResultCache.Result load() {
+						List<Serializable> ids = listIds(dc, 0, 0);
+						return new ResultCache.Result(ids, ids.size(), false);
+					}
+				});
+		return materialize(result.getIds());
+	}
+
+	private interface IdQuery {
+		List<Serializable> list(int first, int max);
+	}
+
+	/**
+	 * 使用查询结果缓存分页, 未命中时查询总数和当前页的ID, 命中时只按ID批量获取实体({@link #getAll(Collection)})
+	 * @param key 规范化后的查询条件
+	 * @param filtered 是否有过滤条件, 见{@link #count(TotalMode, boolean, String, CountQuery)}
+	 * @param countKey 总数缓存的key, 为null时countQuery自行计算总数
+	 */
+	private Page<T> cachedPage(String key, final int pageIndex,
+			final int pageSize, final TotalMode totalMode,
+			final boolean filtered, final String countKey,
+			final CountQuery countQuery, final IdQuery idQuery) {
+		ResultCache.Result result = ResultCache.region(getEntityClass(),
+				getResultCacheSize()).get(
+				key + ":" + pageIndex + ":" + pageSize + ":" + totalMode,
+				getResultCacheTtl(), new ResultCache.Loader() {
+					@Override
+					public ResultCache.Result load() {
+						if (TotalMode.NONE == totalMode) {
+							List<Serializable> ids = idQuery.list(pageIndex
+									* pageSize, pageSize + 1);
+							boolean hasNext = ids.size() > pageSize;
+							if (hasNext) {
+								ids = new ArrayList<Serializable>(ids.subList(
+										0, pageSize));
+							}
+							return new ResultCache.Result(ids, -1, hasNext);
+						}
+						long count = null == countKey ? countQuery.count()
+								: count(totalMode, filtered, countKey,
+										countQuery);
+						return new ResultCache.Result(idQuery.list(pageIndex
+								* pageSize, pageSize), count,
+								(long) (pageIndex + 1) * pageSize < count);
+					}
+				});
+		return new Page<T>(pageIndex + 1, result.getTotal(), pageSize,
+				materialize(result.getIds()), totalMode, result.isHasNext());
+	}
+
+	/**
+	 * 查询当前实体且不含投影和关联(其他实体的写入不会清理本实体的结果缓存)时使用查询结果缓存
+	 */
+	private boolean isResultCacheable(DetachedCriteria dc, boolean isCacheable) {
+		if (!isCacheable || getResultCacheSize() <= 0) {
+			return false;
+		}
+		CriteriaImpl criteria = (CriteriaImpl) dc
+				.getExecutableCriteria(getSession());
+		return null == criteria.getProjection()
+				&& getEntityClass().getName().equals(
+						criteria.getEntityOrClassName())
+				&& !criteria.iterateSubcriteria().hasNext();
+	}
+
+	/**
+	 * 规范化的查询条件: 关联、各条件的SQL片段(列和运算符)及参数(类型和值)、排序, 不使用toString
+	 * (sqlRestriction等条件的toString不含参数值, 参数值中的分隔符也会与其他条件组合混淆).
+	 * 含无法提取参数或可能读取其他表的条件(sqlRestriction、Example、子查询、自定义Criterion)时返回null, 不缓存
+	 * @param orders 是否包含排序
+	 * @return 缓存key, 不可缓存时返回null
+	 */
+	private String criteriaKey(DetachedCriteria dc, boolean orders) {
+		CriteriaImpl criteria = (CriteriaImpl) dc
+				.getExecutableCriteria(getSession());
+		SessionFactoryImplementor factory = (SessionFactoryImplementor) sessionFactory;
+		CriteriaQueryTranslator translator = new CriteriaQueryTranslator(
+				factory, criteria, criteria.getEntityOrClassName(),
+				CriteriaQueryTranslator.ROOT_SQL_ALIAS);
+		StringBuilder key = new StringBuilder(criteria.getEntityOrClassName());
+		for (Iterator<CriteriaImpl.Subcriteria> it = criteria
+				.iterateSubcriteria(); it.hasNext();) {
+			CriteriaImpl.Subcriteria subcriteria = it.next();
+			key.append(" join ").append(subcriteria.getPath()).append(' ')
+					.append(subcriteria.getAlias()).append(' ')
+					.append(subcriteria.getJoinType());
+			if (null != subcriteria.getWithClause()
+					&& !appendCriterionKey(key, subcriteria.getWithClause(),
+							subcriteria, translator, factory)) {
+				return null;
+			}
+		}
+		for (Iterator<CriteriaImpl.CriterionEntry> it = criteria
+				.iterateExpressionEntries(); it.hasNext();) {
+			CriteriaImpl.CriterionEntry entry = it.next();
+			key.append(" where ");
+			if (!appendCriterionKey(key, entry.getCriterion(),
+					entry.getCriteria(), translator, factory)) {
+				return null;
+			}
+		}
+		if (orders) {
+			for (Iterator<CriteriaImpl.OrderEntry> it = criteria
+					.iterateOrderings(); it.hasNext();) {
+				CriteriaImpl.OrderEntry entry = it.next();
+				key.append(" order ").append(
+						entry.getOrder().toSqlString(entry.getCriteria(),
+								translator));
+			}
+		}
+		return key.toString();
+	}
+
+	/**
+	 * 追加一个条件的SQL片段和参数, 参数按类型名、长度和值记录
+	 * @return 条件不可缓存时返回false
+	 */
+	private static boolean appendCriterionKey(StringBuilder key,
+			Criterion criterion, Criteria criteria,
+			CriteriaQueryTranslator translator,
+			SessionFactoryImplementor factory) {
+		if (!isCacheableCriterion(criterion)) {
+			return false;
+		}
+		key.append(criterion.toSqlString(criteria, translator));
+		for (TypedValue value : criterion.getTypedValues(criteria, translator)) {
+			String text = value.getType().toLoggableString(value.getValue(),
+					factory);
+			key.append(" {").append(value.getType().getName()).append(':')
+					.append(text.length()).append(':').append(text)
+					.append('}');
+		}
+		return true;
+	}
+
+	/**
+	 * 条件只由本实体(及关联)的属性比较组成, 参数可从getTypedValues完整取得
+	 */
+	private static boolean isCacheableCriterion(Criterion criterion) {
+		if (criterion instanceof Junction) {
+			for (Criterion condition : ((Junction) criterion).conditions()) {
+				if (!isCacheableCriterion(condition)) {
+					return false;
+				}
+			}
+			return true;
+		}
+		if (criterion instanceof NotExpression) {
+			return isCacheableCriterion((Criterion) nestedCriterion(criterion,
+					"criterion"));
+		}
+		if (criterion instanceof LogicalExpression) {
+			return isCacheableCriterion((Criterion) nestedCriterion(criterion,
+					"lhs"))
+					&& isCacheableCriterion((Criterion) nestedCriterion(
+							criterion, "rhs"));
+		}
+		return criterion instanceof SimpleExpression
+				|| criterion instanceof PropertyExpression
+				|| criterion instanceof InExpression
+				|| criterion instanceof NullExpression
+				|| criterion instanceof NotNullExpression
+				|| criterion instanceof BetweenExpression
+				|| criterion instanceof LikeExpression
+				|| criterion instanceof IdentifierEqExpression
+				|| criterion instanceof AbstractEmptinessExpression
+				|| criterion instanceof SizeExpression;
+	}
+
+	/**
+	 * Hibernate的NotExpression/LogicalExpression没有公开内部条件, 反射读取
+	 */
+	private static Object nestedCriterion(Criterion criterion, String field) {
+		Field f = ReflectionUtils.findField(criterion.getClass(), field);
+		ReflectionUtils.makeAccessible(f);
+		return ReflectionUtils.getField(f, criterion);
+	}
+
+	/**
+	 * 按查询条件查询不重复的ID(保持查询顺序), 查询后恢复dc的投影、结果转换和分页范围
+	 * @param max 最大记录数, 0表示不限制
+	 */
+	@SuppressWarnings("unchecked")
+	private List<Serializable> listIds(DetachedCriteria dc, int first, int max) {
+		CriteriaImpl criteria = (CriteriaImpl) dc
+				.getExecutableCriteria(getSession());
+		ResultTransformer transformer = criteria.getResultTransformer();
+		Integer firstResult = criteria.getFirstResult();
+		Integer maxResults = criteria.getMaxResults();
+		dc.setProjection(Projections.id());
+		try {
+			List<Serializable> ids = max > 0 ? super.listByDC(dc, first, max,
+					false) : super.listByDC(dc, false);
+			return new ArrayList<Serializable>(new LinkedHashSet<Serializable>(
+					ids));
+		} finally {
+			dc.setProjection(null);
+			dc.setResultTransformer(transformer);
+			criteria.setFirstResult(null == firstResult ? 0 : firstResult);
+			criteria.setMaxResults(null == maxResults ? 0 : maxResults);
+		}
+	}
+
+	/**
+	 * 按ID批量获取实体, 跳过已不存在的ID
+	 */
+	@SuppressWarnings("unchecked")
+	private List<T> materialize(List<Serializable> ids) {
+		List<T> list = new ArrayList<T>(ids.size());
+		for (T entity : getAll((Collection<ID>) (Collection<?>) ids).values()) {
+			if (null != entity) {
+				list.add(entity);
+			}
+		}
+		return list;
+	}
+	
+	@Override
+	public List<T> listByDC(DetachedCriteria dc,String[] sels){
+		return listByDC(dc, sels, getEntityClass());
+	}
+
+	@Override
+	@SuppressWarnings("unchecked")
+	public <D> List<D> listByDC(DetachedCriteria dc, String[] sels,
+			Class<D> dtoClass) {
+		Assert.notEmpty(sels, "sels must not be empty");
+		Assert.notNull(dtoClass);
+		ProjectionList pList = Projections.projectionList();
+		String[] columns = new String[sels.length];
+		for (int i = 0; i < sels.length; i++) {
+			pList.add(Projections.property(sels[i]));
+			// 关联属性(如 dept.name)映射到DTO的最后一段属性名
+			columns[i] = sels[i].substring(sels[i].lastIndexOf('.') + 1);
+		}
+		dc.setProjection(pList);
+		dc.setResultTransformer(ProjectionAccessors.transformer(dtoClass,
+				columns));
+		return super.listByDC(dc, false);
+	}
+
 	@Override
 	public Long countByDC(DetachedCriteria dc){
 		return super.countByDC(dc);
 	}
+
+	@SuppressWarnings("unchecked")
+	@Override
+	public List<Object[]> aggregate(DetachedCriteria dc, Aggregation aggregation) {
+		return aggregate(dc, aggregation, TUPLE);
+	}
+
+	@SuppressWarnings("unchecked")
+	@Override
+	public <D> List<D> aggregate(DetachedCriteria dc, Aggregation aggregation,
+			Class<D> dtoClass) {
+		Assert.notNull(dtoClass);
+		return aggregate(dc, aggregation, ProjectionAccessors.transformer(
+				dtoClass, aggregation.getAliases()));
+	}
+
+	/**
+	 * 执行聚合查询: 原有排序(通常不在分组中)在执行期间移除, 改用聚合定义的排序, 结束后恢复dc
+	 */
+	@SuppressWarnings("rawtypes")
+	private List aggregate(DetachedCriteria dc, Aggregation aggregation,
+			ResultTransformer transformer) {
+		Assert.notNull(dc);
+		Assert.notNull(aggregation);
+		CriteriaImpl criteria = (CriteriaImpl) dc
+				.getExecutableCriteria(getSession());
+		ResultTransformer original = criteria.getResultTransformer();
+		Integer maxResults = criteria.getMaxResults();
+		List<CriteriaImpl.OrderEntry> orders = new ArrayList<CriteriaImpl.OrderEntry>();
+		for (Iterator<CriteriaImpl.OrderEntry> it = criteria
+				.iterateOrderings(); it.hasNext();) {
+			orders.add(it.next());
+			it.remove();
+		}
+		dc.setProjection(aggregation.toProjection());
+		dc.setResultTransformer(transformer);
+		for (Order order : aggregation.getOrders()) {
+			dc.addOrder(order);
+		}
+		if (aggregation.getLimit() > 0) {
+			criteria.setMaxResults(aggregation.getLimit());
+		}
+		try {
+			return super.listByDC(dc, false);
+		} finally {
+			criteria.setMaxResults(null == maxResults ? 0 : maxResults);
+			for (Iterator<CriteriaImpl.OrderEntry> it = criteria
+					.iterateOrderings(); it.hasNext();) {
+				it.next();
+				it.remove();
+			}
+			for (CriteriaImpl.OrderEntry entry : orders) {
+				entry.getCriteria().addOrder(entry.getOrder());
+			}
+			dc.setProjection(null);
+			dc.setResultTransformer(original);
+		}
+	}
+
+	@Override
+	public CacheStatistics getCacheStatistics() {
+		return CacheStatistics.of(sessionFactory, getEntityClass().getName());
+	}
 	
 	@Override
 	public List<T> findByProperty(String propName, Object propVal) {
-		DetachedCriteria dc = getDC();
-		if (null != propVal) {
-			dc.add(Restrictions.eq(propName, propVal));
-		}
-		return listByDC(dc);
+		return listByDC(propertyDC(propName, propVal));
 	}
 	
+	/**
+	 * 单属性查询唯一结果, 属性属于{@link #getNaturalKeyProperties()}时先从自然键缓存中获取ID:
+	 * 命中时按ID加载(Session/二级缓存)并校验属性值, 查询不到的值缓存为否定条目
+	 */
+	@SuppressWarnings("unchecked")
 	@Override
 	public T getByProperty(String propName, Object propVal) {
+		if (null == propVal || !isNaturalKey(propName)) {
+			return (T) uniqueByDC(propertyDC(propName, propVal));
+		}
+		NaturalKeyCache.Region region = NaturalKeyCache.region(
+				getEntityClass(), getNaturalKeyCacheSize());
+		String key = propName + '=' + propVal;
+		NaturalKeyCache.Entry entry = region.get(key, getNaturalKeyCacheTtl(),
+				getNaturalKeyNegativeTtl());
+		if (null != entry) {
+			if (entry.isMissing()) {
+				return null;
+			}
+			T entity = (T) getSession().get(getEntityClass(), entry.getId());
+			if (null != entity
+					&& propVal.equals(sessionFactory.getClassMetadata(
+							getEntityClass()).getPropertyValue(
+							unproxy(entity), propName))) {
+				return entity;
+			}
+			// 实体已删除或属性已修改
+			region.remove(key);
+		}
+		long generation = region.generation();
+		T entity = (T) uniqueByDC(propertyDC(propName, propVal));
+		region.put(key, null == entity ? null : getIdFromEntity(entity),
+				generation);
+		return entity;
+	}
+
+	private DetachedCriteria propertyDC(String propName, Object propVal) {
 		DetachedCriteria dc = getDC();
 		if (null != propVal) {
 			dc.add(Restrictions.eq(propName, propVal));
 		}
-		return (T) uniqueByDC(dc);
+		return dc;
+	}
+
+	private boolean isNaturalKey(String propName) {
+		for (String p : getNaturalKeyProperties()) {
+			if (p.equals(propName)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	private static Object unproxy(Object entity) {
+		if (entity instanceof HibernateProxy) {
+			return ((HibernateProxy) entity).getHibernateLazyInitializer()
+					.getImplementation();
+		}
+		return entity;
+	}
+
+	/**
+	 * 自然键(唯一属性), {@link #getByProperty(String, Object)}按这些属性查询时使用自然键缓存, 默认没有, 子类可覆盖.
+	 * 命中校验使用equals, 与数据库比较规则不一致(如不区分大小写)的值不会命中, 每次重新查询
+	 * @return 属性名
+	 */
+	protected String[] getNaturalKeyProperties() {
+		return new String[0];
 	}
 
+	/**
+	 * 自然键缓存每个实体最多缓存的条目数, 首次使用时生效
+	 * @return
+	 */
+	protected int getNaturalKeyCacheSize() {
+		return 10000;
+	}
+
+	/**
+	 * 自然键缓存肯定条目的有效期(毫秒), 命中时会校验属性值
+	 * @return
+	 */
+	protected long getNaturalKeyCacheTtl() {
+		return 10 * 60 * 1000L;
+	}
+
+	/**
+	 * 自然键缓存否定条目(值不存在)的有效期(毫秒), 决定其他节点写入后最长多久可见
+	 * @return
+	 */
+	protected long getNaturalKeyNegativeTtl() {
+		return 30 * 1000L;
+	}
+
+	/**
+	 * {@link #isWriteBehind()}时更新放入写后缓冲, 返回0(未立即写入)
+	 */
 	@Override
 	public int updatePropertiesById(Map<String, Object> updateSet, ID id) {
-		Map updateWhere = new HashMap();
+		if (null != writeBehind) {
+			buffer(updateSet, id);
+			return 0;
+		}
+		Map<String, Object> updateWhere = new HashMap<String, Object>();
 		updateWhere.put(getIdName(), id);
 		return updateProperties(updateSet, updateWhere);
 	}
 
+	/**
+	 * 根据条件更新字段, 按更新形态(set/where字段名集合)从模板注册表获取编译好的HQL
+	 */
 	@Override
 	public int updateProperties(Map<String, Object> updateSet,
 			Map<String, Object> updateWhere) {
+		final List<String> setKeys = sortedKeys(updateSet);
+		final List<String> whereKeys = sortedKeys(updateWhere);
+		checkQueryable(setKeys);
+		checkQueryable(whereKeys);
+		if (whereKeys.size() == 1 && whereKeys.contains(getIdName())) {
+			drainWriteBehind(updateWhere.get(getIdName()));
+		} else {
+			flushWriteBehind();
+		}
 		try {
-			List<Object> list = new ArrayList();
-			String entityName = getEntityClass().getName();
-			String hql = "update " + entityName + " e ";
-			String setHql = "set ";
-			for (String setKey : updateSet.keySet()) {
-				setHql += "e." + setKey + "=?,";
+			QueryTemplate template = getQueryTemplates().get(
+					"update:" + getEntityClass().getName() + ":set" + setKeys
+							+ ":where" + whereKeys, new Compiler() {
+						@Override
+						public QueryTemplate compile() {
+							StringBuilder hql = new StringBuilder("update ")
+									.append(getEntityClass().getName())
+									.append(" e set ");
+							for (int i = 0; i < setKeys.size(); i++) {
+								hql.append(i == 0 ? "" : ", ").append("e.")
+										.append(setKeys.get(i)).append(" = ?");
+							}
+							for (int i = 0; i < whereKeys.size(); i++) {
+								hql.append(i == 0 ? " where " : " and ")
+										.append("e.").append(whereKeys.get(i))
+										.append(" = ?");
+							}
+							return new QueryTemplate(hql.toString());
+						}
+					});
+			List<Object> list = new ArrayList<Object>();
+			for (String setKey : setKeys) {
 				list.add(updateSet.get(setKey));
 			}
-			setHql = setHql.substring(0, setHql.length() - 1);
-			String whereHql = "";
-			if (null != updateWhere) {
-				whereHql = " where ";
-				for (String whereKey : updateWhere.keySet()) {
-					whereHql += " e." + whereKey + "=? and";
-					list.add(updateWhere.get(whereKey));
-				}
-				whereHql = whereHql.substring(0, whereHql.length() - 3);
+			for (String whereKey : whereKeys) {
+				list.add(updateWhere.get(whereKey));
 			}
-			Query query = createQuery(hql + setHql + whereHql, list.toArray());
-			return query.executeUpdate();
+			Query query = createQuery(template.getHql(), list.toArray());
+			int rows = query.executeUpdate();
+			afterWrite(getEntityClass());
+			if (whereKeys.size() == 1 && whereKeys.contains(getIdName())) {
+				updateNgramIndexes((Serializable) updateWhere.get(getIdName()),
+						updateSet);
+			} else {
+				rebuildNgramIndexes(setKeys);
+			}
+			return rows;
 		} catch (Exception e) {
-			e.printStackTrace();
+			log.error("updateProperties " + getEntityClass().getSimpleName()
+					+ " failed", e);
 		}
 		return -1;
 	}
 
-	
+	@Override
+	public boolean updatePropertiesById(Map<String, Object> updateSet, ID id,
+			Object version) {
+		Assert.notEmpty(updateSet);
+		Assert.notNull(id);
+		Assert.notNull(version);
+		final List<String> setKeys = sortedKeys(updateSet);
+		checkQueryable(setKeys);
+		drainWriteBehind(id);
+		final String versionName = getVersionName();
+		// update versioned: 更新时由Hibernate递增版本
+		QueryTemplate template = getQueryTemplates().get(
+				"updateVersioned:" + getEntityClass().getName() + ":set"
+						+ setKeys, new Compiler() {
+					@Override
+					public QueryTemplate compile() {
+						StringBuilder hql = new StringBuilder(
+								"update versioned ").append(
+								getEntityClass().getName()).append(" e set ");
+						for (int i = 0; i < setKeys.size(); i++) {
+							hql.append(i == 0 ? "" : ", ").append("e.")
+									.append(setKeys.get(i)).append(" = ?");
+						}
+						hql.append(" where e.").append(getIdName())
+								.append(" = ? and e.").append(versionName)
+								.append(" = ?");
+						return new QueryTemplate(hql.toString());
+					}
+				});
+		List<Object> values = new ArrayList<Object>();
+		for (String setKey : setKeys) {
+			values.add(updateSet.get(setKey));
+		}
+		values.add(id);
+		values.add(version);
+		int rows = createQuery(template.getHql(), values.toArray())
+				.executeUpdate();
+		if (0 == rows) {
+			optimisticMetric("conflicts").inc();
+			return false;
+		}
+		afterWrite(getEntityClass());
+		updateNgramIndexes(id, updateSet);
+		return true;
+	}
+
+	/**
+	 * 没有集合和级联删除时使用HQL按版本删除(delete ... where id = ? and version = ?), 提交后从n-gram索引中移除;
+	 * 否则加载实体比较版本后通过Session删除(处理级联和集合表), 加载后被并发修改时flush抛出乐观锁异常
+	 */
+	@Override
+	public boolean deleteById(final ID id, Object version) {
+		Assert.notNull(id);
+		Assert.notNull(version);
+		final String versionName = getVersionName();
+		drainWriteBehind(id);
+		if (requiresCascadeDelete()) {
+			T entity = get(id);
+			if (null == entity
+					|| !ObjectUtils.nullSafeEquals(version, sessionFactory
+							.getClassMetadata(getEntityClass()).getVersion(
+									entity))) {
+				optimisticMetric("conflicts").inc();
+				return false;
+			}
+			getSession().delete(entity);
+			return true;
+		}
+		QueryTemplate template = getQueryTemplates().get(
+				"deleteVersioned:" + getEntityClass().getName(),
+				new Compiler() {
+					@Override
+					public QueryTemplate compile() {
+						return new QueryTemplate("delete "
+								+ getEntityClass().getName() + " e where e."
+								+ getIdName() + " = ? and e." + versionName
+								+ " = ?");
+					}
+				});
+		int rows = createQuery(template.getHql(), id, version).executeUpdate();
+		if (0 == rows) {
+			optimisticMetric("conflicts").inc();
+			return false;
+		}
+		afterWrite(getEntityClass());
+		if (TransactionSynchronizationManager.isSynchronizationActive()) {
+			TransactionSynchronizationManager
+					.registerSynchronization(new TransactionSynchronizationAdapter() {
+						@Override
+						public void afterCommit() {
+							NgramIndexes.deleted(getEntityClass(),
+									Collections.singleton(id));
+						}
+					});
+		} else {
+			NgramIndexes.deleted(getEntityClass(), Collections.singleton(id));
+		}
+		return true;
+	}
+
+	/**
+	 * 每次尝试使用StatelessSession在独立事务中读取并按版本更新(update ... where id = ? and version = ?),
+	 * 冲突时按{@link #getOptimisticBackoff()}指数退避(带随机抖动)后重试, 最多{@link #getOptimisticRetries()}次
+	 */
+	@SuppressWarnings("unchecked")
+	@Override
+	public T modify(ID id, EntityModifier<T> modifier) {
+		Assert.notNull(id);
+		Assert.notNull(modifier);
+		getVersionName();
+		drainWriteBehind(id);
+		int retries = getOptimisticRetries();
+		for (int attempt = 0;; attempt++) {
+			ReplicaRoutingDataSource.beginPrimary();
+			try {
+				StatelessSession session = sessionFactory.openStatelessSession();
+				Transaction tx = session.beginTransaction();
+				try {
+					T entity = (T) session.get(getEntityClass(), id);
+					T modified = null == entity ? null : modifier.modify(entity);
+					if (null != modified) {
+						session.update(modified);
+					}
+					tx.commit();
+					if (null != modified) {
+						// StatelessSession不维护二级缓存
+						sessionFactory.getCache().evictEntity(getEntityClass(), id);
+						NgramIndexes.written(sessionFactory, getEntityClass(), id,
+								modified);
+						afterWrite(getEntityClass());
+					}
+					return modified;
+				} catch (StaleStateException e) {
+					tx.rollback();
+					optimisticMetric("conflicts").inc();
+					if (attempt >= retries) {
+						optimisticMetric("exhausted").inc();
+						throw new OptimisticLockingFailureException("modify "
+								+ getEntityClass().getSimpleName() + "#" + id
+								+ " failed after " + (attempt + 1)
+								+ " attempts", e);
+					}
+				} catch (RuntimeException e) {
+					tx.rollback();
+					throw e;
+				} finally {
+					session.close();
+				}
+			} finally {
+				ReplicaRoutingDataSource.endPrimary();
+			}
+			optimisticMetric("retries").inc();
+			backoff(attempt);
+		}
+	}
+
+	/**
+	 * 第attempt次冲突后的等待: min(backoff * 2^attempt, 上限)乘以[0.5, 1)的随机系数
+	 */
+	private void backoff(int attempt) {
+		long delay = Math.min(getOptimisticBackoff() << Math.min(attempt, 16),
+				getOptimisticMaxBackoff());
+		delay = (long) (delay * (0.5 + BACKOFF_JITTER.nextDouble() / 2));
+		if (delay <= 0) {
+			return;
+		}
+		try {
+			Thread.sleep(delay);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new OptimisticLockingFailureException("modify "
+					+ getEntityClass().getSimpleName() + " interrupted", e);
+		}
+	}
+
+	/**
+	 * 版本属性名, 实体没有@Version时抛出IllegalArgumentException
+	 */
+	private String getVersionName() {
+		ClassMetadata metadata = sessionFactory
+				.getClassMetadata(getEntityClass());
+		Assert.isTrue(metadata.isVersioned(), getEntityClass().getName()
+				+ " has no @Version property");
+		return metadata.getPropertyNames()[metadata.getVersionProperty()];
+	}
+
+	/**
+	 * dao.&lt;实体名&gt;.optimistic.conflicts/retries/exhausted
+	 */
+	private Counter optimisticMetric(String name) {
+		return metricRegistry.counter(MetricRegistry.name(
+				DaoMetricsInterceptor.PREFIX, getEntityClass().getSimpleName(),
+				"optimistic", name));
+	}
+
+	/**
+	 * 乐观并发修改冲突后的最大重试次数
+	 * @return
+	 */
+	protected int getOptimisticRetries() {
+		return 5;
+	}
+
+	/**
+	 * 乐观并发修改第一次重试前的等待时间(毫秒), 之后每次加倍
+	 * @return
+	 */
+	protected long getOptimisticBackoff() {
+		return 10;
+	}
+
+	/**
+	 * 乐观并发修改重试的最长等待时间(毫秒)
+	 * @return
+	 */
+	protected long getOptimisticMaxBackoff() {
+		return 200;
+	}
+
+	/**
+	 * 是否对{@link #updatePropertiesById(Map, Serializable)}使用写后缓冲: 更新按ID合并后批量写入,
+	 * 用于浏览数、最后访问时间等高频更新的字段. 缓冲中的更新在进程崩溃时丢失, 写入前其他查询读不到;
+	 * 本DAO的其他写方法在写入前先写入相关记录的缓冲更新, 但Session中已加载实体的脏检查更新不会等待缓冲, 可能被其覆盖.
+	 * 默认关闭, 子类可覆盖
+	 * @return
+	 */
+	protected boolean isWriteBehind() {
+		return false;
+	}
+
+	/**
+	 * 计数字段, 写后缓冲时updateSet中这些字段的值是增量(整数), 合并时累加, 写入时 col = col + 增量
+	 * @return 属性名
+	 */
+	protected String[] getCounterProperties() {
+		return new String[0];
+	}
+
+	/**
+	 * 写后缓冲的ID数达到该值时立即写入
+	 * @return
+	 */
+	protected int getWriteBehindMaxPending() {
+		return 1000;
+	}
+
+	/**
+	 * 写后缓冲定时写入的间隔(毫秒)
+	 * @return
+	 */
+	protected long getWriteBehindInterval() {
+		return 1000L;
+	}
+
+	/**
+	 * 已在读写事务中时在该事务中写入(本事务可能已持有相关记录的行锁, 独立事务会等待锁超时), 否则在独立事务中写入
+	 */
+	@Override
+	public void flushWriteBehind() {
+		if (null == writeBehind) {
+			return;
+		}
+		if (inReadWriteTransaction()) {
+			writeBehind.flush(transactionalFlusher());
+		} else {
+			writeBehind.flush();
+		}
+	}
+
+	/**
+	 * 直接写入前先写入该记录在写后缓冲中的更新, 保证同一记录的写入顺序
+	 * @param idOrEntity 记录ID或实体, 不是本DAO的实体或没有ID时忽略
+	 */
+	private void drainWriteBehind(Object idOrEntity) {
+		if (null == writeBehind) {
+			return;
+		}
+		ClassMetadata metadata = sessionFactory
+				.getClassMetadata(getEntityClass());
+		Object id = idOrEntity;
+		if (getEntityClass().isInstance(idOrEntity)) {
+			// 游离对象不在Session中, 从ID属性读取
+			id = metadata.getIdentifier(idOrEntity,
+					(SessionImplementor) getSession());
+		} else if (!metadata.getIdentifierType().getReturnedClass()
+				.isInstance(idOrEntity)) {
+			return;
+		}
+		if (null == id) {
+			return;
+		}
+		if (inReadWriteTransaction()) {
+			writeBehind.flush((Serializable) id, transactionalFlusher());
+		} else {
+			writeBehind.flush((Serializable) id);
+		}
+	}
+
+	/**
+	 * 是否在读写事务中; 只读事务的连接可能来自从库, 缓冲的更新改在主库的独立事务中写入
+	 */
+	private static boolean inReadWriteTransaction() {
+		return TransactionSynchronizationManager.isActualTransactionActive()
+				&& !TransactionSynchronizationManager
+						.isCurrentTransactionReadOnly();
+	}
+
+	/**
+	 * 在当前事务中写入缓冲的更新, 用于调用方事务中的直接写入之前: 本事务可能已持有这些记录的行锁(如加锁读取或已写入),
+	 * 在独立事务中写入会等待自己持有的锁直到超时. 事务回滚时更新放回缓冲区
+	 */
+	private WriteBehindBuffer.Flusher transactionalFlusher() {
+		return new WriteBehindBuffer.Flusher() {
+			@Override
+			public void flush(
+					final Map<Serializable, WriteBehindBuffer.Update> updates) {
+				final Session session = getSession();
+				int statements = writeShapes(session, updates);
+				afterWrite(getEntityClass());
+				TransactionSynchronizationManager
+						.registerSynchronization(new TransactionSynchronizationAdapter() {
+							@Override
+							public void afterCommit() {
+								afterBufferedCommit(updates);
+							}
+
+							@Override
+							public void afterCompletion(int status) {
+								if (STATUS_ROLLED_BACK == status) {
+									writeBehind.requeue(updates);
+								}
+							}
+						});
+				log.debug("write-behind {}: {} rows in {} statements (in transaction)",
+						new Object[] { getEntityClass().getSimpleName(),
+								updates.size(), statements });
+			}
+		};
+	}
+
+	/**
+	 * 校验字段(写入失败的更新会留在缓冲区中反复重试, 因此在缓冲前校验)并放入写后缓冲
+	 */
+	private void buffer(Map<String, Object> updateSet, ID id) {
+		Assert.notEmpty(updateSet);
+		Assert.notNull(id);
+		AbstractEntityPersister persister = (AbstractEntityPersister) sessionFactory
+				.getClassMetadata(getEntityClass());
+		List<String> counters = Arrays.asList(getCounterProperties());
+		Map<String, Object> sets = new HashMap<String, Object>();
+		Map<String, Long> increments = new HashMap<String, Long>();
+		for (Map.Entry<String, Object> entry : updateSet.entrySet()) {
+			Assert.isTrue(
+					persister.getPropertyColumnNames(entry.getKey()).length == 1,
+					"write-behind requires a single column property: "
+							+ entry.getKey());
+			if (counters.contains(entry.getKey())) {
+				Object delta = entry.getValue();
+				Assert.isTrue(delta instanceof Integer || delta instanceof Long
+						|| delta instanceof Short || delta instanceof Byte,
+						"counter increment must be an integer: "
+								+ entry.getKey());
+				increments.put(entry.getKey(), ((Number) delta).longValue());
+			} else {
+				sets.put(entry.getKey(), entry.getValue());
+			}
+		}
+		writeBehind.add(id, sets, increments);
+	}
+
+	/**
+	 * 在独立事务中写入合并后的更新(后台刷新和不在事务中的直接写入之前), 写入后清除这些ID的二级缓存和实体相关的缓存
+	 */
+	private void writeBuffered(Map<Serializable, WriteBehindBuffer.Update> updates) {
+		int statements;
+		ReplicaRoutingDataSource.beginPrimary();
+		try {
+			Session session = sessionFactory.openSession();
+			Transaction tx = session.beginTransaction();
+			try {
+				statements = writeShapes(session, updates);
+				tx.commit();
+			} catch (RuntimeException e) {
+				tx.rollback();
+				throw e;
+			} finally {
+				session.close();
+			}
+		} finally {
+			ReplicaRoutingDataSource.endPrimary();
+		}
+		// 独立事务已提交, 直接更新索引
+		afterBufferedCommit(updates);
+		afterWrite(getEntityClass());
+		log.debug("write-behind {}: {} rows in {} statements", new Object[] {
+				getEntityClass().getSimpleName(), updates.size(), statements });
+	}
+
+	/**
+	 * 在Session的连接上写入合并后的更新: 相同字段集合的更新共用一条SQL, 按{@link #getBatchSize()}批量执行(JDBC batch),
+	 * 有版本字段时递增版本
+	 * @return 语句数
+	 */
+	private int writeShapes(final Session session,
+			Map<Serializable, WriteBehindBuffer.Update> updates) {
+		final Map<String, List<Map.Entry<Serializable, WriteBehindBuffer.Update>>> shapes = new LinkedHashMap<String, List<Map.Entry<Serializable, WriteBehindBuffer.Update>>>();
+		for (Map.Entry<Serializable, WriteBehindBuffer.Update> entry : updates
+				.entrySet()) {
+			List<Map.Entry<Serializable, WriteBehindBuffer.Update>> shape = shapes
+					.get(entry.getValue().getShape());
+			if (null == shape) {
+				shape = new ArrayList<Map.Entry<Serializable, WriteBehindBuffer.Update>>();
+				shapes.put(entry.getValue().getShape(), shape);
+			}
+			shape.add(entry);
+		}
+		final AbstractEntityPersister persister = (AbstractEntityPersister) sessionFactory
+				.getClassMetadata(getEntityClass());
+		session.doWork(new Work() {
+			@Override
+			public void execute(Connection connection) throws SQLException {
+				for (List<Map.Entry<Serializable, WriteBehindBuffer.Update>> shape : shapes
+						.values()) {
+					writeShape(connection, (SessionImplementor) session,
+							persister, shape);
+				}
+			}
+		});
+		return shapes.size();
+	}
+
+	/**
+	 * 缓冲的更新提交后清除这些ID的二级缓存并更新n-gram索引
+	 */
+	private void afterBufferedCommit(
+			Map<Serializable, WriteBehindBuffer.Update> updates) {
+		for (Map.Entry<Serializable, WriteBehindBuffer.Update> entry : updates
+				.entrySet()) {
+			sessionFactory.getCache().evictEntity(getEntityClass(),
+					entry.getKey());
+			NgramIndexes.updated(getEntityClass(), entry.getKey(), entry
+					.getValue().getSets());
+		}
+	}
+
+	private void writeShape(Connection connection, SessionImplementor session,
+			AbstractEntityPersister persister,
+			List<Map.Entry<Serializable, WriteBehindBuffer.Update>> shape)
+			throws SQLException {
+		WriteBehindBuffer.Update first = shape.get(0).getValue();
+		StringBuilder sql = new StringBuilder("update ").append(
+				persister.getTableName()).append(" set ");
+		String separator = "";
+		for (String property : first.getSets().keySet()) {
+			sql.append(separator)
+					.append(persister.getPropertyColumnNames(property)[0])
+					.append(" = ?");
+			separator = ", ";
+		}
+		for (String property : first.getIncrements().keySet()) {
+			String column = persister.getPropertyColumnNames(property)[0];
+			sql.append(separator).append(column).append(" = coalesce(")
+					.append(column).append(", 0) + ?");
+			separator = ", ";
+		}
+		// 版本不参与比较, 只递增(数字版本)或更新为当前时间(时间戳版本), 使并发的乐观修改检测到变化
+		boolean timestampVersion = false;
+		if (persister.isVersioned()) {
+			String column = persister.getVersionColumnName();
+			timestampVersion = !Number.class.isAssignableFrom(persister
+					.getVersionType().getReturnedClass());
+			sql.append(separator).append(column).append(" = ").append(
+					timestampVersion ? "?" : column + " + 1");
+		}
+		sql.append(" where ").append(persister.getIdentifierColumnNames()[0])
+				.append(" = ?");
+		PreparedStatement ps = connection.prepareStatement(sql.toString());
+		try {
+			int batched = 0;
+			for (Map.Entry<Serializable, WriteBehindBuffer.Update> entry : shape) {
+				WriteBehindBuffer.Update update = entry.getValue();
+				int index = 1;
+				for (Map.Entry<String, Object> set : update.getSets()
+						.entrySet()) {
+					persister.getPropertyType(set.getKey()).nullSafeSet(ps,
+							set.getValue(), index++, session);
+				}
+				for (Long increment : update.getIncrements().values()) {
+					ps.setLong(index++, increment);
+				}
+				if (timestampVersion) {
+					persister.getVersionType().nullSafeSet(ps,
+							persister.getVersionType().seed(session), index++,
+							session);
+				}
+				persister.getIdentifierType().nullSafeSet(ps, entry.getKey(),
+						index, session);
+				ps.addBatch();
+				if (++batched % getBatchSize() == 0) {
+					ps.executeBatch();
+				}
+			}
+			if (batched % getBatchSize() != 0) {
+				ps.executeBatch();
+			}
+		} finally {
+			ps.close();
+		}
+	}
 }
@@ -14,6 +14,14 @@ public class UserDAOImpl extends DefaultBaseDAO<User, String> implements UserDAO
 		return User.class;
 	}
 
+	/**
+	 * 登录名、邮箱查询使用自然键缓存
+	 */
+	@Override
+	protected String[] getNaturalKeyProperties() {
+		return new String[] { "loginName", "email" };
+	}
+
 	@Override
 	public User getByLoginName(String loginName) {
 		return getByProperty("loginName", loginName);
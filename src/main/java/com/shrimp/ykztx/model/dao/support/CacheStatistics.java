@@ -0,0 +1,94 @@
+package com.shrimp.ykztx.model.dao.support;
+
+import net.sf.ehcache.CacheManager;
+import net.sf.ehcache.Ehcache;
+
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.SecondLevelCacheStatistics;
+
+/**
+ * 二级缓存单个区域(region)的统计信息快照
+ */
+public class CacheStatistics {
+	private final String region;
+	private final long hits;
+	private final long misses;
+	private final long puts;
+	private final long evictions;
+	private final long size;
+
+	public CacheStatistics(String region, long hits, long misses, long puts,
+			long evictions, long size) {
+		super();
+		this.region = region;
+		this.hits = hits;
+		this.misses = misses;
+		this.puts = puts;
+		this.evictions = evictions;
+		this.size = size;
+	}
+
+	/**
+	 * 读取缓存区域的统计信息, 命中/未命中/写入数来自Hibernate统计(需开启generate_statistics),
+	 * 淘汰数来自ehcache
+	 * @param sessionFactory
+	 * @param region 区域名(实体类名)
+	 * @return 统计信息, 区域不存在时返回null
+	 */
+	public static CacheStatistics of(SessionFactory sessionFactory,
+			String region) {
+		SecondLevelCacheStatistics stats = sessionFactory.getStatistics()
+				.getSecondLevelCacheStatistics(region);
+		if (null == stats) {
+			return null;
+		}
+		long evictions = 0;
+		Ehcache cache = CacheManager.getInstance().getEhcache(region);
+		if (null != cache) {
+			evictions = cache.getStatistics().getEvictionCount();
+		}
+		return new CacheStatistics(region, stats.getHitCount(),
+				stats.getMissCount(), stats.getPutCount(), evictions,
+				stats.getElementCountInMemory());
+	}
+
+	public String getRegion() {
+		return region;
+	}
+
+	public long getHits() {
+		return hits;
+	}
+
+	public long getMisses() {
+		return misses;
+	}
+
+	public long getPuts() {
+		return puts;
+	}
+
+	public long getEvictions() {
+		return evictions;
+	}
+
+	public long getSize() {
+		return size;
+	}
+
+	/**
+	 * 命中率(0~1)
+	 * @return
+	 */
+	public double getHitRatio() {
+		long total = hits + misses;
+		return total == 0 ? 0 : (double) hits / total;
+	}
+
+	@Override
+	public String toString() {
+		return "CacheStatistics(" + region + ": hits=" + hits + ", misses="
+				+ misses + ", puts=" + puts + ", evictions=" + evictions
+				+ ", size=" + size + ")";
+	}
+}
@@ -0,0 +1,118 @@
+package com.shrimp.ykztx.model.dao.support;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 分页总数(count(*))缓存, 按实体类型分区, 以规范化后的查询条件为key
+ * <p>
+ * 条目在有效期(ttl)后失效; 实体发生写操作时通过{@link #invalidate(Class)}清空该实体(及其父类)的分区.
+ * 缓存只在当前JVM内有效, 其他节点或绕过DAO的写入只能依赖ttl过期
+ */
+public final class CountCache {
+
+	/** 每个实体分区最多缓存的查询条件数, 超出时清空分区 */
+	private static final int MAX_ENTRIES_PER_ENTITY = 1024;
+
+	private static final ConcurrentMap<String, Region> REGIONS = new ConcurrentHashMap<String, Region>();
+
+	private CountCache() {
+	}
+
+	/**
+	 * 获取实体的缓存分区
+	 * @param entityClass 实体类
+	 * @return 缓存分区
+	 */
+	public static Region region(Class<?> entityClass) {
+		Region region = REGIONS.get(entityClass.getName());
+		if (null == region) {
+			region = new Region();
+			Region existing = REGIONS.putIfAbsent(entityClass.getName(), region);
+			if (null != existing) {
+				region = existing;
+			}
+		}
+		return region;
+	}
+
+	/**
+	 * 实体写入后清空该实体及其父类的缓存分区
+	 * @param entityClass 被写入的实体类
+	 */
+	public static void invalidate(Class<?> entityClass) {
+		for (Class<?> c = entityClass; null != c && Object.class != c; c = c
+				.getSuperclass()) {
+			Region region = REGIONS.get(c.getName());
+			if (null != region) {
+				region.clear();
+			}
+		}
+	}
+
+	/**
+	 * 单个实体的缓存分区
+	 */
+	public static final class Region {
+		private final ConcurrentMap<String, Entry> entries = new ConcurrentHashMap<String, Entry>();
+		private final AtomicLong generation = new AtomicLong();
+
+		/**
+		 * 当前版本号, 执行count前获取, 写入缓存时校验, 避免count期间发生的写入被缓存覆盖
+		 * @return 版本号
+		 */
+		public long generation() {
+			return generation.get();
+		}
+
+		/**
+		 * 获取缓存的总数
+		 * @param key 规范化后的查询条件
+		 * @param ttlMillis 有效期(毫秒)
+		 * @return 总数, 不存在或已过期时返回null
+		 */
+		public Long get(String key, long ttlMillis) {
+			Entry entry = entries.get(key);
+			if (null == entry) {
+				return null;
+			}
+			if (System.currentTimeMillis() - entry.createdAt > ttlMillis) {
+				entries.remove(key, entry);
+				return null;
+			}
+			return entry.count;
+		}
+
+		/**
+		 * 缓存总数
+		 * @param key 规范化后的查询条件
+		 * @param count 总数
+		 * @param generation 执行count前获取的版本号
+		 */
+		public void put(String key, long count, long generation) {
+			if (entries.size() >= MAX_ENTRIES_PER_ENTITY) {
+				entries.clear();
+			}
+			entries.put(key, new Entry(count));
+			if (this.generation.get() != generation) {
+				entries.remove(key);
+			}
+		}
+
+		void clear() {
+			generation.incrementAndGet();
+			entries.clear();
+		}
+	}
+
+	private static final class Entry {
+		final long count;
+		final long createdAt;
+
+		Entry(long count) {
+			this.count = count;
+			this.createdAt = System.currentTimeMillis();
+		}
+	}
+}
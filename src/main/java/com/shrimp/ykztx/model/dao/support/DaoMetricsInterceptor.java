@@ -0,0 +1,117 @@
+package com.shrimp.ykztx.model.dao.support;
+
+import java.lang.reflect.Method;
+import java.util.Collection;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.aopalliance.intercept.MethodInterceptor;
+import org.aopalliance.intercept.MethodInvocation;
+import org.springframework.aop.support.AopUtils;
+import org.springframework.util.Assert;
+
+import com.codahale.metrics.Counter;
+import com.codahale.metrics.Histogram;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Timer;
+import com.shrimp.ykztx.model.dao.BatchReport;
+import com.shrimp.ykztx.web.model.KeysetPage;
+import com.shrimp.ykztx.web.model.Page;
+
+/**
+ * DAO方法统计拦截器, 按 dao.&lt;DAO类名&gt;.&lt;方法名&gt; 记录调用次数和耗时(.time)、返回行数(.rows)和异常数(.errors)
+ * <p>
+ * 通过applicationContext中的BeanNameAutoProxyCreator作用于名称以DAO结尾的bean; 指标按(目标类, 方法)只查找一次并缓存,
+ * JDK代理下各DAO调用的是同一个BaseDAO接口方法, 不能只按方法缓存
+ */
+public class DaoMetricsInterceptor implements MethodInterceptor {
+
+	public static final String PREFIX = "dao";
+
+	private final MetricRegistry registry;
+	private final ConcurrentMap<Class<?>, ConcurrentMap<Method, MethodMetrics>> metrics = new ConcurrentHashMap<Class<?>, ConcurrentMap<Method, MethodMetrics>>();
+
+	public DaoMetricsInterceptor(MetricRegistry registry) {
+		Assert.notNull(registry);
+		this.registry = registry;
+	}
+
+	@Override
+	public Object invoke(MethodInvocation invocation) throws Throwable {
+		MethodMetrics m = metrics(invocation);
+		Timer.Context context = m.time.time();
+		try {
+			Object result = invocation.proceed();
+			long rows = rows(result);
+			if (rows >= 0) {
+				m.rows.update(rows);
+			}
+			return result;
+		} catch (Throwable e) {
+			m.errors.inc();
+			throw e;
+		} finally {
+			context.stop();
+		}
+	}
+
+	private MethodMetrics metrics(MethodInvocation invocation) {
+		Method method = invocation.getMethod();
+		Class<?> targetClass = null == invocation.getThis() ? method
+				.getDeclaringClass() : AopUtils.getTargetClass(invocation
+				.getThis());
+		ConcurrentMap<Method, MethodMetrics> classMetrics = metrics
+				.get(targetClass);
+		if (null == classMetrics) {
+			classMetrics = new ConcurrentHashMap<Method, MethodMetrics>();
+			ConcurrentMap<Method, MethodMetrics> existing = metrics
+					.putIfAbsent(targetClass, classMetrics);
+			if (null != existing) {
+				classMetrics = existing;
+			}
+		}
+		MethodMetrics m = classMetrics.get(method);
+		if (null == m) {
+			m = new MethodMetrics(MetricRegistry.name(PREFIX,
+					targetClass.getSimpleName(), method.getName()));
+			MethodMetrics existing = classMetrics.putIfAbsent(method, m);
+			if (null != existing) {
+				m = existing;
+			}
+		}
+		return m;
+	}
+
+	/**
+	 * 返回值对应的行数, 无法判断时返回-1
+	 */
+	private static long rows(Object result) {
+		if (result instanceof Collection) {
+			return ((Collection<?>) result).size();
+		} else if (result instanceof Map) {
+			return ((Map<?, ?>) result).size();
+		} else if (result instanceof Page) {
+			Collection<?> list = ((Page<?>) result).getList();
+			return null == list ? 0 : list.size();
+		} else if (result instanceof KeysetPage) {
+			Collection<?> list = ((KeysetPage<?>) result).getList();
+			return null == list ? 0 : list.size();
+		} else if (result instanceof BatchReport) {
+			return ((BatchReport) result).getRows();
+		}
+		return -1;
+	}
+
+	private final class MethodMetrics {
+		final Timer time;
+		final Histogram rows;
+		final Counter errors;
+
+		MethodMetrics(String name) {
+			this.time = registry.timer(name + ".time");
+			this.rows = registry.histogram(name + ".rows");
+			this.errors = registry.counter(name + ".errors");
+		}
+	}
+}
@@ -0,0 +1,81 @@
+package com.shrimp.ykztx.model.dao.support;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 实体修改版本, 按实体类型记录, 用于生成列表接口的ETag/Last-Modified
+ * <p>
+ * 写入后通过{@link #bump(Class)}递增该实体(及其父类)的版本: 通过Session的写入由{@link EntityWriteListener}递增,
+ * HQL批量写入和StatelessSession写入由DAO递增. 版本只在当前JVM内有效,
+ * 重启后从新的起点({@link #EPOCH})开始; 绕过Hibernate的写入或其他节点的写入不会改变版本
+ */
+public final class EntityVersions {
+
+	/** 版本起点, 区分不同JVM实例生成的版本 */
+	public static final long EPOCH = System.currentTimeMillis();
+
+	private static final ConcurrentMap<String, Version> VERSIONS = new ConcurrentHashMap<String, Version>();
+
+	private EntityVersions() {
+	}
+
+	/**
+	 * 获取实体的当前版本
+	 * @param entityClass 实体类
+	 * @return 版本
+	 */
+	public static Version get(Class<?> entityClass) {
+		Version version = VERSIONS.get(entityClass.getName());
+		if (null == version) {
+			version = new Version();
+			Version existing = VERSIONS.putIfAbsent(entityClass.getName(),
+					version);
+			if (null != existing) {
+				version = existing;
+			}
+		}
+		return version;
+	}
+
+	/**
+	 * 实体写入后递增该实体及其父类的版本
+	 * @param entityClass 被写入的实体类
+	 */
+	public static void bump(Class<?> entityClass) {
+		for (Class<?> c = entityClass; null != c && Object.class != c; c = c
+				.getSuperclass()) {
+			get(c).bump();
+		}
+	}
+
+	/**
+	 * 单个实体的版本
+	 */
+	public static final class Version {
+		private final AtomicLong counter = new AtomicLong();
+		private volatile long modifiedAt = EPOCH;
+
+		/**
+		 * 修改计数, 每次写入加1
+		 * @return
+		 */
+		public long getCounter() {
+			return counter.get();
+		}
+
+		/**
+		 * 最后修改时间(毫秒), 未修改时为{@link EntityVersions#EPOCH}
+		 * @return
+		 */
+		public long getModifiedAt() {
+			return modifiedAt;
+		}
+
+		void bump() {
+			modifiedAt = System.currentTimeMillis();
+			counter.incrementAndGet();
+		}
+	}
+}
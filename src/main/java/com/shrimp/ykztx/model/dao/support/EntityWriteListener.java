@@ -0,0 +1,235 @@
+package com.shrimp.ykztx.model.dao.support;
+
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.WeakHashMap;
+
+import org.hibernate.SessionFactory;
+import org.hibernate.action.spi.AfterTransactionCompletionProcess;
+import org.hibernate.collection.spi.PersistentCollection;
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+import org.hibernate.engine.spi.SessionImplementor;
+import org.hibernate.event.service.spi.EventListenerRegistry;
+import org.hibernate.event.spi.AbstractCollectionEvent;
+import org.hibernate.event.spi.EventSource;
+import org.hibernate.event.spi.EventType;
+import org.hibernate.event.spi.PostCollectionRecreateEvent;
+import org.hibernate.event.spi.PostCollectionRecreateEventListener;
+import org.hibernate.event.spi.PostCollectionRemoveEvent;
+import org.hibernate.event.spi.PostCollectionRemoveEventListener;
+import org.hibernate.event.spi.PostCollectionUpdateEvent;
+import org.hibernate.event.spi.PostCollectionUpdateEventListener;
+import org.hibernate.event.spi.PostDeleteEvent;
+import org.hibernate.event.spi.PostDeleteEventListener;
+import org.hibernate.event.spi.PostInsertEvent;
+import org.hibernate.event.spi.PostInsertEventListener;
+import org.hibernate.event.spi.PostUpdateEvent;
+import org.hibernate.event.spi.PostUpdateEventListener;
+import org.hibernate.persister.collection.CollectionPersister;
+import org.hibernate.persister.entity.EntityPersister;
+import org.hibernate.type.EntityType;
+import org.hibernate.type.Type;
+import org.springframework.util.ObjectUtils;
+
+/**
+ * Session写入事件监听器, 清理被写入实体相关的缓存(分页总数、查询结果), 递增实体的修改版本({@link EntityVersions}),
+ * 并开始当前线程的读己之写窗口; 插入实体或修改自然键属性时清除自然键缓存的否定条目({@link NaturalKeyCache})
+ * <p>
+ * 覆盖通过Session的所有写入: DAO方法、脏检查更新、级联的insert/delete和集合(含多对多中间表)的修改,
+ * 集合修改同时清理所属实体和元素实体. flush时清理一次, 事务结束后再清理一次(避免提交前其他线程读到旧数据并重新缓存).
+ * HQL批量写入和StatelessSession不触发事件, 由DAO在写入后清理
+ */
+public final class EntityWriteListener implements PostInsertEventListener,
+		PostUpdateEventListener, PostDeleteEventListener,
+		PostCollectionRecreateEventListener, PostCollectionUpdateEventListener,
+		PostCollectionRemoveEventListener {
+
+	private static final long serialVersionUID = 1L;
+
+	private static final EntityWriteListener INSTANCE = new EntityWriteListener();
+
+	/** 已注册监听器的SessionFactory */
+	private static final Set<SessionFactory> REGISTERED = Collections
+			.newSetFromMap(new WeakHashMap<SessionFactory, Boolean>());
+
+	/** 各Session本次事务中被写入的实体类, 事务结束时统一清理 */
+	private static final Map<SessionImplementor, Pending> PENDING = Collections
+			.synchronizedMap(new WeakHashMap<SessionImplementor, Pending>());
+
+	private EntityWriteListener() {
+	}
+
+	/**
+	 * 向SessionFactory注册监听器, 重复注册时忽略
+	 * @param sessionFactory
+	 */
+	public static void register(SessionFactory sessionFactory) {
+		synchronized (REGISTERED) {
+			if (!REGISTERED.add(sessionFactory)) {
+				return;
+			}
+		}
+		EventListenerRegistry registry = ((SessionFactoryImplementor) sessionFactory)
+				.getServiceRegistry().getService(EventListenerRegistry.class);
+		registry.appendListeners(EventType.POST_INSERT, INSTANCE);
+		registry.appendListeners(EventType.POST_UPDATE, INSTANCE);
+		registry.appendListeners(EventType.POST_DELETE, INSTANCE);
+		registry.appendListeners(EventType.POST_COLLECTION_RECREATE, INSTANCE);
+		registry.appendListeners(EventType.POST_COLLECTION_UPDATE, INSTANCE);
+		registry.appendListeners(EventType.POST_COLLECTION_REMOVE, INSTANCE);
+	}
+
+	/**
+	 * 清理实体相关的缓存并递增实体的修改版本
+	 * @param entityClass 被写入的实体类
+	 */
+	static void invalidate(Class<?> entityClass) {
+		CountCache.invalidate(entityClass);
+		ResultCache.invalidate(entityClass);
+		EntityVersions.bump(entityClass);
+	}
+
+	@Override
+	public void onPostInsert(PostInsertEvent event) {
+		written(event.getSession(), event.getPersister(), true);
+	}
+
+	@Override
+	public void onPostUpdate(PostUpdateEvent event) {
+		written(event.getSession(), event.getPersister(), naturalKeyChanged(
+				event.getPersister(), event.getState(), event.getOldState()));
+	}
+
+	@Override
+	public void onPostDelete(PostDeleteEvent event) {
+		written(event.getSession(), event.getPersister(), false);
+	}
+
+	@Override
+	public void onPostRecreateCollection(PostCollectionRecreateEvent event) {
+		collectionWritten(event);
+	}
+
+	@Override
+	public void onPostUpdateCollection(PostCollectionUpdateEvent event) {
+		collectionWritten(event);
+	}
+
+	@Override
+	public void onPostRemoveCollection(PostCollectionRemoveEvent event) {
+		collectionWritten(event);
+	}
+
+	@Override
+	public boolean requiresPostCommitHanding(EntityPersister persister) {
+		return false;
+	}
+
+	private static void collectionWritten(AbstractCollectionEvent event) {
+		SessionFactoryImplementor factory = event.getSession().getFactory();
+		if (null != event.getAffectedOwnerEntityName()) {
+			written(event.getSession(), factory.getEntityPersister(event
+					.getAffectedOwnerEntityName()), false);
+		}
+		PersistentCollection collection = event.getCollection();
+		if (null == collection || null == collection.getRole()) {
+			return;
+		}
+		CollectionPersister persister = factory.getCollectionPersister(collection
+				.getRole());
+		Type elementType = persister.getElementType();
+		if (elementType.isEntityType()) {
+			written(event.getSession(), factory
+					.getEntityPersister(((EntityType) elementType)
+							.getAssociatedEntityName(factory)), false);
+		}
+	}
+
+	/**
+	 * 更新是否修改了自然键属性, 没有旧状态(如update游离对象)时视为已修改
+	 */
+	private static boolean naturalKeyChanged(EntityPersister persister,
+			Object[] state, Object[] oldState) {
+		Class<?> entityClass = persister.getMappedClass();
+		if (null == entityClass) {
+			return false;
+		}
+		Set<String> properties = NaturalKeyCache.properties(entityClass);
+		if (properties.isEmpty()) {
+			return false;
+		}
+		if (null == oldState) {
+			return true;
+		}
+		for (String property : properties) {
+			Integer i = persister.getEntityMetamodel().getPropertyIndexOrNull(
+					property);
+			if (null == i
+					|| !ObjectUtils.nullSafeEquals(oldState[i], state[i])) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * @param naturalKey 是否需要清除自然键缓存的否定条目
+	 */
+	private static void written(EventSource session, EntityPersister persister,
+			boolean naturalKey) {
+		Class<?> entityClass = persister.getMappedClass();
+		if (null == entityClass) {
+			return;
+		}
+		invalidate(entityClass);
+		if (naturalKey) {
+			NaturalKeyCache.invalidate(entityClass);
+		}
+		ReplicaRoutingDataSource.markWrite();
+		Pending pending;
+		boolean first = false;
+		synchronized (PENDING) {
+			pending = PENDING.get(session);
+			if (null == pending) {
+				pending = new Pending();
+				PENDING.put(session, pending);
+				first = true;
+			}
+		}
+		pending.written.add(entityClass);
+		if (naturalKey) {
+			pending.naturalKeys.add(entityClass);
+		}
+		if (first) {
+			session.getActionQueue().registerProcess(
+					new AfterTransactionCompletionProcess() {
+						@Override
+						public void doAfterTransactionCompletion(
+								boolean success, SessionImplementor session) {
+							Pending pending = PENDING.remove(session);
+							if (null == pending) {
+								return;
+							}
+							for (Class<?> c : pending.written) {
+								invalidate(c);
+							}
+							for (Class<?> c : pending.naturalKeys) {
+								NaturalKeyCache.invalidate(c);
+							}
+							ReplicaRoutingDataSource.markWrite();
+						}
+					});
+		}
+	}
+
+	/**
+	 * 一个Session本次事务中被写入的实体类
+	 */
+	private static final class Pending {
+		final Set<Class<?>> written = new LinkedHashSet<Class<?>>();
+		/** 插入或修改了自然键属性的实体类 */
+		final Set<Class<?>> naturalKeys = new LinkedHashSet<Class<?>>();
+	}
+}
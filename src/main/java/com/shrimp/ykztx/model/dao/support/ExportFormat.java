@@ -0,0 +1,143 @@
+package com.shrimp.ykztx.model.dao.support;
+
+import java.util.Calendar;
+import java.util.Date;
+
+import javax.xml.bind.DatatypeConverter;
+
+/**
+ * 导出文件格式, 日期按ISO-8601输出, byte[]按base64输出
+ */
+public enum ExportFormat {
+
+	/**
+	 * CSV(RFC 4180), 首行为列名
+	 */
+	CSV {
+		@Override
+		public String header(String[] columns) {
+			StringBuilder sb = new StringBuilder();
+			for (int i = 0; i < columns.length; i++) {
+				if (i > 0) {
+					sb.append(',');
+				}
+				quote(sb, columns[i]);
+			}
+			return sb.append("\r\n").toString();
+		}
+
+		@Override
+		public void row(StringBuilder sb, String[] columns, Object[] values) {
+			for (int i = 0; i < values.length; i++) {
+				if (i > 0) {
+					sb.append(',');
+				}
+				if (null != values[i]) {
+					quote(sb, text(values[i]));
+				}
+			}
+			sb.append("\r\n");
+		}
+
+		private void quote(StringBuilder sb, String s) {
+			boolean quoted = false;
+			for (int i = 0; i < s.length() && !quoted; i++) {
+				char c = s.charAt(i);
+				quoted = c == ',' || c == '"' || c == '\r' || c == '\n';
+			}
+			if (!quoted) {
+				sb.append(s);
+				return;
+			}
+			sb.append('"');
+			for (int i = 0; i < s.length(); i++) {
+				char c = s.charAt(i);
+				if (c == '"') {
+					sb.append('"');
+				}
+				sb.append(c);
+			}
+			sb.append('"');
+		}
+	},
+
+	/**
+	 * 每行一个JSON对象(newline delimited JSON), 无文件头
+	 */
+	NDJSON {
+		@Override
+		public String header(String[] columns) {
+			return "";
+		}
+
+		@Override
+		public void row(StringBuilder sb, String[] columns, Object[] values) {
+			sb.append('{');
+			for (int i = 0; i < values.length; i++) {
+				if (i > 0) {
+					sb.append(',');
+				}
+				string(sb, columns[i]);
+				sb.append(':');
+				Object value = values[i];
+				if (null == value) {
+					sb.append("null");
+				} else if (value instanceof Number || value instanceof Boolean) {
+					sb.append(value);
+				} else {
+					string(sb, text(value));
+				}
+			}
+			sb.append("}\n");
+		}
+
+		private void string(StringBuilder sb, String s) {
+			sb.append('"');
+			for (int i = 0; i < s.length(); i++) {
+				char c = s.charAt(i);
+				if (c == '"' || c == '\\') {
+					sb.append('\\').append(c);
+				} else if (c == '\n') {
+					sb.append("\\n");
+				} else if (c == '\r') {
+					sb.append("\\r");
+				} else if (c == '\t') {
+					sb.append("\\t");
+				} else if (c < 0x20) {
+					sb.append(String.format("\\u%04x", (int) c));
+				} else {
+					sb.append(c);
+				}
+			}
+			sb.append('"');
+		}
+	};
+
+	/**
+	 * 文件头
+	 * @param columns 列名
+	 * @return 文件头, 没有时返回空字符串
+	 */
+	public abstract String header(String[] columns);
+
+	/**
+	 * 追加一行
+	 * @param sb 输出
+	 * @param columns 列名
+	 * @param values 列值, 与columns顺序一致
+	 */
+	public abstract void row(StringBuilder sb, String[] columns, Object[] values);
+
+	static String text(Object value) {
+		if (value instanceof Date) {
+			Calendar calendar = Calendar.getInstance();
+			calendar.setTime((Date) value);
+			return DatatypeConverter.printDateTime(calendar);
+		} else if (value instanceof Calendar) {
+			return DatatypeConverter.printDateTime((Calendar) value);
+		} else if (value instanceof byte[]) {
+			return DatatypeConverter.printBase64Binary((byte[]) value);
+		}
+		return value.toString();
+	}
+}
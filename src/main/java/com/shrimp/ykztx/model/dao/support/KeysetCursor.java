@@ -0,0 +1,168 @@
+package com.shrimp.ykztx.model.dao.support;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.sql.Timestamp;
+import java.util.Date;
+
+import javax.xml.bind.DatatypeConverter;
+
+/**
+ * 键集分页游标的编解码, 将上一页最后一条记录的排序字段值编码为URL安全的字符串
+ * <p>
+ * 只支持简单类型(字符串,数字,日期,布尔), 不使用java序列化, 避免反序列化客户端传入的数据
+ */
+public final class KeysetCursor {
+
+	private static final int VERSION = 1;
+
+	private static final byte STRING = 's';
+	private static final byte LONG = 'l';
+	private static final byte INTEGER = 'i';
+	private static final byte SHORT = 'h';
+	private static final byte BYTE = 'b';
+	private static final byte DOUBLE = 'd';
+	private static final byte FLOAT = 'f';
+	private static final byte BIG_DECIMAL = 'm';
+	private static final byte BIG_INTEGER = 'n';
+	private static final byte BOOLEAN = 'z';
+	private static final byte DATE = 't';
+	private static final byte TIMESTAMP = 'p';
+
+	private KeysetCursor() {
+	}
+
+	/**
+	 * 编码排序字段值
+	 * @param keys 排序字段值, 顺序与排序字段一致
+	 * @return 游标
+	 */
+	public static String encode(Object[] keys) {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		DataOutputStream out = new DataOutputStream(bytes);
+		try {
+			out.writeByte(VERSION);
+			out.writeShort(keys.length);
+			for (Object key : keys) {
+				writeKey(out, key);
+			}
+			out.flush();
+		} catch (IOException e) {
+			throw new IllegalStateException(e);
+		}
+		return DatatypeConverter.printBase64Binary(bytes.toByteArray())
+				.replace('+', '-').replace('/', '_').replace("=", "");
+	}
+
+	/**
+	 * 解码游标
+	 * @param cursor {@link #encode(Object[])}返回的游标
+	 * @return 排序字段值
+	 * @throws IllegalArgumentException 游标格式错误
+	 */
+	public static Object[] decode(String cursor) {
+		String base64 = cursor.replace('-', '+').replace('_', '/');
+		while (base64.length() % 4 != 0) {
+			base64 += "=";
+		}
+		try {
+			DataInputStream in = new DataInputStream(new ByteArrayInputStream(
+					DatatypeConverter.parseBase64Binary(base64)));
+			if (in.readByte() != VERSION) {
+				throw new IllegalArgumentException("unsupported cursor version");
+			}
+			Object[] keys = new Object[in.readUnsignedShort()];
+			for (int i = 0; i < keys.length; i++) {
+				keys[i] = readKey(in);
+			}
+			return keys;
+		} catch (IOException e) {
+			throw new IllegalArgumentException("invalid cursor: " + cursor, e);
+		}
+	}
+
+	private static void writeKey(DataOutputStream out, Object key)
+			throws IOException {
+		if (key instanceof String) {
+			out.writeByte(STRING);
+			out.writeUTF((String) key);
+		} else if (key instanceof Long) {
+			out.writeByte(LONG);
+			out.writeLong((Long) key);
+		} else if (key instanceof Integer) {
+			out.writeByte(INTEGER);
+			out.writeInt((Integer) key);
+		} else if (key instanceof Short) {
+			out.writeByte(SHORT);
+			out.writeShort((Short) key);
+		} else if (key instanceof Byte) {
+			out.writeByte(BYTE);
+			out.writeByte((Byte) key);
+		} else if (key instanceof Double) {
+			out.writeByte(DOUBLE);
+			out.writeDouble((Double) key);
+		} else if (key instanceof Float) {
+			out.writeByte(FLOAT);
+			out.writeFloat((Float) key);
+		} else if (key instanceof BigDecimal) {
+			out.writeByte(BIG_DECIMAL);
+			out.writeUTF(key.toString());
+		} else if (key instanceof BigInteger) {
+			out.writeByte(BIG_INTEGER);
+			out.writeUTF(key.toString());
+		} else if (key instanceof Boolean) {
+			out.writeByte(BOOLEAN);
+			out.writeBoolean((Boolean) key);
+		} else if (key instanceof Timestamp) {
+			out.writeByte(TIMESTAMP);
+			out.writeLong(((Timestamp) key).getTime());
+			out.writeInt(((Timestamp) key).getNanos());
+		} else if (key instanceof Date) {
+			out.writeByte(DATE);
+			out.writeLong(((Date) key).getTime());
+		} else {
+			throw new IllegalArgumentException("unsupported keyset value: "
+					+ (null == key ? "null" : key.getClass().getName()));
+		}
+	}
+
+	private static Object readKey(DataInputStream in) throws IOException {
+		byte type = in.readByte();
+		switch (type) {
+		case STRING:
+			return in.readUTF();
+		case LONG:
+			return in.readLong();
+		case INTEGER:
+			return in.readInt();
+		case SHORT:
+			return in.readShort();
+		case BYTE:
+			return in.readByte();
+		case DOUBLE:
+			return in.readDouble();
+		case FLOAT:
+			return in.readFloat();
+		case BIG_DECIMAL:
+			return new BigDecimal(in.readUTF());
+		case BIG_INTEGER:
+			return new BigInteger(in.readUTF());
+		case BOOLEAN:
+			return in.readBoolean();
+		case TIMESTAMP:
+			Timestamp ts = new Timestamp(in.readLong());
+			ts.setNanos(in.readInt());
+			return ts;
+		case DATE:
+			return new Date(in.readLong());
+		default:
+			throw new IllegalArgumentException("unknown keyset value type: "
+					+ type);
+		}
+	}
+}
@@ -0,0 +1,245 @@
+package com.shrimp.ykztx.model.dao.support;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.CallableStatement;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Arrays;
+
+import javax.sql.DataSource;
+
+import org.springframework.jdbc.datasource.DelegatingDataSource;
+import org.springframework.util.Assert;
+
+/**
+ * 统计SQL执行的DataSource包装, 将连接、语句和结果集包装为代理, 执行时按SQL指纹记录耗时、行数和错误,
+ * 慢查询附带绑定参数, 见{@link SqlMetrics}
+ * <p>
+ * 包装在连接池外层(Hibernate使用的dataSource), 每次执行的额外开销为一次代理调用和参数数组写入
+ */
+public class MetricsDataSource extends DelegatingDataSource {
+
+	private SqlMetrics sqlMetrics;
+
+	public MetricsDataSource() {
+	}
+
+	public MetricsDataSource(DataSource targetDataSource, SqlMetrics sqlMetrics) {
+		super(targetDataSource);
+		this.sqlMetrics = sqlMetrics;
+	}
+
+	public void setSqlMetrics(SqlMetrics sqlMetrics) {
+		this.sqlMetrics = sqlMetrics;
+	}
+
+	@Override
+	public void afterPropertiesSet() {
+		super.afterPropertiesSet();
+		Assert.notNull(sqlMetrics, "sqlMetrics is required");
+	}
+
+	@Override
+	public Connection getConnection() throws SQLException {
+		return wrap(super.getConnection());
+	}
+
+	@Override
+	public Connection getConnection(String username, String password)
+			throws SQLException {
+		return wrap(super.getConnection(username, password));
+	}
+
+	private Connection wrap(Connection connection) {
+		return (Connection) Proxy.newProxyInstance(
+				MetricsDataSource.class.getClassLoader(),
+				new Class<?>[] { Connection.class }, new ConnectionHandler(
+						connection));
+	}
+
+	private static Object invoke(Object target, Method method, Object[] args)
+			throws Throwable {
+		try {
+			return method.invoke(target, args);
+		} catch (InvocationTargetException e) {
+			throw e.getTargetException();
+		}
+	}
+
+	private static boolean isIdentityMethod(String name) {
+		return "equals".equals(name) || "hashCode".equals(name);
+	}
+
+	/**
+	 * 代理按自身标识比较, Hibernate以语句/结果集为key登记资源
+	 */
+	private static Object identity(Object proxy, String name, Object[] args) {
+		if ("equals".equals(name)) {
+			return proxy == args[0];
+		}
+		return System.identityHashCode(proxy);
+	}
+
+	private class ConnectionHandler implements InvocationHandler {
+		private final Connection target;
+
+		ConnectionHandler(Connection target) {
+			this.target = target;
+		}
+
+		@Override
+		public Object invoke(Object proxy, Method method, Object[] args)
+				throws Throwable {
+			String name = method.getName();
+			if (isIdentityMethod(name)) {
+				return identity(proxy, name, args);
+			}
+			if ("unwrap".equals(name) && Connection.class == args[0]) {
+				return proxy;
+			}
+			Object result = MetricsDataSource.invoke(target, method, args);
+			Class<?> type;
+			if (result instanceof CallableStatement) {
+				type = CallableStatement.class;
+			} else if (result instanceof PreparedStatement) {
+				type = PreparedStatement.class;
+			} else if (result instanceof Statement) {
+				type = Statement.class;
+			} else {
+				return result;
+			}
+			String sql = ("prepareStatement".equals(name) || "prepareCall"
+					.equals(name)) ? (String) args[0] : null;
+			return Proxy.newProxyInstance(
+					MetricsDataSource.class.getClassLoader(),
+					new Class<?>[] { type }, new StatementHandler(
+							(Statement) result, sql, proxy));
+		}
+	}
+
+	private class StatementHandler implements InvocationHandler {
+		private final Statement target;
+		private final String preparedSql;
+		private final Object connection;
+		private Object[] params;
+
+		StatementHandler(Statement target, String preparedSql,
+				Object connection) {
+			this.target = target;
+			this.preparedSql = preparedSql;
+			this.connection = connection;
+		}
+
+		@Override
+		public Object invoke(Object proxy, Method method, Object[] args)
+				throws Throwable {
+			String name = method.getName();
+			if (isIdentityMethod(name)) {
+				return identity(proxy, name, args);
+			}
+			if (name.startsWith("set") && null != args && args.length >= 2
+					&& args[0] instanceof Integer && null != preparedSql) {
+				bind(((Integer) args[0]).intValue(), "setNull".equals(name) ? null
+						: args[1]);
+				return MetricsDataSource.invoke(target, method, args);
+			}
+			if ("getConnection".equals(name)) {
+				return connection;
+			}
+			if ("clearParameters".equals(name)) {
+				params = null;
+			}
+			if (!name.startsWith("execute")) {
+				return MetricsDataSource.invoke(target, method, args);
+			}
+			String sql = null == preparedSql ? (null != args && args.length > 0 ? (String) args[0]
+					: null)
+					: preparedSql;
+			if (null == sql) {
+				return MetricsDataSource.invoke(target, method, args);
+			}
+			long start = System.nanoTime();
+			Object result;
+			try {
+				result = MetricsDataSource.invoke(target, method, args);
+			} catch (Throwable e) {
+				sqlMetrics.failed(sql, params, e);
+				throw e;
+			}
+			sqlMetrics.executed(sql, System.nanoTime() - start, params);
+			if (result instanceof ResultSet) {
+				return Proxy.newProxyInstance(
+						MetricsDataSource.class.getClassLoader(),
+						new Class<?>[] { ResultSet.class },
+						new ResultSetHandler((ResultSet) result, sql, proxy));
+			} else if (result instanceof Integer) {
+				sqlMetrics.rows(sql, ((Integer) result).intValue());
+			} else if (result instanceof int[]) {
+				long rows = 0;
+				for (int count : (int[]) result) {
+					rows += Math.max(count, 0);
+				}
+				sqlMetrics.rows(sql, rows);
+			}
+			return result;
+		}
+
+		private void bind(int index, Object value) {
+			if (null == params || params.length < index) {
+				params = null == params ? new Object[Math.max(index, 8)]
+						: Arrays.copyOf(params, Math.max(index, params.length * 2));
+			}
+			params[index - 1] = value;
+		}
+	}
+
+	private class ResultSetHandler implements InvocationHandler {
+		private final ResultSet target;
+		private final String sql;
+		private final Object statement;
+		private long rows;
+		private boolean recorded;
+
+		ResultSetHandler(ResultSet target, String sql, Object statement) {
+			this.target = target;
+			this.sql = sql;
+			this.statement = statement;
+		}
+
+		@Override
+		public Object invoke(Object proxy, Method method, Object[] args)
+				throws Throwable {
+			String name = method.getName();
+			if (isIdentityMethod(name)) {
+				return identity(proxy, name, args);
+			}
+			if ("getStatement".equals(name)) {
+				return statement;
+			}
+			Object result = MetricsDataSource.invoke(target, method, args);
+			if ("next".equals(name)) {
+				if (Boolean.TRUE.equals(result)) {
+					rows++;
+				} else {
+					record();
+				}
+			} else if ("close".equals(name)) {
+				record();
+			}
+			return result;
+		}
+
+		private void record() {
+			if (!recorded) {
+				recorded = true;
+				sqlMetrics.rows(sql, rows);
+			}
+		}
+	}
+}
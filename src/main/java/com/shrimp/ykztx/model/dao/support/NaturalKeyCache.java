@@ -0,0 +1,221 @@
+package com.shrimp.ykztx.model.dao.support;
+
+import java.io.Serializable;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 自然键(唯一属性值)到ID的缓存, 按实体类型分区, 以"属性名=属性值"为key
+ * <p>
+ * 查询不到的值也会缓存(否定条目). 每个分区按LRU淘汰, 条目在有效期(ttl)后失效;
+ * 插入实体或修改{@link #register(Class, String...)}登记的自然键属性时(由{@link EntityWriteListener}检测),
+ * 以及HQL批量写入后, 通过{@link #invalidate(Class)}清除该实体(及其父类)分区的否定条目,
+ * 肯定条目由调用方在命中时按ID加载实体并校验属性值, 不一致时{@link Region#remove(String)}.
+ * 缓存只在当前JVM内有效, 其他节点或绕过DAO的写入只能依赖ttl过期
+ */
+public final class NaturalKeyCache {
+
+	private static final ConcurrentMap<String, Region> REGIONS = new ConcurrentHashMap<String, Region>();
+
+	/** 各实体登记的自然键属性 */
+	private static final ConcurrentMap<String, String[]> PROPERTIES = new ConcurrentHashMap<String, String[]>();
+
+	private NaturalKeyCache() {
+	}
+
+	/**
+	 * 获取实体的缓存分区, 不存在时按maxEntries创建
+	 * @param entityClass 实体类
+	 * @param maxEntries 分区最多缓存的条目数
+	 * @return 缓存分区
+	 */
+	public static Region region(Class<?> entityClass, int maxEntries) {
+		Region region = REGIONS.get(entityClass.getName());
+		if (null == region) {
+			region = new Region(maxEntries);
+			Region existing = REGIONS.putIfAbsent(entityClass.getName(), region);
+			if (null != existing) {
+				region = existing;
+			}
+		}
+		return region;
+	}
+
+	/**
+	 * 登记实体的自然键属性, 修改这些属性时清除否定条目
+	 * @param entityClass 实体类
+	 * @param properties 自然键属性名
+	 */
+	public static void register(Class<?> entityClass, String... properties) {
+		PROPERTIES.put(entityClass.getName(), properties.clone());
+	}
+
+	/**
+	 * 获取实体及其父类登记的自然键属性
+	 * @param entityClass 实体类
+	 * @return 属性名, 未登记时为空集合
+	 */
+	public static Set<String> properties(Class<?> entityClass) {
+		Set<String> properties = new LinkedHashSet<String>();
+		for (Class<?> c = entityClass; null != c && Object.class != c; c = c
+				.getSuperclass()) {
+			String[] registered = PROPERTIES.get(c.getName());
+			if (null != registered) {
+				properties.addAll(Arrays.asList(registered));
+			}
+		}
+		return properties;
+	}
+
+	/**
+	 * 实体写入后清除该实体及其父类分区的否定条目
+	 * @param entityClass 被写入的实体类
+	 */
+	public static void invalidate(Class<?> entityClass) {
+		for (Class<?> c = entityClass; null != c && Object.class != c; c = c
+				.getSuperclass()) {
+			Region region = REGIONS.get(c.getName());
+			if (null != region) {
+				region.clearMisses();
+			}
+		}
+	}
+
+	/**
+	 * 单个实体的缓存分区
+	 */
+	public static final class Region {
+		private final Map<String, Entry> entries;
+		private final AtomicLong generation = new AtomicLong();
+		private final AtomicLong hits = new AtomicLong();
+		private final AtomicLong misses = new AtomicLong();
+
+		Region(final int maxEntries) {
+			this.entries = new LinkedHashMap<String, Entry>(16, 0.75f, true) {
+				private static final long serialVersionUID = 1L;
+
+				@Override
+				protected boolean removeEldestEntry(
+						Map.Entry<String, NaturalKeyCache.Entry> eldest) {
+					return size() > maxEntries;
+				}
+			};
+		}
+
+		/**
+		 * 当前版本号, 查询前获取, 写入缓存时校验, 避免查询期间发生的写入被否定条目覆盖
+		 * @return 版本号
+		 */
+		public long generation() {
+			return generation.get();
+		}
+
+		/**
+		 * 获取缓存条目
+		 * @param key 属性名=属性值
+		 * @param ttlMillis 肯定条目有效期(毫秒)
+		 * @param negativeTtlMillis 否定条目有效期(毫秒)
+		 * @return 缓存条目, 不存在或已过期时返回null
+		 */
+		public Entry get(String key, long ttlMillis, long negativeTtlMillis) {
+			Entry entry;
+			synchronized (entries) {
+				entry = entries.get(key);
+				if (null != entry && (entry.isMissing() ? expired(entry,
+						negativeTtlMillis)
+						|| entry.generation != generation.get() : expired(
+						entry, ttlMillis))) {
+					entries.remove(key);
+					entry = null;
+				}
+			}
+			(null == entry ? misses : hits).incrementAndGet();
+			return entry;
+		}
+
+		/**
+		 * 缓存查询结果
+		 * @param key 属性名=属性值
+		 * @param id 实体ID, 查询不到时为null(否定条目)
+		 * @param generation 查询前获取的版本号
+		 */
+		public void put(String key, Serializable id, long generation) {
+			synchronized (entries) {
+				if (null == id && this.generation.get() != generation) {
+					return;
+				}
+				entries.put(key, new Entry(id, generation));
+			}
+		}
+
+		/**
+		 * 移除条目, 肯定条目校验失败时调用
+		 * @param key 属性名=属性值
+		 */
+		public void remove(String key) {
+			synchronized (entries) {
+				entries.remove(key);
+			}
+		}
+
+		/**
+		 * 否定条目在读取时按版本号判断是否失效, 无需遍历
+		 */
+		void clearMisses() {
+			generation.incrementAndGet();
+		}
+
+		private static boolean expired(Entry entry, long ttlMillis) {
+			return System.currentTimeMillis() - entry.createdAt > ttlMillis;
+		}
+
+		public int size() {
+			synchronized (entries) {
+				return entries.size();
+			}
+		}
+
+		public long getHits() {
+			return hits.get();
+		}
+
+		public long getMisses() {
+			return misses.get();
+		}
+	}
+
+	/**
+	 * 缓存条目
+	 */
+	public static final class Entry {
+		private final Serializable id;
+		private final long createdAt;
+		private final long generation;
+
+		Entry(Serializable id, long generation) {
+			this.id = id;
+			this.createdAt = System.currentTimeMillis();
+			this.generation = generation;
+		}
+
+		/**
+		 * @return 实体ID, 否定条目为null
+		 */
+		public Serializable getId() {
+			return id;
+		}
+
+		/**
+		 * @return 是否为否定条目(属性值不存在)
+		 */
+		public boolean isMissing() {
+			return null == id;
+		}
+	}
+}
@@ -0,0 +1,369 @@
+package com.shrimp.ykztx.model.dao.support;
+
+import java.text.Normalizer;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.regex.Pattern;
+
+/**
+ * 单个实体属性的内存n-gram(三元组)倒排索引, 用于将 like '%x%' 条件转换为候选ID
+ * <p>
+ * 属性值按文档号(从0递增)编入索引, 每个三元组对应一个按文档号排序的int数组(倒排表).
+ * 查询时求各三元组倒排表的交集, 得到的候选ID是实际匹配结果的超集, 仍需数据库按原条件过滤.
+ * 值在比较前转为小写并去除重音符号, 对不区分大小写/重音的数据库排序规则同样得到超集.
+ * <p>
+ * 修改在flush时写入(新值立即可查), 旧值在事务提交后失效, 回滚时撤销新值, 见{@link Change}
+ */
+public class NgramIndex {
+
+	public static final int N = 3;
+
+	private static final Pattern MARKS = Pattern.compile("\\p{M}+");
+
+	private final ReadWriteLock lock = new ReentrantReadWriteLock();
+	private Map<Long, IntList> postings = new HashMap<Long, IntList>();
+	/** 文档号 -> ID */
+	private Object[] ids = new Object[1024];
+	private int docs;
+	private final BitSet deleted = new BitSet();
+	/** ID -> 当前文档号 */
+	private Map<Object, Integer> current = new HashMap<Object, Integer>();
+	/** 构建期间被修改过的ID, 构建时跳过 */
+	private final Set<Object> touched = new HashSet<Object>();
+	private int pending;
+	private volatile boolean ready;
+
+	/**
+	 * 是否已构建完成, 未完成时{@link #candidates(String, int)}返回null
+	 * @return
+	 */
+	public boolean isReady() {
+		return ready;
+	}
+
+	/**
+	 * 构建时添加一条记录, 构建期间已被修改的ID跳过
+	 * @param id 实体ID
+	 * @param value 属性值
+	 */
+	public void load(Object id, String value) {
+		lock.writeLock().lock();
+		try {
+			if (!touched.contains(id) && !current.containsKey(id)) {
+				int doc = add(id, value);
+				if (doc >= 0) {
+					current.put(id, doc);
+				}
+			}
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	/**
+	 * 构建完成
+	 */
+	public void markReady() {
+		lock.writeLock().lock();
+		try {
+			touched.clear();
+			ready = true;
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	/**
+	 * 写入新值(插入或更新), 新值立即可查, 旧值在{@link Change#complete(boolean)}提交后失效
+	 * @param id 实体ID
+	 * @param value 新的属性值
+	 * @return 待事务结束时完成的修改
+	 */
+	public Change put(Object id, String value) {
+		lock.writeLock().lock();
+		try {
+			touch(id);
+			Integer old = current.get(id);
+			int doc = add(id, value);
+			if (doc >= 0) {
+				current.put(id, doc);
+			}
+			return new Change(id, null == old ? -1 : old, doc);
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	/**
+	 * 删除记录, 提交后失效
+	 * @param id 实体ID
+	 * @return 待事务结束时完成的修改
+	 */
+	public Change remove(Object id) {
+		lock.writeLock().lock();
+		try {
+			touch(id);
+			Integer old = current.get(id);
+			return new Change(id, null == old ? -1 : old, -1);
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	private void touch(Object id) {
+		pending++;
+		if (!ready) {
+			touched.add(id);
+		}
+	}
+
+	/**
+	 * 查询包含substring的候选ID
+	 * @param substring 子串(不含like通配符)
+	 * @param limit 候选ID上限
+	 * @return 候选ID(超集), 索引未就绪、子串短于{@link #N}、含通配符或超过上限时返回null
+	 */
+	public Collection<Object> candidates(String substring, int limit) {
+		if (!ready || null == substring || substring.indexOf('%') >= 0
+				|| substring.indexOf('_') >= 0) {
+			return null;
+		}
+		String s = normalize(substring);
+		if (s.length() < N) {
+			return null;
+		}
+		lock.readLock().lock();
+		try {
+			IntList[] lists = new IntList[s.length() - N + 1];
+			for (int i = 0; i < lists.length; i++) {
+				lists[i] = postings.get(gram(s, i));
+				if (null == lists[i]) {
+					return new LinkedHashSet<Object>();
+				}
+			}
+			// 从最短的倒排表开始求交集
+			Arrays.sort(lists, IntList.BY_SIZE);
+			int[] result = Arrays.copyOf(lists[0].values, lists[0].size);
+			int size = result.length;
+			for (int i = 1; i < lists.length && size > 0; i++) {
+				size = intersect(result, size, lists[i]);
+			}
+			Set<Object> candidates = new LinkedHashSet<Object>();
+			for (int i = 0; i < size; i++) {
+				if (!deleted.get(result[i])) {
+					candidates.add(ids[result[i]]);
+					if (candidates.size() > limit) {
+						return null;
+					}
+				}
+			}
+			return candidates;
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	/**
+	 * 索引中有效的记录数
+	 * @return
+	 */
+	public int size() {
+		lock.readLock().lock();
+		try {
+			return current.size();
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	/**
+	 * 添加文档并写入倒排表, 值为null时不添加
+	 * @return 文档号, 未添加时返回-1
+	 */
+	private int add(Object id, String value) {
+		if (null == value) {
+			return -1;
+		}
+		int doc = docs++;
+		if (doc == ids.length) {
+			ids = Arrays.copyOf(ids, ids.length * 2);
+		}
+		ids[doc] = id;
+		String s = normalize(value);
+		for (int i = 0; i + N <= s.length(); i++) {
+			Long gram = gram(s, i);
+			IntList list = postings.get(gram);
+			if (null == list) {
+				list = new IntList();
+				postings.put(gram, list);
+			}
+			// 同一值中重复的三元组只记录一次, 保持倒排表有序
+			if (0 == list.size || list.values[list.size - 1] != doc) {
+				list.add(doc);
+			}
+		}
+		return doc;
+	}
+
+	private void retire(int doc) {
+		if (doc < 0) {
+			return;
+		}
+		deleted.set(doc);
+		Integer live = current.get(ids[doc]);
+		if (null != live && live == doc) {
+			current.remove(ids[doc]);
+		}
+	}
+
+	/**
+	 * 失效的文档超过有效文档数时重新编号并压缩倒排表, 有未完成的修改时不压缩
+	 */
+	private void compactIfNeeded() {
+		int dead = deleted.cardinality();
+		if (pending > 0 || dead < 1024 || dead < docs - dead) {
+			return;
+		}
+		int[] remap = new int[docs];
+		Object[] newIds = new Object[Math.max(1024, docs - dead)];
+		int next = 0;
+		for (int doc = 0; doc < docs; doc++) {
+			if (deleted.get(doc)) {
+				remap[doc] = -1;
+			} else {
+				remap[doc] = next;
+				newIds[next++] = ids[doc];
+			}
+		}
+		Map<Long, IntList> newPostings = new HashMap<Long, IntList>();
+		for (Map.Entry<Long, IntList> entry : postings.entrySet()) {
+			IntList list = new IntList();
+			IntList old = entry.getValue();
+			for (int i = 0; i < old.size; i++) {
+				if (remap[old.values[i]] >= 0) {
+					list.add(remap[old.values[i]]);
+				}
+			}
+			if (list.size > 0) {
+				newPostings.put(entry.getKey(), list);
+			}
+		}
+		Map<Object, Integer> newCurrent = new HashMap<Object, Integer>();
+		for (Map.Entry<Object, Integer> entry : current.entrySet()) {
+			if (remap[entry.getValue()] >= 0) {
+				newCurrent.put(entry.getKey(), remap[entry.getValue()]);
+			}
+		}
+		postings = newPostings;
+		ids = newIds;
+		docs = next;
+		current = newCurrent;
+		deleted.clear();
+	}
+
+	private static int intersect(int[] result, int size, IntList list) {
+		int n = 0;
+		int j = 0;
+		for (int i = 0; i < size && j < list.size; i++) {
+			j = lowerBound(list.values, j, list.size, result[i]);
+			if (j < list.size && list.values[j] == result[i]) {
+				result[n++] = result[i];
+			}
+		}
+		return n;
+	}
+
+	private static int lowerBound(int[] values, int from, int to, int key) {
+		while (from < to) {
+			int mid = (from + to) >>> 1;
+			if (values[mid] < key) {
+				from = mid + 1;
+			} else {
+				to = mid;
+			}
+		}
+		return from;
+	}
+
+	static String normalize(String value) {
+		return MARKS.matcher(
+				Normalizer.normalize(value.toLowerCase(Locale.ROOT),
+						Normalizer.Form.NFD)).replaceAll("");
+	}
+
+	private static Long gram(String s, int i) {
+		return ((long) s.charAt(i) << 32) | ((long) s.charAt(i + 1) << 16)
+				| s.charAt(i + 2);
+	}
+
+	/**
+	 * 一次写入, 在事务结束时完成
+	 */
+	public final class Change {
+		private final Object id;
+		private final int oldDoc;
+		private final int newDoc;
+
+		Change(Object id, int oldDoc, int newDoc) {
+			this.id = id;
+			this.oldDoc = oldDoc;
+			this.newDoc = newDoc;
+		}
+
+		/**
+		 * 事务结束: 提交时使旧值失效, 回滚时撤销新值(构建期间保留新值, 只会多出候选)
+		 * @param committed 是否已提交
+		 */
+		public void complete(boolean committed) {
+			lock.writeLock().lock();
+			try {
+				pending--;
+				if (committed) {
+					if (oldDoc != newDoc) {
+						retire(oldDoc);
+					}
+				} else if (ready && newDoc >= 0) {
+					retire(newDoc);
+					if (oldDoc >= 0 && !deleted.get(oldDoc)) {
+						current.put(id, oldDoc);
+					}
+				}
+				compactIfNeeded();
+			} finally {
+				lock.writeLock().unlock();
+			}
+		}
+	}
+
+	/**
+	 * 有序int数组
+	 */
+	private static final class IntList {
+		static final Comparator<IntList> BY_SIZE = new Comparator<IntList>() {
+			@Override
+			public int compare(IntList a, IntList b) {
+				return a.size < b.size ? -1 : (a.size == b.size ? 0 : 1);
+			}
+		};
+
+		int[] values = new int[4];
+		int size;
+
+		void add(int value) {
+			if (size == values.length) {
+				values = Arrays.copyOf(values, size + (size >> 1) + 1);
+			}
+			values[size++] = value;
+		}
+	}
+}
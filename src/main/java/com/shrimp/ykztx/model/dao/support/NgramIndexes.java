@@ -0,0 +1,332 @@
+package com.shrimp.ykztx.model.dao.support;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.WeakHashMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+import org.hibernate.ScrollMode;
+import org.hibernate.ScrollableResults;
+import org.hibernate.SessionFactory;
+import org.hibernate.StatelessSession;
+import org.hibernate.action.spi.AfterTransactionCompletionProcess;
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+import org.hibernate.engine.spi.SessionImplementor;
+import org.hibernate.event.service.spi.EventListenerRegistry;
+import org.hibernate.event.spi.EventSource;
+import org.hibernate.event.spi.EventType;
+import org.hibernate.event.spi.PostDeleteEvent;
+import org.hibernate.event.spi.PostDeleteEventListener;
+import org.hibernate.event.spi.PostInsertEvent;
+import org.hibernate.event.spi.PostInsertEventListener;
+import org.hibernate.event.spi.PostUpdateEvent;
+import org.hibernate.event.spi.PostUpdateEventListener;
+import org.hibernate.metadata.ClassMetadata;
+import org.hibernate.persister.entity.EntityPersister;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.util.ObjectUtils;
+
+/**
+ * n-gram索引注册表, 按实体名和属性名保存{@link NgramIndex}
+ * <p>
+ * {@link #build(SessionFactory, Class, String...)}在后台线程中扫描全表构建索引, 构建期间索引未就绪, 查询回退到数据库;
+ * 所有构建在同一个后台线程中依次执行, 同一属性已在排队的构建不再重复提交.
+ * 同时向SessionFactory注册insert/update/delete事件监听器, 通过Session的写入在flush时更新索引, 事务结束后完成.
+ * StatelessSession和HQL批量更新不触发事件, 由DAO调用{@link #written}、{@link #updated}、{@link #deleted}或重新构建
+ */
+public final class NgramIndexes {
+
+	private static final Logger log = LoggerFactory
+			.getLogger(NgramIndexes.class);
+
+	/** 实体名 -> 属性名 -> 索引 */
+	private static final ConcurrentMap<String, Map<String, NgramIndex>> INDEXES = new ConcurrentHashMap<String, Map<String, NgramIndex>>();
+
+	private static final Set<SessionFactory> REGISTERED = Collections
+			.newSetFromMap(new WeakHashMap<SessionFactory, Boolean>());
+
+	private static final Listener LISTENER = new Listener();
+
+	/** 排队中(尚未开始)的构建, 实体名#属性名 */
+	private static final Set<String> QUEUED = Collections
+			.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+
+	private static final ExecutorService BUILDER = Executors
+			.newSingleThreadExecutor(new ThreadFactory() {
+				@Override
+				public Thread newThread(Runnable r) {
+					Thread thread = new Thread(r, "ngram-index-builder");
+					thread.setDaemon(true);
+					return thread;
+				}
+			});
+
+	private NgramIndexes() {
+	}
+
+	/**
+	 * 获取属性的索引
+	 * @param entityClass 实体类
+	 * @param property 属性名
+	 * @return 索引, 未建立时返回null
+	 */
+	public static NgramIndex get(Class<?> entityClass, String property) {
+		Map<String, NgramIndex> indexes = INDEXES.get(entityClass.getName());
+		return null == indexes ? null : indexes.get(property);
+	}
+
+	/**
+	 * 建立(或重建)属性的索引, 在后台线程中扫描全表, 完成前查询回退到数据库.
+	 * 属性已有排队中的构建时跳过(排队的构建开始时扫描, 包含之前的修改)
+	 * @param sessionFactory
+	 * @param entityClass 实体类
+	 * @param properties 字符串属性名
+	 */
+	public static void build(final SessionFactory sessionFactory,
+			final Class<?> entityClass, String... properties) {
+		register(sessionFactory);
+		Map<String, NgramIndex> indexes = INDEXES.get(entityClass.getName());
+		if (null == indexes) {
+			indexes = new ConcurrentHashMap<String, NgramIndex>();
+			Map<String, NgramIndex> existing = INDEXES.putIfAbsent(
+					entityClass.getName(), indexes);
+			if (null != existing) {
+				indexes = existing;
+			}
+		}
+		final List<String> queued = new ArrayList<String>();
+		List<NgramIndex> building = new ArrayList<NgramIndex>();
+		for (String property : properties) {
+			if (QUEUED.add(entityClass.getName() + "#" + property)) {
+				NgramIndex index = new NgramIndex();
+				indexes.put(property, index);
+				queued.add(property);
+				building.add(index);
+			}
+		}
+		if (queued.isEmpty()) {
+			return;
+		}
+		final String[] buildProperties = queued.toArray(new String[queued
+				.size()]);
+		final NgramIndex[] buildIndexes = building
+				.toArray(new NgramIndex[building.size()]);
+		BUILDER.execute(new Runnable() {
+			@Override
+			public void run() {
+				for (String property : buildProperties) {
+					QUEUED.remove(entityClass.getName() + "#" + property);
+				}
+				scan(sessionFactory, entityClass, buildProperties, buildIndexes);
+			}
+		});
+	}
+
+	private static void scan(SessionFactory sessionFactory,
+			Class<?> entityClass, String[] properties, NgramIndex[] building) {
+		long start = System.currentTimeMillis();
+		ClassMetadata metadata = sessionFactory.getClassMetadata(entityClass);
+		StringBuilder hql = new StringBuilder("select e.").append(metadata
+				.getIdentifierPropertyName());
+		for (String property : properties) {
+			hql.append(", e.").append(property);
+		}
+		hql.append(" from ").append(entityClass.getName()).append(" e");
+		// 索引之后按提交的写入增量维护, 从主库建立, 不读可能落后的从库
+		ReplicaRoutingDataSource.beginPrimary();
+		try {
+			StatelessSession session = sessionFactory.openStatelessSession();
+			try {
+				ScrollableResults results = session.createQuery(hql.toString())
+						.setFetchSize(1000).setReadOnly(true)
+						.scroll(ScrollMode.FORWARD_ONLY);
+				int rows = 0;
+				try {
+					while (results.next()) {
+						Object[] row = results.get();
+						for (int i = 0; i < building.length; i++) {
+							building[i].load(row[0], text(row[i + 1]));
+						}
+						rows++;
+					}
+				} finally {
+					results.close();
+				}
+				for (NgramIndex index : building) {
+					index.markReady();
+				}
+				log.info("ngram index {}{} built: {} rows in {}ms", new Object[] {
+						entityClass.getSimpleName(), Arrays.toString(properties),
+						rows, System.currentTimeMillis() - start });
+			} catch (RuntimeException e) {
+				log.error("ngram index " + entityClass.getSimpleName()
+						+ " build failed, searches fall back to the database", e);
+			} finally {
+				session.close();
+			}
+		} finally {
+			ReplicaRoutingDataSource.endPrimary();
+		}
+	}
+
+	/**
+	 * 实体已在事务外(StatelessSession)写入并提交, 立即更新索引
+	 * @param sessionFactory
+	 * @param entityClass 实体类
+	 * @param id 实体ID
+	 * @param entity 写入后的实体
+	 */
+	public static void written(SessionFactory sessionFactory,
+			Class<?> entityClass, Serializable id, Object entity) {
+		Map<String, NgramIndex> indexes = INDEXES.get(entityClass.getName());
+		if (null == indexes) {
+			return;
+		}
+		ClassMetadata metadata = sessionFactory.getClassMetadata(entityClass);
+		for (Map.Entry<String, NgramIndex> entry : indexes.entrySet()) {
+			entry.getValue()
+					.put(id, text(metadata.getPropertyValue(entity,
+							entry.getKey()))).complete(true);
+		}
+	}
+
+	/**
+	 * 实体的字段已按ID被HQL更新并提交(不触发事件), 立即更新索引
+	 * @param entityClass 实体类
+	 * @param id 实体ID
+	 * @param values 更新的字段及新值, 只处理其中已建立索引的属性
+	 */
+	public static void updated(Class<?> entityClass, Serializable id,
+			Map<String, ?> values) {
+		Map<String, NgramIndex> indexes = INDEXES.get(entityClass.getName());
+		if (null == indexes) {
+			return;
+		}
+		for (Map.Entry<String, NgramIndex> entry : indexes.entrySet()) {
+			if (values.containsKey(entry.getKey())) {
+				entry.getValue().put(id, text(values.get(entry.getKey())))
+						.complete(true);
+			}
+		}
+	}
+
+	/**
+	 * 实体已被HQL批量删除并提交, 立即从索引中移除
+	 * @param entityClass 实体类
+	 * @param ids 实体ID
+	 */
+	public static void deleted(Class<?> entityClass, Collection<?> ids) {
+		Map<String, NgramIndex> indexes = INDEXES.get(entityClass.getName());
+		if (null == indexes) {
+			return;
+		}
+		for (NgramIndex index : indexes.values()) {
+			for (Object id : ids) {
+				index.remove(id).complete(true);
+			}
+		}
+	}
+
+	private static void register(SessionFactory sessionFactory) {
+		synchronized (REGISTERED) {
+			if (!REGISTERED.add(sessionFactory)) {
+				return;
+			}
+		}
+		EventListenerRegistry registry = ((SessionFactoryImplementor) sessionFactory)
+				.getServiceRegistry().getService(EventListenerRegistry.class);
+		registry.appendListeners(EventType.POST_INSERT, LISTENER);
+		registry.appendListeners(EventType.POST_UPDATE, LISTENER);
+		registry.appendListeners(EventType.POST_DELETE, LISTENER);
+	}
+
+	private static String text(Object value) {
+		return null == value ? null : value.toString();
+	}
+
+	/**
+	 * Session写入事件监听器: flush时写入索引, 事务结束后完成
+	 */
+	private static final class Listener implements PostInsertEventListener,
+			PostUpdateEventListener, PostDeleteEventListener {
+		private static final long serialVersionUID = 1L;
+
+		@Override
+		public void onPostInsert(PostInsertEvent event) {
+			Map<String, NgramIndex> indexes = indexes(event.getPersister());
+			if (null == indexes) {
+				return;
+			}
+			for (Map.Entry<String, NgramIndex> entry : indexes.entrySet()) {
+				complete(event.getSession(), entry.getValue().put(
+						event.getId(),
+						text(event.getPersister().getPropertyValue(
+								event.getEntity(), entry.getKey()))));
+			}
+		}
+
+		@Override
+		public void onPostUpdate(PostUpdateEvent event) {
+			Map<String, NgramIndex> indexes = indexes(event.getPersister());
+			if (null == indexes) {
+				return;
+			}
+			for (Map.Entry<String, NgramIndex> entry : indexes.entrySet()) {
+				int i = event.getPersister().getEntityMetamodel()
+						.getPropertyIndex(entry.getKey());
+				Object value = event.getState()[i];
+				if (null != event.getOldState()
+						&& ObjectUtils.nullSafeEquals(event.getOldState()[i],
+								value)) {
+					continue;
+				}
+				complete(event.getSession(),
+						entry.getValue().put(event.getId(), text(value)));
+			}
+		}
+
+		@Override
+		public void onPostDelete(PostDeleteEvent event) {
+			Map<String, NgramIndex> indexes = indexes(event.getPersister());
+			if (null == indexes) {
+				return;
+			}
+			for (NgramIndex index : indexes.values()) {
+				complete(event.getSession(), index.remove(event.getId()));
+			}
+		}
+
+		@Override
+		public boolean requiresPostCommitHanding(EntityPersister persister) {
+			return false;
+		}
+
+		private static Map<String, NgramIndex> indexes(
+				EntityPersister persister) {
+			return INDEXES.get(persister.getEntityName());
+		}
+
+		private static void complete(EventSource session,
+				final NgramIndex.Change change) {
+			session.getActionQueue().registerProcess(
+					new AfterTransactionCompletionProcess() {
+						@Override
+						public void doAfterTransactionCompletion(
+								boolean success, SessionImplementor session) {
+							change.complete(success);
+						}
+					});
+		}
+	}
+}
@@ -0,0 +1,276 @@
+package com.shrimp.ykztx.model.dao.support;
+
+import java.io.Serializable;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Types;
+import java.util.Properties;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.hibernate.HibernateException;
+import org.hibernate.MappingException;
+import org.hibernate.dialect.Dialect;
+import org.hibernate.engine.spi.SessionImplementor;
+import org.hibernate.id.Configurable;
+import org.hibernate.id.IdentifierGenerator;
+import org.hibernate.id.PersistentIdentifierGenerator;
+import org.hibernate.internal.util.config.ConfigurationHelper;
+import org.hibernate.jdbc.AbstractReturningWork;
+import org.hibernate.type.Type;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * 池化(hi-lo)ID生成器, 每次从表或序列中取一段ID(block_size个), 在内存中无锁分配,
+ * 取号不再依赖数据库自增列, insert可以使用JDBC批量执行
+ * <p>
+ * 参数:
+ * <ul>
+ * <li>block_size 每次分配的ID数量, 默认100</li>
+ * <li>block_name 分配表中的记录名, 默认实体名</li>
+ * <li>table_name 分配表名, 默认id_block</li>
+ * <li>sequence_name 使用序列分配(序列步长须等于block_size), 数据库不支持序列时使用分配表</li>
+ * <li>initial_value 初始ID, 默认1</li>
+ * </ul>
+ * String类型的ID编码为定长(13位)36进制字符串, 字典序与数值顺序一致, 例如 0000000000001
+ * <p>
+ * 实体中通过{@code @GeneratedValue(generator = "pooled")}使用, 见com.shrimp.ykztx.model包的package-info
+ */
+public class PooledIdGenerator implements PersistentIdentifierGenerator,
+		Configurable {
+
+	public static final String BLOCK_SIZE = "block_size";
+	public static final String BLOCK_NAME = "block_name";
+	public static final String TABLE_NAME = "table_name";
+	public static final String SEQUENCE_NAME = "sequence_name";
+	public static final String INITIAL_VALUE = "initial_value";
+
+	public static final String DEFAULT_TABLE_NAME = "id_block";
+
+	/** Long.MAX_VALUE的36进制长度 */
+	private static final int ENCODED_LENGTH = 13;
+	private static final String ENCODED_PADDING = "0000000000000";
+
+	private static final Logger log = LoggerFactory
+			.getLogger(PooledIdGenerator.class);
+
+	private final AtomicReference<Block> current = new AtomicReference<Block>();
+
+	private int blockSize;
+	private long initialValue;
+	private String blockName;
+	private String tableName;
+	private String sequenceName;
+	private String sequenceNextValSql;
+	private Class<?> idClass;
+
+	@Override
+	public void configure(Type type, Properties params, Dialect dialect)
+			throws MappingException {
+		idClass = type.getReturnedClass();
+		blockSize = ConfigurationHelper.getInt(BLOCK_SIZE, params, 100);
+		if (blockSize < 1) {
+			throw new MappingException(BLOCK_SIZE + " must be positive");
+		}
+		initialValue = ConfigurationHelper.getLong(INITIAL_VALUE, params, 1);
+		blockName = ConfigurationHelper.getString(BLOCK_NAME, params,
+				params.getProperty(IdentifierGenerator.ENTITY_NAME));
+		tableName = ConfigurationHelper.getString(TABLE_NAME, params,
+				DEFAULT_TABLE_NAME);
+		sequenceName = params.getProperty(SEQUENCE_NAME);
+		if (null != sequenceName && !dialect.supportsSequences()) {
+			log.warn("{} does not support sequences, allocating {} from table {}",
+					new Object[] { dialect, blockName, tableName });
+			sequenceName = null;
+		}
+		if (null != sequenceName) {
+			sequenceNextValSql = dialect
+					.getSequenceNextValString(sequenceName);
+		}
+	}
+
+	/**
+	 * 从当前ID段中取号, 当前段用完时(仅此时加锁)分配新的ID段
+	 */
+	@Override
+	public Serializable generate(SessionImplementor session, Object object)
+			throws HibernateException {
+		while (true) {
+			Block block = current.get();
+			if (null != block) {
+				long value = block.next.getAndIncrement();
+				if (value < block.end) {
+					return toIdentifier(value);
+				}
+			}
+			synchronized (this) {
+				if (current.get() == block) {
+					current.set(allocate(session));
+				}
+			}
+		}
+	}
+
+	private Block allocate(SessionImplementor session) {
+		long start = session.getTransactionCoordinator().getTransaction()
+				.createIsolationDelegate()
+				.delegateWork(new AbstractReturningWork<Long>() {
+					@Override
+					public Long execute(Connection connection)
+							throws SQLException {
+						return null == sequenceName ? allocateFromTable(connection)
+								: allocateFromSequence(connection);
+					}
+				}, true);
+		log.debug("allocated ids [{}, {}) for {}", new Object[] { start,
+				start + blockSize, blockName });
+		return new Block(start, start + blockSize);
+	}
+
+	private long allocateFromSequence(Connection connection)
+			throws SQLException {
+		PreparedStatement ps = connection.prepareStatement(sequenceNextValSql);
+		try {
+			ResultSet rs = ps.executeQuery();
+			rs.next();
+			return rs.getLong(1);
+		} finally {
+			ps.close();
+		}
+	}
+
+	/**
+	 * 读取分配表中的下一个可用ID并以乐观方式(where next_hi = 旧值)推进, 冲突时重试
+	 */
+	private long allocateFromTable(Connection connection) throws SQLException {
+		while (true) {
+			Long next = null;
+			PreparedStatement select = connection.prepareStatement("select next_hi from "
+					+ tableName + " where block_name = ?");
+			try {
+				select.setString(1, blockName);
+				ResultSet rs = select.executeQuery();
+				if (rs.next()) {
+					next = rs.getLong(1);
+				}
+			} finally {
+				select.close();
+			}
+			if (null == next) {
+				PreparedStatement insert = connection.prepareStatement("insert into "
+						+ tableName + " (block_name, next_hi) values (?, ?)");
+				try {
+					insert.setString(1, blockName);
+					insert.setLong(2, initialValue + blockSize);
+					insert.executeUpdate();
+					return initialValue;
+				} catch (SQLException e) {
+					// 其他节点已插入, 重新读取
+					log.debug("concurrent insert of id block {}: {}",
+							blockName, e.getMessage());
+					continue;
+				} finally {
+					insert.close();
+				}
+			}
+			PreparedStatement update = connection.prepareStatement("update "
+					+ tableName
+					+ " set next_hi = ? where block_name = ? and next_hi = ?");
+			try {
+				update.setLong(1, next + blockSize);
+				update.setString(2, blockName);
+				update.setLong(3, next);
+				if (update.executeUpdate() == 1) {
+					return next;
+				}
+			} finally {
+				update.close();
+			}
+		}
+	}
+
+	private Serializable toIdentifier(long value) {
+		if (String.class == idClass) {
+			return encode(value);
+		} else if (Long.class == idClass || long.class == idClass) {
+			return value;
+		} else if (Integer.class == idClass || int.class == idClass) {
+			return (int) value;
+		} else if (Short.class == idClass || short.class == idClass) {
+			return (short) value;
+		} else if (BigInteger.class == idClass) {
+			return BigInteger.valueOf(value);
+		} else if (BigDecimal.class == idClass) {
+			return BigDecimal.valueOf(value);
+		}
+		throw new HibernateException("unsupported identifier type: "
+				+ idClass.getName());
+	}
+
+	/**
+	 * 将ID编码为定长36进制字符串
+	 * @param value ID(非负)
+	 * @return 13位字符串
+	 */
+	public static String encode(long value) {
+		String s = Long.toString(value, 36);
+		return ENCODED_PADDING.substring(s.length()) + s;
+	}
+
+	/**
+	 * 解码{@link #encode(long)}生成的ID
+	 * @param id 字符串ID
+	 * @return 数值ID
+	 */
+	public static long decode(String id) {
+		if (id.length() != ENCODED_LENGTH) {
+			throw new IllegalArgumentException("not a pooled id: " + id);
+		}
+		return Long.parseLong(id, 36);
+	}
+
+	@Override
+	public String[] sqlCreateStrings(Dialect dialect)
+			throws HibernateException {
+		if (null != sequenceName) {
+			return dialect.getCreateSequenceStrings(sequenceName,
+					(int) initialValue, blockSize);
+		}
+		return new String[] { dialect.getCreateTableString() + " "
+				+ tableName + " (block_name "
+				+ dialect.getTypeName(Types.VARCHAR, 255, 0, 0)
+				+ " not null, next_hi " + dialect.getTypeName(Types.BIGINT)
+				+ " not null, primary key (block_name))" };
+	}
+
+	@Override
+	public String[] sqlDropStrings(Dialect dialect) throws HibernateException {
+		if (null != sequenceName) {
+			return dialect.getDropSequenceStrings(sequenceName);
+		}
+		return new String[] { dialect.getDropTableString(tableName) };
+	}
+
+	@Override
+	public Object generatorKey() {
+		return null == sequenceName ? tableName : sequenceName;
+	}
+
+	/**
+	 * 已分配的ID段 [next, end)
+	 */
+	private static final class Block {
+		final AtomicLong next;
+		final long end;
+
+		Block(long start, long end) {
+			this.next = new AtomicLong(start);
+			this.end = end;
+		}
+	}
+}
@@ -0,0 +1,14 @@
+package com.shrimp.ykztx.model.dao.support;
+
+/**
+ * 将一行投影结果(按列顺序)封装为目标DTO, 由{@link ProjectionAccessors}按(类型, 列集合)生成
+ */
+public interface ProjectionAccessor {
+
+	/**
+	 * 创建DTO并填充列值
+	 * @param row 一行查询结果, 顺序与生成时的列一致
+	 * @return DTO
+	 */
+	Object newInstance(Object[] row);
+}
@@ -0,0 +1,291 @@
+package com.shrimp.ykztx.model.dao.support;
+
+import java.beans.IntrospectionException;
+import java.beans.Introspector;
+import java.beans.PropertyDescriptor;
+import java.lang.reflect.Array;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Method;
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javassist.CannotCompileException;
+import javassist.ClassPool;
+import javassist.CtClass;
+import javassist.CtNewMethod;
+import javassist.LoaderClassPath;
+import javassist.NotFoundException;
+
+import org.hibernate.HibernateException;
+import org.hibernate.transform.ResultTransformer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * 投影结果封装器工厂, 每个(DTO类型, 列集合)只生成一次字节码封装类并缓存,
+ * 查询时直接调用setter/构造器, 不使用反射
+ * <p>
+ * DTO需为public类: 所有列都有public setter时使用无参构造器+setter, 否则使用参数个数与列数相同的public构造器(按列顺序传参).
+ * DTO属性类型需与实体属性类型一致, 基本类型属性遇到null时保持默认值.
+ * 生成字节码失败时(如运行环境禁止定义类)退化为反射实现
+ */
+public final class ProjectionAccessors {
+
+	private static final Logger log = LoggerFactory
+			.getLogger(ProjectionAccessors.class);
+
+	private static final ConcurrentMap<Class<?>, ConcurrentMap<String, ProjectionAccessor>> ACCESSORS = new ConcurrentHashMap<Class<?>, ConcurrentMap<String, ProjectionAccessor>>();
+
+	private static final AtomicInteger SEQUENCE = new AtomicInteger();
+
+	private ProjectionAccessors() {
+	}
+
+	/**
+	 * 获取封装器, 不存在时生成
+	 * @param type DTO类型
+	 * @param columns DTO属性名, 顺序与查询列一致
+	 * @return 封装器
+	 */
+	public static ProjectionAccessor get(Class<?> type, String[] columns) {
+		ConcurrentMap<String, ProjectionAccessor> byColumns = ACCESSORS
+				.get(type);
+		if (null == byColumns) {
+			byColumns = new ConcurrentHashMap<String, ProjectionAccessor>();
+			ConcurrentMap<String, ProjectionAccessor> existing = ACCESSORS
+					.putIfAbsent(type, byColumns);
+			if (null != existing) {
+				byColumns = existing;
+			}
+		}
+		String key = Arrays.toString(columns);
+		ProjectionAccessor accessor = byColumns.get(key);
+		if (null == accessor) {
+			accessor = create(type, columns.clone());
+			ProjectionAccessor existing = byColumns.putIfAbsent(key, accessor);
+			if (null != existing) {
+				accessor = existing;
+			}
+		}
+		return accessor;
+	}
+
+	/**
+	 * 使用封装器的ResultTransformer, 用于Criteria.setResultTransformer
+	 * @param type DTO类型
+	 * @param columns DTO属性名, 顺序与查询列一致
+	 * @return
+	 */
+	public static ResultTransformer transformer(Class<?> type, String[] columns) {
+		return new AccessorResultTransformer(get(type, columns));
+	}
+
+	private static ProjectionAccessor create(Class<?> type, String[] columns) {
+		Method[] setters = findSetters(type, columns);
+		Constructor<?> constructor = null;
+		if (null == setters) {
+			constructor = findConstructor(type, columns.length);
+			if (null == constructor) {
+				throw new IllegalArgumentException(type.getName()
+						+ " has neither public setters for "
+						+ Arrays.toString(columns)
+						+ " nor a public constructor with " + columns.length
+						+ " parameters");
+			}
+		}
+		try {
+			return generate(type, setters, constructor);
+		} catch (Exception e) {
+			log.warn("generate projection accessor for {} failed, using reflection: {}",
+					type.getName(), e.toString());
+			return new ReflectiveAccessor(type, setters, constructor);
+		}
+	}
+
+	/**
+	 * 所有列都有public setter且有public无参构造器时返回setter, 否则返回null
+	 */
+	private static Method[] findSetters(Class<?> type, String[] columns) {
+		try {
+			type.getConstructor();
+		} catch (NoSuchMethodException e) {
+			return null;
+		}
+		PropertyDescriptor[] descriptors;
+		try {
+			descriptors = Introspector.getBeanInfo(type)
+					.getPropertyDescriptors();
+		} catch (IntrospectionException e) {
+			return null;
+		}
+		Method[] setters = new Method[columns.length];
+		for (int i = 0; i < columns.length; i++) {
+			for (PropertyDescriptor descriptor : descriptors) {
+				if (descriptor.getName().equals(columns[i])) {
+					setters[i] = descriptor.getWriteMethod();
+				}
+			}
+			if (null == setters[i]) {
+				return null;
+			}
+		}
+		return setters;
+	}
+
+	private static Constructor<?> findConstructor(Class<?> type, int arity) {
+		for (Constructor<?> constructor : type.getConstructors()) {
+			if (constructor.getParameterTypes().length == arity) {
+				return constructor;
+			}
+		}
+		return null;
+	}
+
+	private static ProjectionAccessor generate(Class<?> type, Method[] setters,
+			Constructor<?> constructor) throws NotFoundException,
+			CannotCompileException, InstantiationException,
+			IllegalAccessException {
+		String typeName = sourceName(type);
+		StringBuilder body = new StringBuilder(
+				"public Object newInstance(Object[] row) {");
+		if (null != setters) {
+			body.append(typeName).append(" d = new ").append(typeName)
+					.append("();");
+			for (int i = 0; i < setters.length; i++) {
+				body.append("if (row[").append(i).append("] != null) d.")
+						.append(setters[i].getName()).append("(")
+						.append(convert(setters[i].getParameterTypes()[0], i))
+						.append(");");
+			}
+			body.append("return d;");
+		} else {
+			Class<?>[] parameters = constructor.getParameterTypes();
+			body.append("return new ").append(typeName).append("(");
+			for (int i = 0; i < parameters.length; i++) {
+				if (i > 0) {
+					body.append(", ");
+				}
+				if (parameters[i].isPrimitive()) {
+					body.append("row[").append(i).append("] == null ? ")
+							.append(defaultValue(parameters[i])).append(" : ");
+				}
+				body.append(convert(parameters[i], i));
+			}
+			body.append(");");
+		}
+		body.append("}");
+
+		ClassPool pool = new ClassPool(true);
+		pool.appendClassPath(new LoaderClassPath(type.getClassLoader()));
+		pool.appendClassPath(new LoaderClassPath(ProjectionAccessor.class
+				.getClassLoader()));
+		CtClass generated = pool.makeClass(type.getName() + "$$Projection$"
+				+ SEQUENCE.incrementAndGet());
+		generated.addInterface(pool.get(ProjectionAccessor.class.getName()));
+		generated.addMethod(CtNewMethod.make(body.toString(), generated));
+		Class<?> accessorClass = generated.toClass(type.getClassLoader(),
+				type.getProtectionDomain());
+		generated.detach();
+		return (ProjectionAccessor) accessorClass.newInstance();
+	}
+
+	/**
+	 * 生成把row[i]转换为目标类型的源码, 基本类型通过包装类/Number拆箱
+	 */
+	private static String convert(Class<?> target, int i) {
+		String value = "row[" + i + "]";
+		if (!target.isPrimitive()) {
+			return "(" + sourceName(target) + ") " + value;
+		}
+		if (boolean.class == target) {
+			return "((java.lang.Boolean) " + value + ").booleanValue()";
+		}
+		if (char.class == target) {
+			return "((java.lang.Character) " + value + ").charValue()";
+		}
+		return "((java.lang.Number) " + value + ")." + target.getName()
+				+ "Value()";
+	}
+
+	private static String defaultValue(Class<?> primitive) {
+		if (boolean.class == primitive) {
+			return "false";
+		}
+		return "(" + primitive.getName() + ") 0";
+	}
+
+	private static String sourceName(Class<?> type) {
+		if (type.isArray()) {
+			return sourceName(type.getComponentType()) + "[]";
+		}
+		return type.getName();
+	}
+
+	/**
+	 * 生成字节码失败时的反射实现
+	 */
+	private static final class ReflectiveAccessor implements ProjectionAccessor {
+		private final Class<?> type;
+		private final Method[] setters;
+		private final Constructor<?> constructor;
+
+		ReflectiveAccessor(Class<?> type, Method[] setters,
+				Constructor<?> constructor) {
+			this.type = type;
+			this.setters = setters;
+			this.constructor = constructor;
+		}
+
+		@Override
+		public Object newInstance(Object[] row) {
+			try {
+				if (null != setters) {
+					Object dto = type.newInstance();
+					for (int i = 0; i < setters.length; i++) {
+						if (null != row[i]) {
+							setters[i].invoke(dto, row[i]);
+						}
+					}
+					return dto;
+				}
+				Class<?>[] parameters = constructor.getParameterTypes();
+				Object[] args = row.clone();
+				for (int i = 0; i < args.length; i++) {
+					if (null == args[i] && parameters[i].isPrimitive()) {
+						args[i] = Array.get(
+								Array.newInstance(
+										parameters[i], 1), 0);
+					}
+				}
+				return constructor.newInstance(args);
+			} catch (Exception e) {
+				throw new HibernateException("could not instantiate "
+						+ type.getName(), e);
+			}
+		}
+	}
+
+	private static final class AccessorResultTransformer implements
+			ResultTransformer {
+		private static final long serialVersionUID = 1L;
+
+		private final transient ProjectionAccessor accessor;
+
+		AccessorResultTransformer(ProjectionAccessor accessor) {
+			this.accessor = accessor;
+		}
+
+		@Override
+		public Object transformTuple(Object[] tuple, String[] aliases) {
+			return accessor.newInstance(tuple);
+		}
+
+		@SuppressWarnings("rawtypes")
+		@Override
+		public java.util.List transformList(java.util.List collection) {
+			return collection;
+		}
+	}
+}
@@ -0,0 +1,125 @@
+package com.shrimp.ykztx.model.dao.support;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * DAO生成的HQL模板注册表, 每种查询形态(实体 + 条件/更新字段名集合 + 排序)只拼接一次HQL,
+ * 之后复用同一个HQL字符串, 只绑定新的参数值, Hibernate的QueryPlanCache也因此命中
+ * <p>
+ * 形态数量有上限, 超出后新形态每次重新编译且不缓存(防止字段名来自外部输入时无限增长)
+ */
+public class QueryTemplateRegistry {
+
+	private static final QueryTemplateRegistry SHARED = new QueryTemplateRegistry(
+			4096);
+
+	private final int maxTemplates;
+	private final ConcurrentMap<String, QueryTemplate> templates = new ConcurrentHashMap<String, QueryTemplate>();
+	private final AtomicLong hits = new AtomicLong();
+	private final AtomicLong misses = new AtomicLong();
+
+	public QueryTemplateRegistry(int maxTemplates) {
+		this.maxTemplates = maxTemplates;
+	}
+
+	/**
+	 * 应用内共享的注册表
+	 * @return
+	 */
+	public static QueryTemplateRegistry shared() {
+		return SHARED;
+	}
+
+	/**
+	 * 获取查询形态对应的模板, 不存在时编译并注册
+	 * @param shape 查询形态(实体名及排序后的属性名等)
+	 * @param compiler 模板编译器, 仅在未命中时调用
+	 * @return 模板
+	 */
+	public QueryTemplate get(String shape, Compiler compiler) {
+		QueryTemplate template = templates.get(shape);
+		if (null != template) {
+			hits.incrementAndGet();
+			return template;
+		}
+		misses.incrementAndGet();
+		template = compiler.compile();
+		if (templates.size() < maxTemplates) {
+			QueryTemplate existing = templates.putIfAbsent(shape, template);
+			if (null != existing) {
+				return existing;
+			}
+		}
+		return template;
+	}
+
+	public long getHits() {
+		return hits.get();
+	}
+
+	public long getMisses() {
+		return misses.get();
+	}
+
+	/**
+	 * 命中率(0~1)
+	 * @return
+	 */
+	public double getHitRatio() {
+		long h = hits.get();
+		long total = h + misses.get();
+		return total == 0 ? 0 : (double) h / total;
+	}
+
+	/**
+	 * 已注册的形态数量
+	 * @return
+	 */
+	public int size() {
+		return templates.size();
+	}
+
+	@Override
+	public String toString() {
+		return "QueryTemplateRegistry(templates=" + size() + ", hits="
+				+ getHits() + ", misses=" + getMisses() + ")";
+	}
+
+	/**
+	 * 模板编译器
+	 */
+	public interface Compiler {
+		QueryTemplate compile();
+	}
+
+	/**
+	 * 编译后的查询模板, 参数为按顺序绑定的?占位符
+	 */
+	public static final class QueryTemplate {
+		private final String hql;
+		private final String countHql;
+
+		public QueryTemplate(String hql) {
+			this(hql, null);
+		}
+
+		public QueryTemplate(String hql, String countHql) {
+			this.hql = hql;
+			this.countHql = countHql;
+		}
+
+		public String getHql() {
+			return hql;
+		}
+
+		/**
+		 * 对应的count查询, 非分页模板为null
+		 * @return
+		 */
+		public String getCountHql() {
+			return countHql;
+		}
+	}
+}
@@ -0,0 +1,442 @@
+package com.shrimp.ykztx.model.dao.support;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.hibernate.CacheMode;
+import org.hibernate.Criteria;
+import org.hibernate.HibernateException;
+import org.hibernate.ScrollMode;
+import org.hibernate.ScrollableResults;
+import org.hibernate.Session;
+import org.hibernate.SessionFactory;
+import org.hibernate.criterion.DetachedCriteria;
+import org.hibernate.criterion.Order;
+import org.hibernate.criterion.ProjectionList;
+import org.hibernate.criterion.Projections;
+import org.hibernate.criterion.Restrictions;
+import org.hibernate.internal.util.SerializationHelper;
+import org.hibernate.metadata.ClassMetadata;
+import org.hibernate.type.Type;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.util.Assert;
+
+import com.shrimp.ykztx.model.dao.ExportReport;
+
+/**
+ * 按ID区间并行导出实体到文件
+ * <p>
+ * 按ID顺序将符合条件的记录等分为partitions个区间(边界通过offset定位), 每个区间在独立的线程和Session中按ID顺序
+ * 流式读取(只查询ID和普通属性列, 不加载实体), 写入各自的分片文件(target.partN), 全部完成后按区间顺序合并为目标文件.
+ * <p>
+ * 区间边界和已完成的区间记录在断点文件(target.checkpoint)中, 每完成一个区间更新一次;
+ * 导出失败后以相同参数重新导出时只重新导出未完成的区间. 成功后删除分片和断点文件.
+ * <p>
+ * 每个并行区间占用一个连接, parallelism不应超过连接池大小
+ */
+public class RangeExporter {
+
+	private static final Logger log = LoggerFactory
+			.getLogger(RangeExporter.class);
+
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+	private static final int BUFFER_SIZE = 64 * 1024;
+	private static final AtomicInteger THREAD_SEQUENCE = new AtomicInteger();
+
+	private final SessionFactory sessionFactory;
+	private final Class<?> entityClass;
+	private final String idName;
+	private final String[] columns;
+
+	public RangeExporter(SessionFactory sessionFactory, Class<?> entityClass) {
+		Assert.notNull(sessionFactory);
+		Assert.notNull(entityClass);
+		this.sessionFactory = sessionFactory;
+		this.entityClass = entityClass;
+		ClassMetadata metadata = sessionFactory.getClassMetadata(entityClass);
+		this.idName = metadata.getIdentifierPropertyName();
+		List<String> names = new ArrayList<String>();
+		names.add(idName);
+		String[] properties = metadata.getPropertyNames();
+		Type[] types = metadata.getPropertyTypes();
+		for (int i = 0; i < properties.length; i++) {
+			// 关联和组件属性不导出
+			if (!types[i].isAssociationType() && !types[i].isComponentType()) {
+				names.add(properties[i]);
+			}
+		}
+		this.columns = names.toArray(new String[names.size()]);
+	}
+
+	/**
+	 * 导出的列名, 第一列为ID
+	 * @return
+	 */
+	public String[] getColumns() {
+		return columns.clone();
+	}
+
+	/**
+	 * 导出
+	 * @param dc 查询条件, 为null时导出全部记录
+	 * @param target 目标文件
+	 * @param format 文件格式
+	 * @param partitions 区间数
+	 * @param parallelism 并行线程数
+	 * @param fetchSize 每次从数据库读取的行数
+	 * @return 导出报告
+	 */
+	public ExportReport export(DetachedCriteria dc, File target,
+			ExportFormat format, int partitions, int parallelism,
+			final int fetchSize) {
+		Assert.notNull(target);
+		Assert.notNull(format);
+		Assert.isTrue(partitions > 0, "partitions must be positive");
+		Assert.isTrue(parallelism > 0, "parallelism must be positive");
+		final DetachedCriteria criteria = null == dc ? DetachedCriteria
+				.forClass(entityClass) : dc;
+		long start = System.currentTimeMillis();
+		final File checkpointFile = new File(target.getPath() + ".checkpoint");
+		Checkpoint loaded = readCheckpoint(checkpointFile, format, partitions);
+		final Checkpoint checkpoint = null != loaded ? loaded : new Checkpoint(
+				format, boundaries(criteria, partitions));
+		if (null == loaded) {
+			writeCheckpoint(checkpointFile, checkpoint);
+		} else {
+			log.info("resuming export of {} to {}, finished ranges: {}",
+					new Object[] { entityClass.getSimpleName(), target,
+							checkpoint.finished });
+		}
+
+		final ExportReport report = new ExportReport(partitions, parallelism);
+		ExecutorService executor = Executors.newFixedThreadPool(
+				Math.min(parallelism, partitions), new ThreadFactory() {
+					@Override
+					public Thread newThread(Runnable r) {
+						Thread thread = new Thread(r, "export-"
+								+ THREAD_SEQUENCE.incrementAndGet());
+						thread.setDaemon(true);
+						return thread;
+					}
+				});
+		List<Future<?>> futures = new ArrayList<Future<?>>();
+		try {
+			for (int i = 0; i < partitions; i++) {
+				if (checkpoint.isFinished(i)) {
+					report.addResumedRange();
+					continue;
+				}
+				final int range = i;
+				final File part = partFile(target, i);
+				futures.add(executor.submit(new Callable<Void>() {
+					@Override
+					public Void call() throws IOException {
+						long rangeStart = System.currentTimeMillis();
+						long rows = exportRange(criteria, checkpoint, range,
+								part, fetchSize);
+						checkpoint.finish(range);
+						writeCheckpoint(checkpointFile, checkpoint);
+						report.addRange(range, rows,
+								System.currentTimeMillis() - rangeStart);
+						return null;
+					}
+				}));
+			}
+			for (Future<?> future : futures) {
+				future.get();
+			}
+		} catch (ExecutionException e) {
+			throw new HibernateException("export of "
+					+ entityClass.getSimpleName() + " to " + target
+					+ " failed, run again to resume", e.getCause());
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new HibernateException("export of "
+					+ entityClass.getSimpleName() + " interrupted", e);
+		} finally {
+			executor.shutdownNow();
+		}
+
+		try {
+			merge(target, format, partitions);
+		} catch (IOException e) {
+			throw new HibernateException("merge of " + target + " failed", e);
+		}
+		for (int i = 0; i < partitions; i++) {
+			partFile(target, i).delete();
+		}
+		checkpointFile.delete();
+		report.setElapsedMillis(System.currentTimeMillis() - start);
+		log.info("exported {} to {}: {}", new Object[] {
+				entityClass.getSimpleName(), target, report });
+		return report;
+	}
+
+	/**
+	 * 按ID顺序将记录等分为partitions个区间, 返回partitions-1个边界ID
+	 */
+	private Serializable[] boundaries(DetachedCriteria dc, int partitions) {
+		Session session = openSession();
+		try {
+			Criteria count = copy(dc).getExecutableCriteria(session);
+			count.setProjection(Projections.rowCount());
+			long total = ((Number) count.uniqueResult()).longValue();
+			List<Serializable> boundaries = new ArrayList<Serializable>();
+			for (int i = 1; i < partitions; i++) {
+				Criteria c = copy(dc).getExecutableCriteria(session);
+				c.setProjection(Projections.id()).addOrder(Order.asc(idName));
+				c.setFirstResult((int) (total * i / partitions));
+				c.setMaxResults(1);
+				Serializable boundary = (Serializable) c.uniqueResult();
+				// 记录数少于区间数时相邻边界相同, 区间为空
+				if (null != boundary) {
+					boundaries.add(boundary);
+				}
+			}
+			while (boundaries.size() < partitions - 1) {
+				boundaries.add(boundaries.isEmpty() ? null : boundaries
+						.get(boundaries.size() - 1));
+			}
+			return boundaries.toArray(new Serializable[partitions - 1]);
+		} finally {
+			session.close();
+		}
+	}
+
+	private long exportRange(DetachedCriteria dc, Checkpoint checkpoint,
+			int range, File part, int fetchSize) throws IOException {
+		Serializable[] boundaries = checkpoint.boundaries;
+		Serializable lower = range == 0 ? null : boundaries[range - 1];
+		Serializable upper = range == boundaries.length ? null
+				: boundaries[range];
+		ExportFormat format = checkpoint.format;
+		ChannelWriter writer = new ChannelWriter(new FileOutputStream(part)
+				.getChannel());
+		Session session = openSession();
+		long rows = 0;
+		try {
+			if (range > 0 && null == lower) {
+				// 记录数少于区间数时的空区间
+				return 0;
+			}
+			DetachedCriteria rangeCriteria = copy(dc);
+			if (null != lower) {
+				rangeCriteria.add(Restrictions.ge(idName, lower));
+			}
+			if (null != upper) {
+				rangeCriteria.add(Restrictions.lt(idName, upper));
+			}
+			ProjectionList projection = Projections.projectionList();
+			projection.add(Projections.id());
+			for (int i = 1; i < columns.length; i++) {
+				projection.add(Projections.property(columns[i]));
+			}
+			Criteria c = rangeCriteria.getExecutableCriteria(session);
+			c.setProjection(projection).addOrder(Order.asc(idName));
+			c.setFetchSize(fetchSize);
+			c.setReadOnly(true);
+			c.setCacheMode(CacheMode.IGNORE);
+			ScrollableResults results = c.scroll(ScrollMode.FORWARD_ONLY);
+			try {
+				StringBuilder sb = new StringBuilder(256);
+				while (results.next()) {
+					sb.setLength(0);
+					format.row(sb, columns, results.get());
+					writer.write(sb);
+					rows++;
+				}
+			} finally {
+				results.close();
+			}
+			return rows;
+		} finally {
+			session.close();
+			writer.close();
+		}
+	}
+
+	private Session openSession() {
+		Session session = sessionFactory.openSession();
+		session.setDefaultReadOnly(true);
+		session.setCacheMode(CacheMode.IGNORE);
+		return session;
+	}
+
+	/**
+	 * 复制查询条件, DetachedCriteria不能在多个线程中同时使用
+	 */
+	private static DetachedCriteria copy(DetachedCriteria dc) {
+		return (DetachedCriteria) SerializationHelper.clone(dc);
+	}
+
+	private void merge(File target, ExportFormat format, int partitions)
+			throws IOException {
+		FileChannel out = new FileOutputStream(target).getChannel();
+		try {
+			out.write(ByteBuffer.wrap(format.header(columns).getBytes(UTF8)));
+			for (int i = 0; i < partitions; i++) {
+				FileChannel in = new FileInputStream(partFile(target, i))
+						.getChannel();
+				try {
+					long position = 0;
+					long size = in.size();
+					while (position < size) {
+						position += in.transferTo(position, size - position,
+								out);
+					}
+				} finally {
+					in.close();
+				}
+			}
+			out.force(false);
+		} finally {
+			out.close();
+		}
+	}
+
+	private static File partFile(File target, int range) {
+		return new File(target.getPath() + ".part" + range);
+	}
+
+	private Checkpoint readCheckpoint(File file, ExportFormat format,
+			int partitions) {
+		if (!file.exists()) {
+			return null;
+		}
+		try {
+			ObjectInputStream in = new ObjectInputStream(new FileInputStream(
+					file));
+			try {
+				Checkpoint checkpoint = (Checkpoint) in.readObject();
+				if (checkpoint.format == format
+						&& checkpoint.boundaries.length == partitions - 1) {
+					return checkpoint;
+				}
+				log.warn("checkpoint {} does not match format {} and {} partitions, starting over",
+						new Object[] { file, format, partitions });
+			} finally {
+				in.close();
+			}
+		} catch (Exception e) {
+			log.warn("unreadable checkpoint " + file + ", starting over", e);
+		}
+		return null;
+	}
+
+	/**
+	 * 写入临时文件后改名, 避免中断时留下不完整的断点文件
+	 */
+	private static void writeCheckpoint(File file, Checkpoint checkpoint) {
+		synchronized (checkpoint) {
+			File temp = new File(file.getPath() + ".tmp");
+			try {
+				FileOutputStream stream = new FileOutputStream(temp);
+				ObjectOutputStream out = new ObjectOutputStream(stream);
+				try {
+					out.writeObject(checkpoint);
+					out.flush();
+					stream.getFD().sync();
+				} finally {
+					out.close();
+				}
+				if (!temp.renameTo(file)) {
+					file.delete();
+					if (!temp.renameTo(file)) {
+						throw new IOException("cannot rename " + temp + " to "
+								+ file);
+					}
+				}
+			} catch (IOException e) {
+				throw new HibernateException("cannot write checkpoint " + file,
+						e);
+			}
+		}
+	}
+
+	/**
+	 * 断点: 区间边界及已完成的区间
+	 */
+	private static final class Checkpoint implements Serializable {
+		private static final long serialVersionUID = 1L;
+
+		final ExportFormat format;
+		final Serializable[] boundaries;
+		final BitSet finished = new BitSet();
+
+		Checkpoint(ExportFormat format, Serializable[] boundaries) {
+			this.format = format;
+			this.boundaries = boundaries;
+		}
+
+		synchronized boolean isFinished(int range) {
+			return finished.get(range);
+		}
+
+		synchronized void finish(int range) {
+			finished.set(range);
+		}
+	}
+
+	/**
+	 * 带缓冲的UTF-8文件通道写入, 关闭时刷盘
+	 */
+	private static final class ChannelWriter {
+		private final FileChannel channel;
+		private final ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+
+		ChannelWriter(FileChannel channel) {
+			this.channel = channel;
+		}
+
+		void write(CharSequence s) throws IOException {
+			byte[] bytes = s.toString().getBytes(UTF8);
+			if (bytes.length > buffer.remaining()) {
+				flush();
+			}
+			if (bytes.length > buffer.capacity()) {
+				ByteBuffer large = ByteBuffer.wrap(bytes);
+				while (large.hasRemaining()) {
+					channel.write(large);
+				}
+			} else {
+				buffer.put(bytes);
+			}
+		}
+
+		private void flush() throws IOException {
+			buffer.flip();
+			while (buffer.hasRemaining()) {
+				channel.write(buffer);
+			}
+			buffer.clear();
+		}
+
+		void close() throws IOException {
+			try {
+				flush();
+				channel.force(false);
+			} finally {
+				channel.close();
+			}
+		}
+	}
+}
@@ -0,0 +1,278 @@
+package com.shrimp.ykztx.model.dao.support;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.sql.DataSource;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.jdbc.datasource.AbstractDataSource;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.util.Assert;
+
+/**
+ * 读写分离DataSource: 只读事务(readOnly = true)的连接从从库中选取, 其他连接(读写事务、无事务、锁定读)使用主库
+ * <p>
+ * 连接在事务开始时获取, 此时事务的只读标志尚未绑定到线程, 因此外层需要包装LazyConnectionDataSourceProxy,
+ * 使连接在执行第一条语句时才获取, 见application-repository.xml
+ * <ul>
+ * <li>从库选择: ROUND_ROBIN轮询, LEAST_LOADED选择借出连接数最少的从库</li>
+ * <li>从库获取连接失败时使用主库</li>
+ * <li>读己之写: 当前线程写入后readYourWritesWindow毫秒内, 只读事务仍使用主库, 见{@link #markWrite()}</li>
+ * <li>锁定读等必须读主库的操作在事务内调用{@link #requirePrimary()}, 只读事务已使用从库连接时抛出IllegalStateException</li>
+ * <li>在只读事务中开启的独立写事务(StatelessSession、独立Session)在同一线程获取连接, 用{@link #beginPrimary()}/{@link #endPrimary()}固定使用主库</li>
+ * </ul>
+ * 未配置从库时所有连接使用主库
+ */
+public class ReplicaRoutingDataSource extends AbstractDataSource implements
+		InitializingBean {
+
+	/**
+	 * 从库选择方式
+	 */
+	public enum LoadBalance {
+		ROUND_ROBIN, LEAST_LOADED
+	}
+
+	private static final Logger log = LoggerFactory
+			.getLogger(ReplicaRoutingDataSource.class);
+
+	/** 当前线程最后一次写入的时间 */
+	private static final ThreadLocal<Long> LAST_WRITE = new ThreadLocal<Long>();
+	/** 当前事务必须使用主库 */
+	private static final ThreadLocal<Boolean> PRIMARY_REQUIRED = new ThreadLocal<Boolean>();
+	/** 当前线程固定使用主库的嵌套层数 */
+	private static final ThreadLocal<Integer> PRIMARY_PINNED = new ThreadLocal<Integer>();
+	/** 当前线程在事务中借出且未关闭的从库连接数 */
+	private static final ThreadLocal<AtomicInteger> REPLICA_HELD = new ThreadLocal<AtomicInteger>() {
+		@Override
+		protected AtomicInteger initialValue() {
+			return new AtomicInteger();
+		}
+	};
+
+	private DataSource primary;
+	private List<DataSource> replicas = Collections.emptyList();
+	private LoadBalance loadBalance = LoadBalance.ROUND_ROBIN;
+	private long readYourWritesWindow;
+
+	private final AtomicInteger next = new AtomicInteger();
+	private AtomicInteger[] borrowed = new AtomicInteger[0];
+
+	public void setPrimary(DataSource primary) {
+		this.primary = primary;
+	}
+
+	public void setReplicas(List<DataSource> replicas) {
+		this.replicas = new ArrayList<DataSource>(replicas);
+	}
+
+	public void setLoadBalance(LoadBalance loadBalance) {
+		this.loadBalance = loadBalance;
+	}
+
+	/**
+	 * 写入后只读事务继续使用主库的时间(毫秒), 0表示不启用
+	 * @param readYourWritesWindow
+	 */
+	public void setReadYourWritesWindow(long readYourWritesWindow) {
+		this.readYourWritesWindow = readYourWritesWindow;
+	}
+
+	@Override
+	public void afterPropertiesSet() {
+		Assert.notNull(primary, "primary is required");
+		borrowed = new AtomicInteger[replicas.size()];
+		for (int i = 0; i < borrowed.length; i++) {
+			borrowed[i] = new AtomicInteger();
+		}
+	}
+
+	/**
+	 * 记录当前线程发生了写入, DAO写操作后调用
+	 */
+	public static void markWrite() {
+		LAST_WRITE.set(System.currentTimeMillis());
+	}
+
+	/**
+	 * 当前事务剩余的语句使用主库, 事务结束后恢复; 不在事务中时无需调用
+	 * @throws IllegalStateException 当前只读事务已使用从库连接, 无法再切换到主库(应在读写事务中或第一条语句前调用)
+	 */
+	public static void requirePrimary() {
+		if (!TransactionSynchronizationManager.isSynchronizationActive()
+				|| Boolean.TRUE.equals(PRIMARY_REQUIRED.get())) {
+			return;
+		}
+		if (REPLICA_HELD.get().get() > 0) {
+			throw new IllegalStateException(
+					"read-only transaction is already using a replica connection, "
+							+ "primary reads must run in a read-write transaction or before its first statement");
+		}
+		PRIMARY_REQUIRED.set(Boolean.TRUE);
+		TransactionSynchronizationManager
+				.registerSynchronization(new TransactionSynchronizationAdapter() {
+					@Override
+					public void afterCompletion(int status) {
+						PRIMARY_REQUIRED.remove();
+					}
+				});
+	}
+
+	/**
+	 * 当前线程接下来获取的连接固定使用主库, 直到对应的{@link #endPrimary()}, 可嵌套; 连接延迟获取,
+	 * 范围需覆盖使用连接的整个独立事务
+	 */
+	public static void beginPrimary() {
+		Integer depth = PRIMARY_PINNED.get();
+		PRIMARY_PINNED.set(null == depth ? 1 : depth + 1);
+	}
+
+	/**
+	 * 结束{@link #beginPrimary()}
+	 */
+	public static void endPrimary() {
+		Integer depth = PRIMARY_PINNED.get();
+		if (null == depth || depth <= 1) {
+			PRIMARY_PINNED.remove();
+		} else {
+			PRIMARY_PINNED.set(depth - 1);
+		}
+	}
+
+	@Override
+	public Connection getConnection() throws SQLException {
+		return getConnection(null, null);
+	}
+
+	@Override
+	public Connection getConnection(String username, String password)
+			throws SQLException {
+		int replica = selectReplica();
+		if (replica >= 0) {
+			try {
+				Connection connection = connect(replicas.get(replica),
+						username, password);
+				return borrow(connection, borrowed[replica],
+						TransactionSynchronizationManager
+								.isSynchronizationActive() ? REPLICA_HELD
+								.get() : null);
+			} catch (SQLException e) {
+				log.warn("replica {} unavailable, reading from primary: {}",
+						replica, e.getMessage());
+			}
+		}
+		return connect(primary, username, password);
+	}
+
+	/**
+	 * 选择从库, 需要使用主库时返回-1
+	 */
+	private int selectReplica() {
+		if (replicas.isEmpty()
+				|| null != PRIMARY_PINNED.get()
+				|| !TransactionSynchronizationManager
+						.isCurrentTransactionReadOnly()
+				|| Boolean.TRUE.equals(PRIMARY_REQUIRED.get())
+				|| withinReadYourWritesWindow()) {
+			return -1;
+		}
+		if (LoadBalance.LEAST_LOADED == loadBalance) {
+			// 从轮询位置开始比较, 负载相同时依次分配
+			int start = (next.getAndIncrement() & Integer.MAX_VALUE)
+					% borrowed.length;
+			int selected = start;
+			for (int i = 1; i < borrowed.length; i++) {
+				int candidate = (start + i) % borrowed.length;
+				if (borrowed[candidate].get() < borrowed[selected].get()) {
+					selected = candidate;
+				}
+			}
+			return selected;
+		}
+		return (next.getAndIncrement() & Integer.MAX_VALUE) % borrowed.length;
+	}
+
+	private boolean withinReadYourWritesWindow() {
+		if (readYourWritesWindow <= 0) {
+			return false;
+		}
+		Long lastWrite = LAST_WRITE.get();
+		if (null == lastWrite) {
+			return false;
+		}
+		if (System.currentTimeMillis() - lastWrite < readYourWritesWindow) {
+			return true;
+		}
+		LAST_WRITE.remove();
+		return false;
+	}
+
+	private static Connection connect(DataSource dataSource, String username,
+			String password) throws SQLException {
+		return null == username ? dataSource.getConnection() : dataSource
+				.getConnection(username, password);
+	}
+
+	/**
+	 * 统计借出的从库连接数, 连接关闭时归还
+	 * @param held 借出线程在事务中持有的从库连接数, 不在事务中时为null
+	 */
+	private static Connection borrow(final Connection connection,
+			final AtomicInteger counter, final AtomicInteger held) {
+		counter.incrementAndGet();
+		if (null != held) {
+			held.incrementAndGet();
+		}
+		return (Connection) Proxy.newProxyInstance(
+				ReplicaRoutingDataSource.class.getClassLoader(),
+				new Class<?>[] { Connection.class }, new InvocationHandler() {
+					private boolean closed;
+
+					@Override
+					public Object invoke(Object proxy, Method method,
+							Object[] args) throws Throwable {
+						String name = method.getName();
+						if ("equals".equals(name)) {
+							return proxy == args[0];
+						} else if ("hashCode".equals(name)) {
+							return System.identityHashCode(proxy);
+						} else if ("close".equals(name) && !closed) {
+							closed = true;
+							counter.decrementAndGet();
+							if (null != held) {
+								held.decrementAndGet();
+							}
+						}
+						try {
+							return method.invoke(connection, args);
+						} catch (InvocationTargetException e) {
+							throw e.getTargetException();
+						}
+					}
+				});
+	}
+
+	/**
+	 * 当前各从库借出的连接数
+	 * @return
+	 */
+	public int[] getBorrowedConnections() {
+		int[] counts = new int[borrowed.length];
+		for (int i = 0; i < counts.length; i++) {
+			counts[i] = borrowed[i].get();
+		}
+		return counts;
+	}
+}
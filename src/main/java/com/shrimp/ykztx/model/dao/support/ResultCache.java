@@ -0,0 +1,232 @@
+package com.shrimp.ykztx.model.dao.support;
+
+import java.io.Serializable;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 查询结果缓存, 按实体类型分区, 以规范化后的查询条件和分页窗口为key, 只缓存ID列表(及总数), 不缓存实体
+ * <p>
+ * 每个分区按LRU淘汰, 条目在有效期(ttl)后失效; 实体发生写操作时通过{@link #invalidate(Class)}清空该实体(及其父类)的分区.
+ * 同一key并发未命中时只有一个线程查询数据库, 其他线程等待其结果({@link Region#get(String, long, Loader)}).
+ * 缓存只在当前JVM内有效, 其他节点或绕过DAO的写入只能依赖ttl过期
+ */
+public final class ResultCache {
+
+	private static final ConcurrentMap<String, Region> REGIONS = new ConcurrentHashMap<String, Region>();
+
+	private ResultCache() {
+	}
+
+	/**
+	 * 获取实体的缓存分区, 不存在时按maxEntries创建
+	 * @param entityClass 实体类
+	 * @param maxEntries 分区最多缓存的条目数
+	 * @return 缓存分区
+	 */
+	public static Region region(Class<?> entityClass, int maxEntries) {
+		Region region = REGIONS.get(entityClass.getName());
+		if (null == region) {
+			region = new Region(maxEntries);
+			Region existing = REGIONS.putIfAbsent(entityClass.getName(), region);
+			if (null != existing) {
+				region = existing;
+			}
+		}
+		return region;
+	}
+
+	/**
+	 * 实体写入后清空该实体及其父类的缓存分区
+	 * @param entityClass 被写入的实体类
+	 */
+	public static void invalidate(Class<?> entityClass) {
+		for (Class<?> c = entityClass; null != c && Object.class != c; c = c
+				.getSuperclass()) {
+			Region region = REGIONS.get(c.getName());
+			if (null != region) {
+				region.clear();
+			}
+		}
+	}
+
+	/**
+	 * 未命中时执行的查询
+	 */
+	public interface Loader {
+		Result load();
+	}
+
+	/**
+	 * 单个实体的缓存分区
+	 */
+	public static final class Region {
+		private final Map<String, Result> entries;
+		/** 正在查询的key, 写入时清空, 之后的请求不再等待写入前开始的查询 */
+		private final ConcurrentMap<String, FutureTask<Result>> loading = new ConcurrentHashMap<String, FutureTask<Result>>();
+		private final AtomicLong generation = new AtomicLong();
+		private final AtomicLong hits = new AtomicLong();
+		private final AtomicLong misses = new AtomicLong();
+		private final AtomicLong waits = new AtomicLong();
+
+		Region(final int maxEntries) {
+			this.entries = new LinkedHashMap<String, Result>(16, 0.75f, true) {
+				private static final long serialVersionUID = 1L;
+
+				@Override
+				protected boolean removeEldestEntry(
+						Map.Entry<String, Result> eldest) {
+					return size() > maxEntries;
+				}
+			};
+		}
+
+		/**
+		 * 获取缓存的结果, 未命中时由loader查询并缓存; 同一key同时只有一个loader执行, 其他线程等待其结果
+		 * @param key 规范化后的查询条件和分页窗口
+		 * @param ttlMillis 有效期(毫秒)
+		 * @param loader 查询
+		 * @return 结果
+		 */
+		public Result get(String key, long ttlMillis, final Loader loader) {
+			Result result = cached(key, ttlMillis);
+			if (null != result) {
+				hits.incrementAndGet();
+				return result;
+			}
+			final long generation = this.generation.get();
+			FutureTask<Result> task = new FutureTask<Result>(
+					new Callable<Result>() {
+						@Override
+						public Result call() {
+							return loader.load();
+						}
+					});
+			FutureTask<Result> running = loading.putIfAbsent(key, task);
+			if (null != running) {
+				waits.incrementAndGet();
+				return await(running, loader);
+			}
+			misses.incrementAndGet();
+			try {
+				task.run();
+				result = await(task, loader);
+				put(key, result, generation);
+				return result;
+			} finally {
+				loading.remove(key, task);
+			}
+		}
+
+		private Result cached(String key, long ttlMillis) {
+			synchronized (entries) {
+				Result result = entries.get(key);
+				if (null != result
+						&& System.currentTimeMillis() - result.createdAt > ttlMillis) {
+					entries.remove(key);
+					result = null;
+				}
+				return result;
+			}
+		}
+
+		private void put(String key, Result result, long generation) {
+			synchronized (entries) {
+				if (this.generation.get() == generation) {
+					entries.put(key, result);
+				}
+			}
+		}
+
+		/**
+		 * 等待查询结果, 查询失败时抛出原异常, 等待被中断时自行查询
+		 */
+		private static Result await(FutureTask<Result> task, Loader loader) {
+			try {
+				return task.get();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				return loader.load();
+			} catch (ExecutionException e) {
+				if (e.getCause() instanceof RuntimeException) {
+					throw (RuntimeException) e.getCause();
+				}
+				if (e.getCause() instanceof Error) {
+					throw (Error) e.getCause();
+				}
+				throw new IllegalStateException(e.getCause());
+			}
+		}
+
+		void clear() {
+			synchronized (entries) {
+				generation.incrementAndGet();
+				entries.clear();
+			}
+			loading.clear();
+		}
+
+		public int size() {
+			synchronized (entries) {
+				return entries.size();
+			}
+		}
+
+		public long getHits() {
+			return hits.get();
+		}
+
+		public long getMisses() {
+			return misses.get();
+		}
+
+		/**
+		 * @return 未命中时等待其他线程查询结果的次数
+		 */
+		public long getWaits() {
+			return waits.get();
+		}
+	}
+
+	/**
+	 * 缓存的查询结果
+	 */
+	public static final class Result {
+		private final List<Serializable> ids;
+		private final long total;
+		private final boolean hasNext;
+		private final long createdAt;
+
+		/**
+		 * @param ids 按查询顺序排列的ID
+		 * @param total 总数, 未计算时为-1
+		 * @param hasNext 是否有下一页
+		 */
+		public Result(List<Serializable> ids, long total, boolean hasNext) {
+			this.ids = Collections.unmodifiableList(ids);
+			this.total = total;
+			this.hasNext = hasNext;
+			this.createdAt = System.currentTimeMillis();
+		}
+
+		public List<Serializable> getIds() {
+			return ids;
+		}
+
+		public long getTotal() {
+			return total;
+		}
+
+		public boolean isHasNext() {
+			return hasNext;
+		}
+	}
+}
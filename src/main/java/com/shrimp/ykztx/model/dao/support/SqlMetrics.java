@@ -0,0 +1,219 @@
+package com.shrimp.ykztx.model.dao.support;
+
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.codahale.metrics.Counter;
+import com.codahale.metrics.Histogram;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Timer;
+
+/**
+ * 按SQL指纹(字面量替换为?, IN列表合并, 空白压缩)统计执行次数、耗时分布、行数和错误数,
+ * 耗时超过阈值的语句连同绑定参数记录到慢查询日志(logger: com.shrimp.ykztx.sql.slow)
+ * <p>
+ * 指标名为 sql.&lt;指纹&gt;.time / .rows / .errors, 指纹数量超过上限后归入 sql.other.
+ * 原始SQL到指纹的映射会被缓存, Hibernate生成的SQL字符串固定, 每种SQL只规范化一次
+ */
+public class SqlMetrics {
+
+	public static final String PREFIX = "sql";
+	public static final String OTHER = "other";
+
+	private static final Logger slowLog = LoggerFactory
+			.getLogger("com.shrimp.ykztx.sql.slow");
+
+	private final MetricRegistry registry;
+	private final long slowThresholdNanos;
+	private final int maxFingerprints;
+	private final ConcurrentMap<String, Stats> bySql = new ConcurrentHashMap<String, Stats>();
+	private final ConcurrentMap<String, Stats> byFingerprint = new ConcurrentHashMap<String, Stats>();
+
+	/**
+	 * @param registry 指标注册表
+	 * @param slowThresholdMillis 慢查询阈值(毫秒), 小于0时不记录慢查询
+	 * @param maxFingerprints 最多统计的指纹数
+	 */
+	public SqlMetrics(MetricRegistry registry, long slowThresholdMillis,
+			int maxFingerprints) {
+		this.registry = registry;
+		this.slowThresholdNanos = slowThresholdMillis < 0 ? Long.MAX_VALUE
+				: TimeUnit.MILLISECONDS.toNanos(slowThresholdMillis);
+		this.maxFingerprints = maxFingerprints;
+	}
+
+	/**
+	 * 获取SQL对应的统计项
+	 * @param sql 原始SQL
+	 * @return
+	 */
+	public Stats stats(String sql) {
+		Stats stats = bySql.get(sql);
+		if (null != stats) {
+			return stats;
+		}
+		String fingerprint = fingerprint(sql);
+		stats = byFingerprint.get(fingerprint);
+		if (null == stats) {
+			if (byFingerprint.size() >= maxFingerprints) {
+				fingerprint = OTHER;
+			}
+			stats = new Stats(fingerprint);
+			Stats existing = byFingerprint.putIfAbsent(fingerprint, stats);
+			if (null != existing) {
+				stats = existing;
+			}
+		}
+		if (bySql.size() < maxFingerprints * 4) {
+			bySql.putIfAbsent(sql, stats);
+		}
+		return stats;
+	}
+
+	/**
+	 * 记录一次执行
+	 * @param sql 原始SQL
+	 * @param nanos 耗时(纳秒)
+	 * @param params 绑定参数, 可为null
+	 */
+	public void executed(String sql, long nanos, Object[] params) {
+		stats(sql).time.update(nanos, TimeUnit.NANOSECONDS);
+		if (nanos >= slowThresholdNanos) {
+			slowLog.warn("{}ms {} {}", new Object[] {
+					TimeUnit.NANOSECONDS.toMillis(nanos), sql,
+					null == params ? "[]" : Arrays.deepToString(params) });
+		}
+	}
+
+	/**
+	 * 记录返回(或影响)的行数
+	 * @param sql 原始SQL
+	 * @param rows 行数
+	 */
+	public void rows(String sql, long rows) {
+		stats(sql).rows.update(rows);
+	}
+
+	/**
+	 * 记录执行失败
+	 * @param sql 原始SQL
+	 * @param params 绑定参数, 可为null
+	 * @param e 异常
+	 */
+	public void failed(String sql, Object[] params, Throwable e) {
+		stats(sql).errors.inc();
+		slowLog.debug("failed {} {}: {}", new Object[] { sql,
+				null == params ? "[]" : Arrays.deepToString(params), e });
+	}
+
+	/**
+	 * 规范化SQL: 字符串和数字字面量替换为?, IN列表合并为 in (?), 连续空白合并为一个空格
+	 * @param sql 原始SQL
+	 * @return 指纹
+	 */
+	public static String fingerprint(String sql) {
+		int length = sql.length();
+		StringBuilder sb = new StringBuilder(length);
+		int i = 0;
+		while (i < length) {
+			char c = sql.charAt(i);
+			if (c == '\'') {
+				// 字符串字面量, ''为转义的单引号
+				i++;
+				while (i < length) {
+					if (sql.charAt(i) == '\'') {
+						if (i + 1 < length && sql.charAt(i + 1) == '\'') {
+							i += 2;
+							continue;
+						}
+						break;
+					}
+					i++;
+				}
+				i++;
+				sb.append('?');
+			} else if (Character.isDigit(c)
+					&& (sb.length() == 0 || !isIdentifierPart(sb.charAt(sb
+							.length() - 1)))) {
+				while (i < length
+						&& (Character.isDigit(sql.charAt(i)) || sql.charAt(i) == '.')) {
+					i++;
+				}
+				sb.append('?');
+			} else if (Character.isWhitespace(c)) {
+				while (i < length && Character.isWhitespace(sql.charAt(i))) {
+					i++;
+				}
+				if (sb.length() > 0) {
+					sb.append(' ');
+				}
+			} else {
+				sb.append(Character.toLowerCase(c));
+				i++;
+			}
+		}
+		return collapseLists(sb.toString().trim());
+	}
+
+	/**
+	 * 将 (?, ?, ?) 合并为 (?)
+	 */
+	private static String collapseLists(String sql) {
+		int start = sql.indexOf("(?,");
+		if (start < 0) {
+			return sql;
+		}
+		StringBuilder sb = new StringBuilder(sql.length());
+		int from = 0;
+		while (start >= 0) {
+			int end = start + 2;
+			while (end < sql.length()) {
+				char c = sql.charAt(end);
+				if (c != '?' && c != ',' && c != ' ') {
+					break;
+				}
+				end++;
+			}
+			if (end < sql.length() && sql.charAt(end) == ')') {
+				sb.append(sql, from, start).append("(?)");
+				from = end + 1;
+			} else {
+				sb.append(sql, from, end);
+				from = end;
+			}
+			start = sql.indexOf("(?,", from);
+		}
+		return sb.append(sql, from, sql.length()).toString();
+	}
+
+	private static boolean isIdentifierPart(char c) {
+		return Character.isLetterOrDigit(c) || c == '_' || c == '$';
+	}
+
+	/**
+	 * 单个指纹的指标
+	 */
+	public final class Stats {
+		private final String fingerprint;
+		final Timer time;
+		final Histogram rows;
+		final Counter errors;
+
+		Stats(String fingerprint) {
+			this.fingerprint = fingerprint;
+			String name = MetricRegistry.name(PREFIX, fingerprint);
+			this.time = registry.timer(name + ".time");
+			this.rows = registry.histogram(name + ".rows");
+			this.errors = registry.counter(name + ".errors");
+		}
+
+		public String getFingerprint() {
+			return fingerprint;
+		}
+	}
+}
@@ -0,0 +1,288 @@
+package com.shrimp.ykztx.model.dao.support;
+
+import java.io.Serializable;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.util.Assert;
+
+import com.codahale.metrics.Counter;
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Timer;
+
+/**
+ * 字段更新的写后缓冲(write-behind), 按ID合并更新: 普通字段后写覆盖先写, 计数字段累加增量
+ * <p>
+ * 缓冲的ID数达到maxPending时立即在后台刷新, 否则每隔flushIntervalMillis刷新一次; 同时只有一个刷新在执行,
+ * 同一ID的更新按提交顺序写入. 刷新失败时更新并回缓冲区(与之后的更新合并)等待下次刷新.
+ * 直接写入某个ID前调用{@link #flush(Serializable)}, 保证缓冲中较早的更新先写入; 调用方已在事务中时用
+ * {@link #flush(Serializable, Flusher)}在该事务中写入(避免等待本事务持有的行锁), 事务回滚时用{@link #requeue(Map)}放回.
+ * {@link #close()}停止定时刷新并写入剩余的更新. 缓冲中的更新在进程崩溃时丢失, 只适合可容忍丢失的统计类字段
+ */
+public class WriteBehindBuffer {
+
+	private static final Logger log = LoggerFactory
+			.getLogger(WriteBehindBuffer.class);
+
+	/**
+	 * 写入一批合并后的更新
+	 */
+	public interface Flusher {
+		void flush(Map<Serializable, Update> updates);
+	}
+
+	private final String name;
+	private final int maxPending;
+	private final Flusher flusher;
+	private final Object flushLock = new Object();
+	private final AtomicBoolean flushScheduled = new AtomicBoolean();
+	private final ScheduledExecutorService scheduler;
+	private final Timer flushTimer;
+	private final Counter failures;
+	private Map<Serializable, Update> pending = new LinkedHashMap<Serializable, Update>();
+	private volatile boolean closed;
+
+	/**
+	 * @param name 名称(实体名), 用于线程名和日志
+	 * @param maxPending 缓冲的ID数达到该值时立即刷新
+	 * @param flushIntervalMillis 定时刷新的间隔(毫秒)
+	 * @param flusher 写入
+	 * @param metrics 指标注册表, 注册 depth(缓冲的ID数)、flush(刷新耗时)、failures(刷新失败次数)
+	 * @param metricPrefix 指标名前缀
+	 */
+	public WriteBehindBuffer(final String name, int maxPending,
+			long flushIntervalMillis, Flusher flusher, MetricRegistry metrics,
+			String metricPrefix) {
+		Assert.isTrue(maxPending > 0);
+		Assert.isTrue(flushIntervalMillis > 0);
+		Assert.notNull(flusher);
+		this.name = name;
+		this.maxPending = maxPending;
+		this.flusher = flusher;
+		this.flushTimer = metrics.timer(MetricRegistry.name(metricPrefix,
+				"flush"));
+		this.failures = metrics.counter(MetricRegistry.name(metricPrefix,
+				"failures"));
+		String depthName = MetricRegistry.name(metricPrefix, "depth");
+		metrics.remove(depthName);
+		metrics.register(depthName, new Gauge<Integer>() {
+			@Override
+			public Integer getValue() {
+				return size();
+			}
+		});
+		this.scheduler = Executors
+				.newSingleThreadScheduledExecutor(new ThreadFactory() {
+					@Override
+					public Thread newThread(Runnable r) {
+						Thread thread = new Thread(r, "write-behind-" + name);
+						thread.setDaemon(true);
+						return thread;
+					}
+				});
+		scheduler.scheduleWithFixedDelay(new Runnable() {
+			@Override
+			public void run() {
+				flushQuietly();
+			}
+		}, flushIntervalMillis, flushIntervalMillis, TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * 缓冲一次更新
+	 * @param id 实体ID
+	 * @param sets 普通字段的新值
+	 * @param increments 计数字段的增量
+	 */
+	public void add(Serializable id, Map<String, Object> sets,
+			Map<String, Long> increments) {
+		Assert.notNull(id);
+		Assert.state(!closed, "write-behind buffer " + name + " is closed");
+		Update update = new Update();
+		update.sets.putAll(sets);
+		update.increments.putAll(increments);
+		int size;
+		synchronized (this) {
+			Update existing = pending.get(id);
+			if (null == existing) {
+				pending.put(id, update);
+			} else {
+				existing.merge(update);
+			}
+			size = pending.size();
+		}
+		if (size >= maxPending && flushScheduled.compareAndSet(false, true)) {
+			scheduler.execute(new Runnable() {
+				@Override
+				public void run() {
+					flushScheduled.set(false);
+					flushQuietly();
+				}
+			});
+		}
+	}
+
+	/**
+	 * 立即写入缓冲中的全部更新
+	 * @throws RuntimeException 写入失败, 更新已放回缓冲区
+	 */
+	public void flush() {
+		flush(flusher);
+	}
+
+	/**
+	 * 使用指定的写入立即写入缓冲中的全部更新, 正在执行的刷新结束后才开始
+	 * @param writer 写入, 如在调用方事务中写入
+	 * @throws RuntimeException 写入失败, 更新已放回缓冲区
+	 */
+	public void flush(Flusher writer) {
+		synchronized (flushLock) {
+			Map<Serializable, Update> batch;
+			synchronized (this) {
+				if (pending.isEmpty()) {
+					return;
+				}
+				batch = pending;
+				pending = new LinkedHashMap<Serializable, Update>();
+			}
+			write(batch, writer);
+		}
+	}
+
+	/**
+	 * 立即写入一个ID缓冲中的更新, 正在执行的刷新结束后才开始
+	 * @param id 实体ID
+	 * @throws RuntimeException 写入失败, 更新已放回缓冲区
+	 */
+	public void flush(Serializable id) {
+		flush(id, flusher);
+	}
+
+	/**
+	 * 使用指定的写入立即写入一个ID缓冲中的更新, 正在执行的刷新结束后才开始
+	 * @param id 实体ID
+	 * @param writer 写入, 如在调用方事务中写入
+	 * @throws RuntimeException 写入失败, 更新已放回缓冲区
+	 */
+	public void flush(Serializable id, Flusher writer) {
+		synchronized (flushLock) {
+			Map<Serializable, Update> batch = new LinkedHashMap<Serializable, Update>();
+			synchronized (this) {
+				Update update = pending.remove(id);
+				if (null == update) {
+					return;
+				}
+				batch.put(id, update);
+			}
+			write(batch, writer);
+		}
+	}
+
+	private void write(Map<Serializable, Update> batch, Flusher writer) {
+		Timer.Context context = flushTimer.time();
+		try {
+			writer.flush(batch);
+		} catch (RuntimeException e) {
+			failures.inc();
+			requeue(batch);
+			throw e;
+		} finally {
+			context.stop();
+		}
+	}
+
+	private void flushQuietly() {
+		try {
+			flush();
+		} catch (RuntimeException e) {
+			log.error("write-behind flush of " + name
+					+ " failed, updates kept for the next flush", e);
+		}
+	}
+
+	/**
+	 * 写入失败(或写入所在的事务回滚)的更新放回缓冲区, 期间新到的同ID更新较新, 优先保留
+	 * @param batch 已从缓冲区取出的更新
+	 */
+	public synchronized void requeue(Map<Serializable, Update> batch) {
+		Map<Serializable, Update> merged = new LinkedHashMap<Serializable, Update>(
+				batch);
+		for (Map.Entry<Serializable, Update> entry : pending.entrySet()) {
+			Update older = merged.get(entry.getKey());
+			if (null == older) {
+				merged.put(entry.getKey(), entry.getValue());
+			} else {
+				older.merge(entry.getValue());
+			}
+		}
+		pending = merged;
+	}
+
+	/**
+	 * 缓冲的ID数
+	 * @return
+	 */
+	public synchronized int size() {
+		return pending.size();
+	}
+
+	/**
+	 * 停止定时刷新并写入剩余的更新, 之后不再接受更新
+	 */
+	public void close() {
+		closed = true;
+		scheduler.shutdown();
+		try {
+			scheduler.awaitTermination(30, TimeUnit.SECONDS);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		flush();
+		log.info("write-behind buffer {} drained", name);
+	}
+
+	/**
+	 * 一个ID上合并后的更新, 字段名按字典序排列(相同字段集合的更新可共用一条语句)
+	 */
+	public static final class Update {
+		private final Map<String, Object> sets = new TreeMap<String, Object>();
+		private final Map<String, Long> increments = new TreeMap<String, Long>();
+
+		/**
+		 * 合并较新的更新: 普通字段取新值, 计数字段累加
+		 */
+		void merge(Update newer) {
+			sets.putAll(newer.sets);
+			for (Map.Entry<String, Long> entry : newer.increments.entrySet()) {
+				Long old = increments.get(entry.getKey());
+				increments.put(entry.getKey(), null == old ? entry.getValue()
+						: old + entry.getValue());
+			}
+		}
+
+		public Map<String, Object> getSets() {
+			return sets;
+		}
+
+		public Map<String, Long> getIncrements() {
+			return increments;
+		}
+
+		/**
+		 * 字段集合, 用于按语句分组
+		 * @return
+		 */
+		public String getShape() {
+			return sets.keySet() + "+" + increments.keySet();
+		}
+	}
+}
@@ -0,0 +1,18 @@
+/**
+ * 实体类
+ * <p>
+ * 实体ID使用池化ID生成器, 批量insert时不需要每条记录回查自增主键:
+ * <pre>
+ * &#64;Id
+ * &#64;GeneratedValue(generator = "pooled")
+ * private String id;
+ * </pre>
+ */
+@GenericGenerator(name = "pooled", strategy = "com.shrimp.ykztx.model.dao.support.PooledIdGenerator", parameters = { @Parameter(name = PooledIdGenerator.BLOCK_SIZE, value = "100") })
+package com.shrimp.ykztx.model;
+
+import org.hibernate.annotations.GenericGenerator;
+import org.hibernate.annotations.Parameter;
+
+import com.shrimp.ykztx.model.dao.support.PooledIdGenerator;
+
@@ -1,15 +1,48 @@
 package com.shrimp.ykztx.web.controller;
 
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+
 import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.hibernate.criterion.DetachedCriteria;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.util.DigestUtils;
 
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
 import com.shrimp.ykztx.model.User;
+import com.shrimp.ykztx.model.dao.BaseDAO;
+import com.shrimp.ykztx.model.dao.RowHandler;
+import com.shrimp.ykztx.model.dao.support.EntityVersions;
+import com.shrimp.ykztx.web.model.Page;
+import com.shrimp.ykztx.web.model.Page.TotalMode;
+import com.shrimp.ykztx.web.model.Result;
 
 public class BaseController {
 	protected static final String CURRENT_USER_SESSION_KEY = "loginUser";
 
+	/** 流式输出时每输出多少条记录刷新一次响应 */
+	protected static final int STREAM_FLUSH_ROWS = 100;
+
+	protected static final ObjectMapper JSON = new ObjectMapper()
+			.disable(SerializationFeature.FAIL_ON_EMPTY_BEANS);
+
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+
+	/** 流式输出失败时返回给客户端的提示, 不包含异常信息(可能含SQL、表结构等内部细节) */
+	private static final String STREAM_FAILED_MESSAGE = "query failed, the page is incomplete";
+
+	protected Logger log = LoggerFactory.getLogger(getClass());
+
 	/**
 	 * 获取当前登录的用户
-	 * 
+	 *
 	 * @param request
 	 * @return
 	 */
@@ -17,4 +50,189 @@ public class BaseController {
 		return (User) request.getSession().getAttribute(
 				CURRENT_USER_SESSION_KEY);
 	}
+
+	/**
+	 * 列表接口的条件请求(Conditional GET): 根据实体修改版本和查询参数生成ETag, 并设置Last-Modified;
+	 * 客户端的If-None-Match(优先)或If-Modified-Since与之匹配时返回304, 调用方应直接返回, 不再查询:
+	 * <pre>
+	 * if (checkNotModified(request, response, User.class, pageIndex, pageSize)) {
+	 * 	return null;
+	 * }
+	 * return new Result&lt;Page&lt;User&gt;&gt;(userDAO.findByPage(dc, pageIndex, pageSize, false));
+	 * </pre>
+	 * 请求URI和查询串已包含在ETag中, params用于补充其他影响结果的参数(如当前用户).
+	 * 版本只记录当前JVM中经过Hibernate的写入, 多节点部署时其他节点的写入不会使ETag失效
+	 * @param request
+	 * @param response
+	 * @param entityClass 列表的实体类, 查询涉及多个实体时传入版本变化会影响结果的实体
+	 * @param params 其他影响结果的参数
+	 * @return 未修改(已设置304)时返回true
+	 */
+	protected boolean checkNotModified(HttpServletRequest request,
+			HttpServletResponse response, Class<?> entityClass,
+			Object... params) {
+		String method = request.getMethod();
+		if (!"GET".equals(method) && !"HEAD".equals(method)) {
+			return false;
+		}
+		EntityVersions.Version version = EntityVersions.get(entityClass);
+		// 先读修改时间再读计数, 并发写入时宁可生成较旧的ETag(下次请求重新查询)
+		long modifiedAt = version.getModifiedAt();
+		String etag = etag(request, version.getCounter(), params);
+		// Last-Modified精确到秒, 修改所在的秒结束前不输出, 避免同一秒内的后续写入被忽略
+		long lastModified = (modifiedAt / 1000 + 1) * 1000;
+		boolean lastModifiedStable = System.currentTimeMillis() >= lastModified;
+
+		response.setHeader("ETag", etag);
+		if (lastModifiedStable) {
+			response.setDateHeader("Last-Modified", lastModified);
+		}
+		response.setHeader("Cache-Control", "no-cache");
+
+		boolean notModified;
+		String ifNoneMatch = request.getHeader("If-None-Match");
+		if (null != ifNoneMatch) {
+			notModified = matches(ifNoneMatch, etag);
+		} else {
+			long ifModifiedSince = -1;
+			try {
+				ifModifiedSince = request.getDateHeader("If-Modified-Since");
+			} catch (IllegalArgumentException e) {
+				// 无法解析的日期按未提供处理
+			}
+			notModified = lastModifiedStable && ifModifiedSince >= lastModified;
+		}
+		if (notModified) {
+			response.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+		}
+		return notModified;
+	}
+
+	private static String etag(HttpServletRequest request, long counter,
+			Object[] params) {
+		StringBuilder sb = new StringBuilder(request.getRequestURI());
+		if (null != request.getQueryString()) {
+			sb.append('?').append(request.getQueryString());
+		}
+		sb.append('#').append(Arrays.deepToString(params));
+		return "W/\"" + Long.toHexString(EntityVersions.EPOCH) + '-'
+				+ Long.toHexString(counter) + '-'
+				+ DigestUtils.md5DigestAsHex(sb.toString().getBytes(UTF8))
+				+ '"';
+	}
+
+	/**
+	 * If-None-Match是否与ETag匹配(弱比较)
+	 */
+	private static boolean matches(String ifNoneMatch, String etag) {
+		String opaque = etag.substring(2);
+		for (String candidate : ifNoneMatch.split(",")) {
+			candidate = candidate.trim();
+			if ("*".equals(candidate)) {
+				return true;
+			}
+			if (candidate.startsWith("W/")) {
+				candidate = candidate.substring(2);
+			}
+			if (opaque.equals(candidate)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * 以流的方式输出分页查询结果(Result&lt;Page&gt;格式的JSON), 记录从DAO游标中逐条序列化到响应流,
+	 * 不在内存中保存整页数据. 响应头(header)在查询前输出, 之后每{@link #STREAM_FLUSH_ROWS}条刷新一次(分块传输):
+	 * <pre>
+	 * {"header":{...},"body":{"list":[...],"pageIndex":1,"total":100,"pageSize":20,"totalMode":"EXACT","hasNext":true}}
+	 * </pre>
+	 * 开始输出后查询失败时无法再修改header, body中追加error字段({"errorCode","message"}, 通用提示, 异常详情只记录日志)后结束输出.
+	 * 调用方需保证查询在事务中执行, 输出期间占用数据库连接
+	 * @param response
+	 * @param dao
+	 * @param dc 查询条件
+	 * @param pageIndex 当前页(0~n)
+	 * @param pageSize 页面大小
+	 * @param totalMode 总数计算方式
+	 * @throws IOException
+	 */
+	protected <T> void writePage(HttpServletResponse response,
+			BaseDAO<T, ?> dao, DetachedCriteria dc, int pageIndex,
+			int pageSize, TotalMode totalMode) throws IOException {
+		response.setContentType("application/json;charset=UTF-8");
+		final JsonGenerator generator = JSON.getFactory().createGenerator(
+				response.getOutputStream(), JsonEncoding.UTF8);
+		generator.writeStartObject();
+		generator.writeObjectField("header",
+				new Result<Object>((Object) null).getHeader());
+		generator.writeObjectFieldStart("body");
+		generator.writeArrayFieldStart("list");
+		generator.flush();
+		response.flushBuffer();
+
+		StreamingRowHandler<T> handler = new StreamingRowHandler<T>(
+				generator, response);
+		Page<T> page = null;
+		RuntimeException failure = null;
+		try {
+			page = dao.findByPage(dc, pageIndex, pageSize, totalMode, handler);
+		} catch (RuntimeException e) {
+			failure = e;
+		}
+		if (null != handler.error) {
+			// 客户端断开等输出错误, 不再继续写
+			throw handler.error;
+		}
+		generator.writeEndArray();
+		if (null != page) {
+			generator.writeNumberField("pageIndex", page.getPageIndex());
+			generator.writeNumberField("total", page.getTotal());
+			generator.writeNumberField("pageSize", page.getPageSize());
+			generator.writeStringField("totalMode", page.getTotalMode()
+					.name());
+			generator.writeBooleanField("hasNext", page.isHasNext());
+		} else {
+			log.error("streaming page failed after " + handler.rows
+					+ " rows", failure);
+			generator.writeObjectFieldStart("error");
+			generator.writeStringField("errorCode", "STREAM_FAILED");
+			generator.writeStringField("message", STREAM_FAILED_MESSAGE);
+			generator.writeEndObject();
+		}
+		generator.writeEndObject();
+		generator.writeEndObject();
+		generator.close();
+	}
+
+	/**
+	 * 将记录逐条序列化到JSON输出
+	 */
+	private static final class StreamingRowHandler<T> implements RowHandler<T> {
+		private final JsonGenerator generator;
+		private final HttpServletResponse response;
+		private int rows;
+		private IOException error;
+
+		StreamingRowHandler(JsonGenerator generator,
+				HttpServletResponse response) {
+			this.generator = generator;
+			this.response = response;
+		}
+
+		@Override
+		public boolean handle(T row) {
+			try {
+				generator.writeObject(row);
+				if (++rows % STREAM_FLUSH_ROWS == 0) {
+					generator.flush();
+					response.flushBuffer();
+				}
+				return true;
+			} catch (IOException e) {
+				error = e;
+				return false;
+			}
+		}
+	}
 }
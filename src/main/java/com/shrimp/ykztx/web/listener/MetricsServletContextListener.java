@@ -0,0 +1,19 @@
+package com.shrimp.ykztx.web.listener;
+
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.SharedMetricRegistries;
+import com.codahale.metrics.servlets.MetricsServlet;
+
+/**
+ * 向MetricsServlet(/metrics, JSON, 仅限metrics角色访问, 见web.xml)提供应用共享的指标注册表, 与applicationContext中的metricRegistry为同一实例
+ */
+public class MetricsServletContextListener extends
+		MetricsServlet.ContextListener {
+
+	public static final String REGISTRY_NAME = "ykztx";
+
+	@Override
+	protected MetricRegistry getMetricRegistry() {
+		return SharedMetricRegistries.getOrCreate(REGISTRY_NAME);
+	}
+}
@@ -0,0 +1,56 @@
+package com.shrimp.ykztx.web.model;
+
+import java.util.List;
+
+/**
+ * 键集(seek)分页结果
+ *
+ * @param <T> entity
+ */
+public class KeysetPage<T> {
+	private int pageSize;
+	private boolean hasNext;
+	private String cursor; //下一页游标, 没有下一页时为null
+	private List<T> list;
+
+	public KeysetPage(int pageSize, boolean hasNext, String cursor, List<T> list) {
+		super();
+		this.pageSize = pageSize;
+		this.hasNext = hasNext;
+		this.cursor = cursor;
+		this.list = list;
+	}
+
+	public int getPageSize() {
+		return pageSize;
+	}
+
+	public void setPageSize(int pageSize) {
+		this.pageSize = pageSize;
+	}
+
+	public boolean isHasNext() {
+		return hasNext;
+	}
+
+	public void setHasNext(boolean hasNext) {
+		this.hasNext = hasNext;
+	}
+
+	public String getCursor() {
+		return cursor;
+	}
+
+	public void setCursor(String cursor) {
+		this.cursor = cursor;
+	}
+
+	public List<T> getList() {
+		return list;
+	}
+
+	public void setList(List<T> list) {
+		this.list = list;
+	}
+
+}
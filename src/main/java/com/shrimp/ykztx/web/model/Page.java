@@ -3,17 +3,42 @@ package com.shrimp.ykztx.web.model;
 import java.util.List;
 
 public class Page<T> {
+
+	/**
+	 * 总记录数的计算方式
+	 */
+	public enum TotalMode {
+		/** 每次执行count(*) */
+		EXACT,
+		/** count(*)结果按查询条件缓存, 有效期内复用, 实体写入时失效 */
+		CACHED,
+		/** 使用数据库统计信息估算, 无法估算时退化为CACHED */
+		ESTIMATED,
+		/** 不计算总数, 多查一条记录判断是否有下一页, total为-1 */
+		NONE
+	}
+
 	private int pageIndex; //start with 0
 	private long total;
 	private int pageSize;
 	private List<T> list;
+	private TotalMode totalMode;
+	private boolean hasNext;
 
 	public Page(int pageIndex, long total, int pageSize, List<T> list) {
+		this(pageIndex, total, pageSize, list, TotalMode.EXACT,
+				(long) pageIndex * pageSize < total);
+	}
+
+	public Page(int pageIndex, long total, int pageSize, List<T> list,
+			TotalMode totalMode, boolean hasNext) {
 		super();
 		this.pageIndex = pageIndex;
 		this.total = total;
 		this.pageSize = pageSize;
 		this.list = list;
+		this.totalMode = totalMode;
+		this.hasNext = hasNext;
 	}
 
 	public int getPageIndex() {
@@ -48,4 +73,20 @@ public class Page<T> {
 		this.list = list;
 	}
 
+	public TotalMode getTotalMode() {
+		return totalMode;
+	}
+
+	public void setTotalMode(TotalMode totalMode) {
+		this.totalMode = totalMode;
+	}
+
+	public boolean isHasNext() {
+		return hasNext;
+	}
+
+	public void setHasNext(boolean hasNext) {
+		this.hasNext = hasNext;
+	}
+
 }
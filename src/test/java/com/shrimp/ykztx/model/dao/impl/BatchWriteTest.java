@@ -0,0 +1,74 @@
+package com.shrimp.ykztx.model.dao.impl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.hibernate.Session;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.support.TransactionCallback;
+
+/**
+ * 批量写入只从调用方的Session中移除本批实体
+ */
+public class BatchWriteTest {
+
+	public static class ItemDAO extends DefaultBaseDAO<TestItem, Long> {
+
+		@Override
+		protected Class<TestItem> getEntityClass() {
+			return TestItem.class;
+		}
+	}
+
+	private TestDatabase db;
+	private ItemDAO dao;
+	private Long id;
+
+	@Before
+	public void setUp() {
+		db = new TestDatabase();
+		dao = db.init(new ItemDAO());
+		id = db.write(new TransactionCallback<Long>() {
+			@Override
+			public Long doInTransaction(TransactionStatus status) {
+				return dao.save(new TestItem("loaded", "a", 1)).getId();
+			}
+		});
+	}
+
+	@After
+	public void tearDown() {
+		db.close();
+	}
+
+	@Test
+	public void batchLeavesOtherEntitiesManaged() {
+		db.write(new TransactionCallback<Object>() {
+			@Override
+			public Object doInTransaction(TransactionStatus status) {
+				Session session = db.getSessionFactory().getCurrentSession();
+				TestItem loaded = dao.get(id);
+				List<TestItem> batch = new ArrayList<TestItem>();
+				for (int i = 0; i < 5; i++) {
+					batch.add(new TestItem("batch-" + i, "b", i));
+				}
+				dao.saveAll(batch, 2, false);
+				assertTrue(session.contains(loaded));
+				for (TestItem item : batch) {
+					assertFalse(session.contains(item));
+				}
+				// 仍受管理的实体的修改在提交时写入
+				loaded.setName("modified");
+				return null;
+			}
+		});
+		assertEquals("modified", db.fetch(id).getName());
+	}
+}
@@ -0,0 +1,124 @@
+package com.shrimp.ykztx.model.dao.impl;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.List;
+
+import org.hibernate.criterion.DetachedCriteria;
+import org.hibernate.criterion.Restrictions;
+import org.hibernate.type.IntegerType;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.support.TransactionCallback;
+
+import com.shrimp.ykztx.web.model.Page;
+import com.shrimp.ykztx.web.model.Page.TotalMode;
+
+/**
+ * 查询结果缓存和分页总数缓存的key: 不同的条件组合不能共用缓存
+ */
+public class CacheKeyTest {
+
+	public static class ItemDAO extends DefaultBaseDAO<TestItem, Long> {
+
+		@Override
+		protected Class<TestItem> getEntityClass() {
+			return TestItem.class;
+		}
+	}
+
+	private TestDatabase db;
+	private ItemDAO dao;
+
+	@Before
+	public void setUp() {
+		db = new TestDatabase();
+		dao = db.init(new ItemDAO());
+		db.write(new TransactionCallback<Object>() {
+			@Override
+			public Object doInTransaction(TransactionStatus status) {
+				dao.save(new TestItem("a", "b", 1));
+				dao.save(new TestItem("a", "c", 7));
+				return null;
+			}
+		});
+	}
+
+	@After
+	public void tearDown() {
+		db.close();
+	}
+
+	@Test
+	public void valueContainingSeparatorDoesNotCollide() {
+		// 两个条件与一个值为"a, category=b"的条件toString相同
+		DetachedCriteria two = DetachedCriteria.forClass(TestItem.class)
+				.add(Restrictions.eq("name", "a"))
+				.add(Restrictions.eq("category", "b"));
+		DetachedCriteria one = DetachedCriteria.forClass(TestItem.class).add(
+				Restrictions.eq("name", "a, category=b"));
+		assertEquals(1, list(two).size());
+		assertEquals(0, list(one).size());
+		assertEquals(1L, page(two).getTotal());
+		assertEquals(0L, page(one).getTotal());
+	}
+
+	@Test
+	public void valueTypeIsPartOfKey() {
+		DetachedCriteria name = DetachedCriteria.forClass(TestItem.class).add(
+				Restrictions.eq("name", "7"));
+		DetachedCriteria score = DetachedCriteria.forClass(TestItem.class)
+				.add(Restrictions.eq("score", 7));
+		assertEquals(0, list(name).size());
+		assertEquals(1, list(score).size());
+	}
+
+	@Test
+	public void sqlRestrictionIsNotCached() {
+		// sqlRestriction的toString不含参数值
+		assertEquals(2, list(scoreAbove(0)).size());
+		assertEquals(1, list(scoreAbove(5)).size());
+		assertEquals(2L, page(scoreAbove(0)).getTotal());
+		assertEquals(1L, page(scoreAbove(5)).getTotal());
+	}
+
+	@Test
+	public void writeInvalidatesCachedList() {
+		DetachedCriteria dc = DetachedCriteria.forClass(TestItem.class).add(
+				Restrictions.eq("category", "b"));
+		assertEquals(1, list(dc).size());
+		db.write(new TransactionCallback<Object>() {
+			@Override
+			public Object doInTransaction(TransactionStatus status) {
+				return dao.save(new TestItem("d", "b", 3));
+			}
+		});
+		assertEquals(2, list(dc).size());
+	}
+
+	private static DetachedCriteria scoreAbove(int score) {
+		return DetachedCriteria.forClass(TestItem.class).add(
+				Restrictions.sqlRestriction("{alias}.score > ?", score,
+						IntegerType.INSTANCE));
+	}
+
+	private List<?> list(final DetachedCriteria dc) {
+		return db.read(new TransactionCallback<List<?>>() {
+			@Override
+			public List<?> doInTransaction(TransactionStatus status) {
+				return dao.listByDC(dc, true);
+			}
+		});
+	}
+
+	private Page<TestItem> page(final DetachedCriteria dc) {
+		return db.read(new TransactionCallback<Page<TestItem>>() {
+			@Override
+			public Page<TestItem> doInTransaction(TransactionStatus status) {
+				return dao.findByPage(dc, 0, 10, true, TotalMode.CACHED);
+			}
+		});
+	}
+}
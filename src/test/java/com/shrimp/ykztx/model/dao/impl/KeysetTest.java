@@ -0,0 +1,152 @@
+package com.shrimp.ykztx.model.dao.impl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.hibernate.criterion.DetachedCriteria;
+import org.hibernate.criterion.Order;
+import org.hibernate.criterion.Restrictions;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.support.TransactionCallback;
+
+import com.shrimp.ykztx.model.dao.support.KeysetCursor;
+import com.shrimp.ykztx.web.model.KeysetPage;
+
+/**
+ * 键集(seek)分页: 逐页遍历与offset分页的顺序一致, 不跳过也不重复
+ */
+public class KeysetTest {
+
+	public static class ItemDAO extends DefaultBaseDAO<TestItem, Long> {
+
+		@Override
+		protected Class<TestItem> getEntityClass() {
+			return TestItem.class;
+		}
+	}
+
+	private TestDatabase db;
+	private ItemDAO dao;
+
+	@Before
+	public void setUp() {
+		db = new TestDatabase();
+		dao = db.init(new ItemDAO());
+		db.write(new TransactionCallback<Object>() {
+			@Override
+			public Object doInTransaction(TransactionStatus status) {
+				// 分数重复, 验证ID作为最后的排序字段
+				for (int i = 0; i < 23; i++) {
+					dao.save(new TestItem("item-" + i, i % 2 == 0 ? "a" : "b",
+							i % 5));
+				}
+				return null;
+			}
+		});
+	}
+
+	@After
+	public void tearDown() {
+		db.close();
+	}
+
+	@Test
+	public void pagesFollowOrderWithoutGapsOrRepeats() {
+		final DetachedCriteria dc = DetachedCriteria.forClass(TestItem.class)
+				.add(Restrictions.eq("category", "a"));
+		final Order[] orders = { Order.desc("score") };
+		List<Long> expected = db.read(new TransactionCallback<List<Long>>() {
+			@Override
+			public List<Long> doInTransaction(TransactionStatus status) {
+				return ids(dao.listByDC(DetachedCriteria
+						.forClass(TestItem.class)
+						.add(Restrictions.eq("category", "a"))
+						.addOrder(Order.desc("score")).addOrder(Order.asc("id"))));
+			}
+		});
+		assertEquals(12, expected.size());
+
+		List<Long> seen = new ArrayList<Long>();
+		String cursor = null;
+		int pages = 0;
+		do {
+			final String last = cursor;
+			KeysetPage<TestItem> page = db
+					.read(new TransactionCallback<KeysetPage<TestItem>>() {
+						@Override
+						public KeysetPage<TestItem> doInTransaction(
+								TransactionStatus status) {
+							return dao.findByKeyset(dc, orders, last, 5);
+						}
+					});
+			seen.addAll(ids(page.getList()));
+			cursor = page.getCursor();
+			pages++;
+		} while (null != cursor);
+		assertEquals(expected, seen);
+		assertEquals(3, pages);
+	}
+
+	@Test
+	public void lastPageHasNoCursor() {
+		KeysetPage<TestItem> page = db
+				.read(new TransactionCallback<KeysetPage<TestItem>>() {
+					@Override
+					public KeysetPage<TestItem> doInTransaction(
+							TransactionStatus status) {
+						return dao.findByKeyset(dao.getDC(), null,
+								(String) null, 100);
+					}
+				});
+		assertEquals(23, page.getList().size());
+		assertFalse(page.isHasNext());
+		assertNull(page.getCursor());
+	}
+
+	@Test
+	public void rejectsCriteriaWithOrderings() {
+		expectIllegalArgument(dao.getDC().addOrder(Order.asc("name")),
+				new Order[] { Order.desc("score") }, null);
+	}
+
+	@Test
+	public void rejectsCursorOfWrongType() {
+		// score是int, 游标中是字符串
+		expectIllegalArgument(dao.getDC(), new Order[] { Order.desc("score") },
+				KeysetCursor.encode(new Object[] { "3", 1L }));
+		// ID是Long, 游标中是Integer
+		expectIllegalArgument(dao.getDC(), new Order[] { Order.desc("score") },
+				KeysetCursor.encode(new Object[] { 3, 1 }));
+	}
+
+	private void expectIllegalArgument(final DetachedCriteria dc,
+			final Order[] orders, final String cursor) {
+		db.read(new TransactionCallback<Object>() {
+			@Override
+			public Object doInTransaction(TransactionStatus status) {
+				try {
+					dao.findByKeyset(dc, orders, cursor, 5);
+					fail("expected IllegalArgumentException");
+				} catch (IllegalArgumentException expected) {
+				}
+				return null;
+			}
+		});
+	}
+
+	private static List<Long> ids(List<?> items) {
+		List<Long> ids = new ArrayList<Long>();
+		for (Object item : items) {
+			ids.add(((TestItem) item).getId());
+		}
+		return ids;
+	}
+}
@@ -0,0 +1,147 @@
+package com.shrimp.ykztx.model.dao.impl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import javax.sql.DataSource;
+
+import org.hibernate.criterion.Projections;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.support.TransactionCallback;
+
+import com.shrimp.ykztx.model.dao.support.ReplicaRoutingDataSource;
+
+/**
+ * 主库 + 一个从库(两个独立的H2, 同一ID的行内容不同, 从而区分读到的库): 读、锁定读和DAO独立写事务的路由
+ */
+public class ReplicaRoutingTest {
+
+	public static class ItemDAO extends DefaultBaseDAO<TestItem, Long> {
+
+		@Override
+		protected Class<TestItem> getEntityClass() {
+			return TestItem.class;
+		}
+	}
+
+	private TestDatabase primary;
+	private TestDatabase replica;
+	private TestDatabase routed;
+	private ReplicaRoutingDataSource routing;
+	private ItemDAO dao;
+	private Long id;
+
+	@Before
+	public void setUp() {
+		DataSource primaryDataSource = TestDatabase.h2("primary");
+		DataSource replicaDataSource = TestDatabase.h2("replica");
+		routing = new ReplicaRoutingDataSource();
+		routing.setPrimary(primaryDataSource);
+		routing.setReplicas(Collections.singletonList(replicaDataSource));
+		routing.afterPropertiesSet();
+		routed = new TestDatabase(new LazyConnectionDataSourceProxy(routing));
+		dao = routed.init(new ItemDAO());
+
+		// 分别直接访问两个库, 建表并写入同一ID、不同内容的行
+		primary = new TestDatabase(primaryDataSource);
+		replica = new TestDatabase(replicaDataSource);
+		id = insert(primary, new TestItem("primary", "a", 1));
+		assertEquals(id, insert(replica, new TestItem("replica", "a", 1)));
+	}
+
+	@After
+	public void tearDown() {
+		routed.close();
+		replica.close();
+		primary.close();
+	}
+
+	@Test
+	public void readOnlyTransactionReadsReplica() {
+		assertEquals("replica", routed.read(new TransactionCallback<String>() {
+			@Override
+			public String doInTransaction(TransactionStatus status) {
+				return dao.get(id).getName();
+			}
+		}));
+		assertEquals("primary", routed.write(new TransactionCallback<String>() {
+			@Override
+			public String doInTransaction(TransactionStatus status) {
+				return dao.get(id).getName();
+			}
+		}));
+	}
+
+	@Test
+	public void lockedReadUsesPrimary() {
+		assertEquals("primary", routed.read(new TransactionCallback<String>() {
+			@Override
+			public String doInTransaction(TransactionStatus status) {
+				return dao.get(id, true).getName();
+			}
+		}));
+		assertEquals(0, routing.getBorrowedConnections()[0]);
+	}
+
+	@Test
+	public void lockedReadAfterReplicaReadFails() {
+		routed.read(new TransactionCallback<Object>() {
+			@Override
+			public Object doInTransaction(TransactionStatus status) {
+				dao.findAll();
+				try {
+					dao.get(id, true);
+					fail("locked read on a replica connection");
+				} catch (IllegalStateException expected) {
+				}
+				return null;
+			}
+		});
+	}
+
+	@Test
+	public void independentWritesFromReadOnlyTransactionUsePrimary() {
+		routed.read(new TransactionCallback<Object>() {
+			@Override
+			public Object doInTransaction(TransactionStatus status) {
+				dao.findAll();
+				List<TestItem> items = new ArrayList<TestItem>();
+				items.add(new TestItem("b1", "b", 2));
+				items.add(new TestItem("b2", "b", 3));
+				return dao.saveAll(items, 10, true);
+			}
+		});
+		assertEquals(3L, count(primary));
+		assertEquals(1L, count(replica));
+		assertEquals(0, routing.getBorrowedConnections()[0]);
+	}
+
+	private static Long insert(final TestDatabase db, final TestItem item) {
+		return db.write(new TransactionCallback<Long>() {
+			@Override
+			public Long doInTransaction(TransactionStatus status) {
+				db.getSessionFactory().getCurrentSession().save(item);
+				return item.getId();
+			}
+		});
+	}
+
+	private static long count(final TestDatabase db) {
+		return db.read(new TransactionCallback<Long>() {
+			@Override
+			public Long doInTransaction(TransactionStatus status) {
+				return (Long) db.getSessionFactory().getCurrentSession()
+						.createCriteria(TestItem.class)
+						.setProjection(Projections.rowCount()).uniqueResult();
+			}
+		});
+	}
+}
@@ -0,0 +1,99 @@
+package com.shrimp.ykztx.model.dao.impl;
+
+import javax.sql.DataSource;
+
+import org.h2.jdbcx.JdbcDataSource;
+import org.hibernate.SessionFactory;
+import org.springframework.orm.hibernate4.HibernateTransactionManager;
+import org.springframework.orm.hibernate4.LocalSessionFactoryBuilder;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.support.TransactionCallback;
+import org.springframework.transaction.support.TransactionTemplate;
+
+/**
+ * 测试数据库: 内存H2 + Hibernate + Spring事务, 映射测试实体
+ */
+public class TestDatabase {
+
+	private final SessionFactory sessionFactory;
+	private final TransactionTemplate readTemplate;
+	private final TransactionTemplate writeTemplate;
+
+	public TestDatabase() {
+		this(h2("test"));
+	}
+
+	/**
+	 * @param dataSource 数据源, 启动时建表
+	 */
+	public TestDatabase(DataSource dataSource) {
+		LocalSessionFactoryBuilder builder = new LocalSessionFactoryBuilder(
+				dataSource);
+		builder.addAnnotatedClasses(TestItem.class, VersionedItem.class);
+		builder.setProperty("hibernate.dialect",
+				"org.hibernate.dialect.H2Dialect");
+		builder.setProperty("hibernate.hbm2ddl.auto", "create");
+		sessionFactory = builder.buildSessionFactory();
+		HibernateTransactionManager transactionManager = new HibernateTransactionManager(
+				sessionFactory);
+		writeTemplate = new TransactionTemplate(transactionManager);
+		readTemplate = new TransactionTemplate(transactionManager);
+		readTemplate.setReadOnly(true);
+	}
+
+	/**
+	 * 新的内存H2数据库, 行锁等待1秒超时
+	 * @param name 名称前缀
+	 */
+	public static DataSource h2(String name) {
+		JdbcDataSource dataSource = new JdbcDataSource();
+		dataSource.setURL("jdbc:h2:mem:" + name + System.nanoTime()
+				+ ";DB_CLOSE_DELAY=-1;LOCK_TIMEOUT=1000");
+		dataSource.setUser("sa");
+		return dataSource;
+	}
+
+	/**
+	 * 创建DAO并完成初始化
+	 */
+	public <D extends DefaultBaseDAO<?, ?>> D init(D dao) {
+		dao.setSessionFactory(sessionFactory);
+		dao.afterPropertiesSet();
+		return dao;
+	}
+
+	public SessionFactory getSessionFactory() {
+		return sessionFactory;
+	}
+
+	/**
+	 * 在只读事务中执行
+	 */
+	public <R> R read(TransactionCallback<R> callback) {
+		return readTemplate.execute(callback);
+	}
+
+	/**
+	 * 在读写事务中执行
+	 */
+	public <R> R write(TransactionCallback<R> callback) {
+		return writeTemplate.execute(callback);
+	}
+
+	/**
+	 * 在新的读写事务中按ID读取(不经过DAO)
+	 */
+	public TestItem fetch(final Long id) {
+		return write(new TransactionCallback<TestItem>() {
+			@Override
+			public TestItem doInTransaction(TransactionStatus status) {
+				return (TestItem) sessionFactory.getCurrentSession().get(
+						TestItem.class, id);
+			}
+		});
+	}
+
+	public void close() {
+		sessionFactory.close();
+	}
+}
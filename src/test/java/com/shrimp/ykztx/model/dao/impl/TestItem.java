@@ -0,0 +1,71 @@
+package com.shrimp.ykztx.model.dao.impl;
+
+import javax.persistence.Entity;
+import javax.persistence.GeneratedValue;
+import javax.persistence.Id;
+import javax.persistence.Table;
+
+/**
+ * 测试用实体
+ */
+@Entity
+@Table(name = "test_item")
+public class TestItem {
+
+	@Id
+	@GeneratedValue
+	private Long id;
+	private String name;
+	private String category;
+	private int score;
+	private Integer views;
+
+	public TestItem() {
+	}
+
+	public TestItem(String name, String category, int score) {
+		this.name = name;
+		this.category = category;
+		this.score = score;
+	}
+
+	public Long getId() {
+		return id;
+	}
+
+	public void setId(Long id) {
+		this.id = id;
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	public void setName(String name) {
+		this.name = name;
+	}
+
+	public String getCategory() {
+		return category;
+	}
+
+	public void setCategory(String category) {
+		this.category = category;
+	}
+
+	public int getScore() {
+		return score;
+	}
+
+	public void setScore(int score) {
+		this.score = score;
+	}
+
+	public Integer getViews() {
+		return views;
+	}
+
+	public void setViews(Integer views) {
+		this.views = views;
+	}
+}
@@ -0,0 +1,53 @@
+package com.shrimp.ykztx.model.dao.impl;
+
+import javax.persistence.Entity;
+import javax.persistence.GeneratedValue;
+import javax.persistence.Id;
+import javax.persistence.Table;
+import javax.persistence.Version;
+
+/**
+ * 测试用的带版本字段的实体
+ */
+@Entity
+@Table(name = "versioned_item")
+public class VersionedItem {
+
+	@Id
+	@GeneratedValue
+	private Long id;
+	private String name;
+	@Version
+	private Integer version;
+
+	public VersionedItem() {
+	}
+
+	public VersionedItem(String name) {
+		this.name = name;
+	}
+
+	public Long getId() {
+		return id;
+	}
+
+	public void setId(Long id) {
+		this.id = id;
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	public void setName(String name) {
+		this.name = name;
+	}
+
+	public Integer getVersion() {
+		return version;
+	}
+
+	public void setVersion(Integer version) {
+		this.version = version;
+	}
+}
@@ -0,0 +1,123 @@
+package com.shrimp.ykztx.model.dao.impl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.support.TransactionCallback;
+
+import com.shrimp.ykztx.model.dao.support.EntityVersions;
+
+/**
+ * 按版本更新/删除: 版本一致时写入并递增版本, 版本过期时不写入、不清理缓存
+ */
+public class VersionedWriteTest {
+
+	public static class VersionedItemDAO extends
+			DefaultBaseDAO<VersionedItem, Long> {
+
+		@Override
+		protected Class<VersionedItem> getEntityClass() {
+			return VersionedItem.class;
+		}
+	}
+
+	private TestDatabase db;
+	private VersionedItemDAO dao;
+	private Long id;
+	private Integer version;
+
+	@Before
+	public void setUp() {
+		db = new TestDatabase();
+		dao = db.init(new VersionedItemDAO());
+		VersionedItem item = db
+				.write(new TransactionCallback<VersionedItem>() {
+					@Override
+					public VersionedItem doInTransaction(
+							TransactionStatus status) {
+						return dao.save(new VersionedItem("init"));
+					}
+				});
+		id = item.getId();
+		version = item.getVersion();
+	}
+
+	@After
+	public void tearDown() {
+		db.close();
+	}
+
+	@Test
+	public void updateWithCurrentVersion() {
+		assertTrue(update("changed", version));
+		VersionedItem item = fetch();
+		assertEquals("changed", item.getName());
+		assertEquals(Integer.valueOf(version + 1), item.getVersion());
+	}
+
+	@Test
+	public void updateWithStaleVersionConflicts() {
+		assertTrue(update("first", version));
+		long counter = EntityVersions.get(VersionedItem.class).getCounter();
+		assertFalse(update("second", version));
+		assertEquals("first", fetch().getName());
+		// 冲突没有写入, 不递增实体的修改版本
+		assertEquals(counter, EntityVersions.get(VersionedItem.class)
+				.getCounter());
+	}
+
+	@Test
+	public void deleteWithStaleVersionConflicts() {
+		assertTrue(update("changed", version));
+		long counter = EntityVersions.get(VersionedItem.class).getCounter();
+		assertFalse(delete(version));
+		assertEquals("changed", fetch().getName());
+		assertEquals(counter, EntityVersions.get(VersionedItem.class)
+				.getCounter());
+	}
+
+	@Test
+	public void deleteWithCurrentVersion() {
+		assertTrue(delete(version));
+		assertNull(fetch());
+	}
+
+	private boolean update(final String name, final Object expected) {
+		return db.write(new TransactionCallback<Boolean>() {
+			@Override
+			public Boolean doInTransaction(TransactionStatus status) {
+				Map<String, Object> set = new HashMap<String, Object>();
+				set.put("name", name);
+				return dao.updatePropertiesById(set, id, expected);
+			}
+		});
+	}
+
+	private boolean delete(final Object expected) {
+		return db.write(new TransactionCallback<Boolean>() {
+			@Override
+			public Boolean doInTransaction(TransactionStatus status) {
+				return dao.deleteById(id, expected);
+			}
+		});
+	}
+
+	private VersionedItem fetch() {
+		return db.write(new TransactionCallback<VersionedItem>() {
+			@Override
+			public VersionedItem doInTransaction(TransactionStatus status) {
+				return (VersionedItem) db.getSessionFactory()
+						.getCurrentSession().get(VersionedItem.class, id);
+			}
+		});
+	}
+}
@@ -0,0 +1,137 @@
+package com.shrimp.ykztx.model.dao.impl;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.support.TransactionCallback;
+
+/**
+ * 写后缓冲与直接写入的顺序, 以及调用方事务已持有行锁时的写入
+ */
+public class WriteBehindTest {
+
+	public static class ItemDAO extends DefaultBaseDAO<TestItem, Long> {
+
+		@Override
+		protected Class<TestItem> getEntityClass() {
+			return TestItem.class;
+		}
+
+		@Override
+		protected boolean isWriteBehind() {
+			return true;
+		}
+
+		@Override
+		protected String[] getCounterProperties() {
+			return new String[] { "views" };
+		}
+
+		@Override
+		protected long getWriteBehindInterval() {
+			return 60 * 60 * 1000L;
+		}
+	}
+
+	private TestDatabase db;
+	private ItemDAO dao;
+	private Long id;
+
+	@Before
+	public void setUp() {
+		db = new TestDatabase();
+		dao = db.init(new ItemDAO());
+		id = db.write(new TransactionCallback<Long>() {
+			@Override
+			public Long doInTransaction(TransactionStatus status) {
+				return dao.save(new TestItem("init", "a", 1)).getId();
+			}
+		});
+	}
+
+	@After
+	public void tearDown() {
+		dao.destroy();
+		db.close();
+	}
+
+	@Test
+	public void directWriteAfterBufferedWrite() {
+		dao.updatePropertiesById(map("name", "buffered"), id);
+		dao.updatePropertiesById(map("views", 2), id);
+		db.write(new TransactionCallback<Object>() {
+			@Override
+			public Object doInTransaction(TransactionStatus status) {
+				return dao.updateProperties(map("name", "direct"),
+						map("id", id));
+			}
+		});
+		dao.flushWriteBehind();
+		TestItem item = db.fetch(id);
+		assertEquals("direct", item.getName());
+		assertEquals(Integer.valueOf(2), item.getViews());
+	}
+
+	@Test(timeout = 10000)
+	public void drainInsideLockingTransaction() {
+		dao.updatePropertiesById(map("name", "buffered"), id);
+		db.write(new TransactionCallback<Object>() {
+			@Override
+			public Object doInTransaction(TransactionStatus status) {
+				dao.get(id, true);
+				// 缓冲的更新在本事务中写入, 不等待本事务持有的行锁
+				return dao.updateProperties(map("score", 5), map("id", id));
+			}
+		});
+		TestItem item = db.fetch(id);
+		assertEquals("buffered", item.getName());
+		assertEquals(5, item.getScore());
+	}
+
+	@Test(timeout = 10000)
+	public void flushInsideWritingTransaction() {
+		db.write(new TransactionCallback<Object>() {
+			@Override
+			public Object doInTransaction(TransactionStatus status) {
+				dao.updateProperties(map("score", 5), map("id", id));
+				dao.updatePropertiesById(map("views", 3), id);
+				return dao.updateProperties(map("name", "direct"),
+						map("category", "a"));
+			}
+		});
+		TestItem item = db.fetch(id);
+		assertEquals("direct", item.getName());
+		assertEquals(5, item.getScore());
+		assertEquals(Integer.valueOf(3), item.getViews());
+	}
+
+	@Test
+	public void rolledBackDrainIsRequeued() {
+		dao.updatePropertiesById(map("name", "buffered"), id);
+		db.write(new TransactionCallback<Object>() {
+			@Override
+			public Object doInTransaction(TransactionStatus status) {
+				dao.updateProperties(map("score", 5), map("id", id));
+				status.setRollbackOnly();
+				return null;
+			}
+		});
+		assertEquals("init", db.fetch(id).getName());
+		dao.flushWriteBehind();
+		TestItem item = db.fetch(id);
+		assertEquals("buffered", item.getName());
+		assertEquals(1, item.getScore());
+	}
+
+	private static Map<String, Object> map(String key, Object value) {
+		Map<String, Object> map = new HashMap<String, Object>();
+		map.put(key, value);
+		return map;
+	}
+}